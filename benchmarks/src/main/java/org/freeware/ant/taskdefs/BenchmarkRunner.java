@@ -0,0 +1,44 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : BenchmarkRunner.java
+ * CREATED  : 18-Oct-2026 12:14:05 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Entry point of the benchmark jar. Accepts the standard JMH command line options and additionally enables the GC
+ * profiler, so that the allocation rate per operation is reported along with the throughput, and writes the results to
+ * <code>target/jmh-result.json</code> for comparison across runs.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public final class BenchmarkRunner
+{
+	private BenchmarkRunner()
+	{
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		CommandLineOptions cmd = null;
+		Options opts = null;
+
+		cmd = new CommandLineOptions(args);
+		opts = new OptionsBuilder()
+				.parent(cmd)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(cmd.getResult().orElse("target/jmh-result.json"))
+				.build();
+		new Runner(opts).run();
+	}
+}
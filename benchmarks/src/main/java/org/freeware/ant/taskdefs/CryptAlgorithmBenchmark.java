@@ -0,0 +1,69 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : CryptAlgorithmBenchmark.java
+ * CREATED  : 18-Oct-2026 12:20:44 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.Project;
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Per value encryption and decryption cost of every supported {@link CryptAlgorithm}, using the encryptor obtained
+ * through the {@link EncryptorCache} exactly as the tasks do.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptAlgorithmBenchmark
+{
+	@Param({"PBEWITHMD5ANDDES", "PBEWITHMD5ANDTRIPLEDES", "PBEWITHSHA1ANDDESEDE", "PBEWITHSHA1ANDRC2_40",
+		"PBKDF2WITHHMACSHA256ANDAES_GCM"})
+	public String algorithm;
+
+	@Param({"secret", "a-considerably-longer-secret-value-such-as-a-connection-string-with-credentials"})
+	public String value;
+
+	private PBEStringEncryptor _svc;
+	private String _strCipherText;
+
+	@Setup
+	public void setup()
+	{
+		_svc = EncryptorCache.getInstance(new Project()).getEncryptor(CryptAlgorithm.toAlgorithm(algorithm), "benchmark",
+																	EncryptorCache.DEFAULT_ITERATIONS);
+		_strCipherText = _svc.encrypt(value);
+	}
+
+	@Benchmark
+	public String encrypt()
+	{
+		return _svc.encrypt(value);
+	}
+
+	@Benchmark
+	public String decrypt()
+	{
+		return _svc.decrypt(_strCipherText);
+	}
+}
@@ -0,0 +1,150 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : EnvelopeBenchmark.java
+ * CREATED  : 19-Oct-2026 8:41:19 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.tools.ant.Project;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.salt.FixedByteArraySaltGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Cost and allocation of the <code>ENC2(...)</code> envelope handling. The <code>legacy</code> benchmarks reproduce the
+ * earlier path, i.e. the <code>java.util.Base64</code> string round trip, the substrings of the salt and of the cipher text
+ * and the concatenation of the envelope. The <code>codec</code> benchmarks go through {@link SecEntry} with the encryptor
+ * {@link EncryptorCache} hands to the tasks, i.e. through {@link EnvelopeCodec} and, unless <code>cacheSize</code> is 0,
+ * through the {@link DecryptionCache} wrapping it. Both use the same key and the same cipher, with the cache disabled the
+ * difference in <code>gc.alloc.rate.norm</code> is that of the encoding alone.</p>
+ * <p>The decryptions cycle through twice as many distinct values as the cache holds, so that every decryption is a miss
+ * and the cost of the cache lookup and insertion is measured along with the decryption.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnvelopeBenchmark
+{
+	private static final int ITERATIONS = 1000;
+	private static final int NONCE_BYTES = 12;
+	private static final int TAG_BITS = 128;
+	private static final int STORED = 2 * DecryptionCache.DEFAULT_SIZE;
+
+	@Param({"secret", "a-considerably-longer-secret-value-such-as-a-connection-string-with-credentials"})
+	public String value;
+
+	@Param({"0", "4096"})
+	public String cacheSize;
+
+	private final SecureRandom _random = new SecureRandom();
+	private StringEncryptor _svc;
+	private SecretKey _key;
+	private Cipher _cipher;
+	private String _strSalt;
+	private String[] _stored;
+	private int _intNext;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		byte[] salt = new byte[16];
+		FixedByteArraySaltGenerator saltGenerator = new FixedByteArraySaltGenerator();
+		PBEKeySpec spec = new PBEKeySpec("benchmark".toCharArray(), salt, ITERATIONS, 256);
+		Project project = new Project();
+		AesGcmStringEncryptor writer = null;
+
+		// the zero salt gives both paths the same key
+		project.setProperty(EncryptorCache.DECRYPT_CACHE_SIZE, cacheSize);
+		_svc = EncryptorCache.getInstance(project).getEncryptor(CryptAlgorithm.toAlgorithm("PBKDF2WITHHMACSHA256ANDAES_GCM"),
+																"benchmark", ITERATIONS, "zero", 1);
+		_key = new SecretKeySpec(SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded(), "AES");
+		_cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		_strSalt = Base64.getEncoder().encodeToString(salt);
+
+		// written by another encryptor, so that the values are not in the cache of the one measured
+		saltGenerator.setSalt(salt);
+		writer = new AesGcmStringEncryptor("benchmark", ITERATIONS, saltGenerator);
+		_stored = new String[STORED];
+		for (int i = 0; i < STORED; i++)
+			_stored[i] = writer.encryptEnvelope(value);
+	}
+
+	@Benchmark
+	public String encryptLegacy() throws Exception
+	{
+		byte[] nonce = new byte[NONCE_BYTES];
+		byte[] cipherText = null;
+		byte[] payload = null;
+
+		_random.nextBytes(nonce);
+		_cipher.init(Cipher.ENCRYPT_MODE, _key, new GCMParameterSpec(TAG_BITS, nonce));
+		cipherText = _cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+		payload = new byte[NONCE_BYTES + cipherText.length];
+		System.arraycopy(nonce, 0, payload, 0, NONCE_BYTES);
+		System.arraycopy(cipherText, 0, payload, NONCE_BYTES, cipherText.length);
+		return "ENC2(" + (_strSalt + '.' + Base64.getEncoder().encodeToString(payload)) + ")";
+	}
+
+	@Benchmark
+	public String encryptCodec()
+	{
+		return SecEntry.encrypt(value, _svc);
+	}
+
+	@Benchmark
+	public String decryptLegacy() throws Exception
+	{
+		String stored = next();
+		String cipherText = stored.substring(stored.indexOf('(') + 1, stored.length() - 1);
+		int sep = cipherText.indexOf('.');
+		String salt = cipherText.substring(0, sep);
+		byte[] payload = Base64.getDecoder().decode(cipherText.substring(sep + 1));
+
+		if (!salt.equals(_strSalt)) throw new IllegalStateException();
+		_cipher.init(Cipher.DECRYPT_MODE, _key, new GCMParameterSpec(TAG_BITS, payload, 0, NONCE_BYTES));
+		return new String(_cipher.doFinal(payload, NONCE_BYTES, payload.length - NONCE_BYTES), StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public String decryptCodec()
+	{
+		return SecEntry.decrypt(next(), _svc);
+	}
+
+	private String next()
+	{
+		String stored = _stored[_intNext];
+
+		_intNext = (_intNext + 1) % STORED;
+		return stored;
+	}
+}
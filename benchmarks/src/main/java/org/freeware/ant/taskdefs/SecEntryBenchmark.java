@@ -0,0 +1,102 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecEntryBenchmark.java
+ * CREATED  : 18-Oct-2026 12:31:17 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.Project;
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Evaluation cost of a single {@link SecEntry} for each entry type. The <code>NONE</code> mode isolates the parsing,
+ * arithmetic and formatting done by <code>executeInteger</code>, <code>executeDate</code> and <code>executeString</code>,
+ * while the <code>ENCRYPT</code> and <code>DECRYPT</code> modes include the crypto and the <code>ENC(...)</code>
+ * envelope handling.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecEntryBenchmark
+{
+	@Param({"int", "date", "string"})
+	public String type;
+
+	@Param({"NONE", "ENCRYPT", "DECRYPT"})
+	public String mode;
+
+	private int _intMode;
+	private SecEntry _entry;
+	private String _strCurrent;
+	private PBEStringEncryptor _svc;
+
+	@Setup
+	public void setup()
+	{
+		Operation oper = new Operation();
+		EntryType entryType = new EntryType();
+		Unit unit = new Unit();
+
+		_intMode = CryptMode.toMode(mode);
+		_svc = EncryptorCache.getInstance(new Project()).getEncryptor(CryptAlgorithm.toAlgorithm("PBEWITHMD5ANDDES"),
+																	"benchmark", EncryptorCache.DEFAULT_ITERATIONS);
+
+		_entry = new SecEntry();
+		_entry.setKey("benchmark.key");
+		entryType.setValue(type);
+		_entry.setType(entryType);
+		if ("int".equals(type))
+		{
+			oper.setValue("+");
+			_entry.setValue("1");
+			_entry.setDefault("0");
+			_strCurrent = "41";
+		}
+		else if ("date".equals(type))
+		{
+			oper.setValue("+");
+			unit.setValue("month");
+			_entry.setUnit(unit);
+			_entry.setValue("12");
+			_entry.setDefault("now");
+			_entry.setPattern("yyyyMMdd");
+			_strCurrent = "20150719";
+		}
+		else
+		{
+			oper.setValue("=");
+			_entry.setDefault("default");
+			_strCurrent = "jdbc:oracle:thin:@localhost:1521:XE";
+		}
+		_entry.setOperation(oper);
+
+		if (_intMode == CryptMode.OPERATION_DECRYPT)
+			_strCurrent = "ENC(" + _svc.encrypt(_strCurrent) + ")";
+	}
+
+	@Benchmark
+	public String evaluate()
+	{
+		return _entry.evaluate(_strCurrent, _svc, _intMode, true);
+	}
+}
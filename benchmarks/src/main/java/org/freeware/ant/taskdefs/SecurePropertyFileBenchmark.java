@@ -0,0 +1,117 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecurePropertyFileBenchmark.java
+ * CREATED  : 18-Oct-2026 12:46:52 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Full <code>secpropfile</code> runs (read, evaluate every entry, write) against files of increasing size. The file is
+ * regenerated before every invocation so that each run starts from the same plain text content.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SecurePropertyFileBenchmark
+{
+	@Param({"10", "1000", "100000"})
+	public int keys;
+
+	@Param({"NONE", "ENCRYPT"})
+	public String mode;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	private File _filProps;
+	private Project _project;
+
+	@Setup(Level.Trial)
+	public void setupTrial() throws IOException
+	{
+		_project = new Project();
+		_project.init();
+		_filProps = File.createTempFile("secpropfile-bench", ".properties");
+	}
+
+	@Setup(Level.Invocation)
+	public void setupInvocation() throws IOException
+	{
+		Writer out = null;
+
+		out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_filProps), "ISO-8859-1"));
+		try
+		{
+			out.write("# generated by SecurePropertyFileBenchmark\n");
+			for (int i = 0; i < keys; i++)
+				out.write("key." + i + "=value-" + i + "\n");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		FileUtils.getFileUtils().tryHardToDelete(_filProps);
+	}
+
+	@Benchmark
+	public SecurePropertyFile execute()
+	{
+		SecurePropertyFile task = null;
+		SecEntry entry = null;
+		Operation oper = new Operation();
+
+		oper.setValue("=");
+		task = new SecurePropertyFile();
+		task.setProject(_project);
+		task.setFile(_filProps);
+		task.setMode(mode);
+		task.setPassword("benchmark");
+		task.setSkipEmptyValues(true);
+		task.setThreads(threads);
+		for (int i = 0; i < keys; i++)
+		{
+			entry = task.createSecEntry();
+			entry.setKey("key." + i);
+			entry.setDefault("value-" + i);
+			entry.setOperation(oper);
+		}
+		task.execute();
+		return task;
+	}
+}
@@ -0,0 +1,355 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : AesGcmStringEncryptor.java
+ * CREATED  : 18-Oct-2026 8:14:36 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.exceptions.AlreadyInitializedException;
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.salt.SaltGenerator;
+
+/**
+ * <p>The encryptor of the algorithm <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>. Unlike the jasypt PBE encryptors, which
+ * derive a new key from a new random salt for every value, the AES key is derived with PBKDF2-HMAC-SHA256 only once per salt.
+ * An encryptor draws a single salt, random unless a salt generator is supplied, every value it encrypts is then encrypted with AES-256 in GCM mode under the same
+ * key using a random 96 bit nonce, which makes encryption cheap and authenticated.</p>
+ * <p>The cipher text is <code>base64(salt).base64(nonce + cipher text + tag)</code>, stored by the tasks in the
+ * <code>ENC2(...)</code> envelope. The derived keys are cached by salt, so decrypting a file whose values were encrypted in
+ * the same run costs a single key derivation. Cipher texts without a salt, i.e. the <code>ENC(...)</code> values, are
+ * decrypted with the default PBE algorithm so existing files remain readable. This covers only the values encrypted with
+ * <code>PBEWITHMD5ANDDES</code> at its default iterations and with random salts, the values encrypted with other parameters
+ * can not be decrypted by this encryptor and must be rekeyed to this algorithm with the parameters they were encrypted with,
+ * see the <code>REKEY</code> mode of <code>secpropfile</code>.</p>
+ * <p>The values are encoded and decoded in the buffers of the calling thread, see {@link EnvelopeCodec}, and the
+ * <code>ENC2(...)</code> envelope is written and read along with the cipher text by {@link #encryptEnvelope(String)} and
+ * {@link #decryptEnvelope(String)}, which spares the intermediate strings of the hot path.</p>
+ * <p>Instances are thread safe.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class AesGcmStringEncryptor implements PBEStringEncryptor
+{
+	/** Default PBKDF2 iterations. */
+	static final int DEFAULT_ITERATIONS = 310000;
+
+	private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+	private static final int KEY_BITS = 256;
+	private static final int SALT_BYTES = 16;
+	private static final int NONCE_BYTES = 12;
+	private static final int TAG_BITS = 128;
+	private static final char SEPARATOR = '.';
+	// the default algorithm of the tasks
+	private static final String LEGACY_ALGORITHM = EncryptorFactory.DEFAULT_ALGORITHM;
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final String _strPassword;
+	private final int _intIterations;
+	private final String _strSalt;
+	private final SecretKey _key;
+	private final ConcurrentMap<String, SecretKey> _keys = new ConcurrentHashMap<String, SecretKey>();
+	private final ThreadLocal<Cipher> _cipher;
+
+	private volatile PBEStringEncryptor _legacy;
+
+	/**
+	 * Creates an encryptor and derives the key used for encryption.
+	 * @param password the password
+	 * @param iterations the PBKDF2 iterations
+	 * @param saltGenerator the generator of the salt, <code>null</code> for a random salt
+	 * @throws EncryptionInitializationException if the algorithms are not supported by the JRE
+	 */
+	AesGcmStringEncryptor(String password, int iterations, SaltGenerator saltGenerator)
+	{
+		byte[] salt = null;
+
+		_strPassword = password;
+		_intIterations = iterations;
+
+		if (saltGenerator == null)
+		{
+			salt = new byte[SALT_BYTES];
+			RANDOM.nextBytes(salt);
+		}
+		else
+			salt = saltGenerator.generateSalt(SALT_BYTES);
+		_strSalt = Base64.getEncoder().encodeToString(salt);
+		_key = derive(salt);
+		_keys.put(_strSalt, _key);
+
+		_cipher = new ThreadLocal<Cipher>()
+		{
+			protected Cipher initialValue()
+			{
+				try
+				{
+					return Cipher.getInstance(CIPHER_ALGORITHM);
+				}
+				catch (GeneralSecurityException gse)
+				{
+					throw new EncryptionInitializationException(gse);
+				}
+			}
+		};
+	}
+
+	/**
+	 * The password is set when the encryptor is created.
+	 * @throws AlreadyInitializedException always
+	 */
+	public void setPassword(String password)
+	{
+		throw new AlreadyInitializedException();
+	}
+
+	/** {@inheritDoc}. */
+	public String encrypt(String message)
+	{
+		return (message == null) ? null : encrypt(message, null);
+	}
+
+	/**
+	 * Encrypts a value directly into its <code>ENC2(...)</code> envelope.
+	 * @param message the plain text
+	 * @return the value to be stored, <code>null</code> if message is <code>null</code>
+	 */
+	String encryptEnvelope(String message)
+	{
+		return (message == null) ? null : encrypt(message, EnvelopeCodec.ENC2_PREFIX);
+	}
+
+	/** {@inheritDoc}. */
+	public String decrypt(String encryptedMessage)
+	{
+		return (encryptedMessage == null) ? null : decrypt(encryptedMessage, 0, encryptedMessage.length());
+	}
+
+	/**
+	 * Decrypts a value in its <code>ENC2(...)</code> envelope without stripping the envelope first.
+	 * @param value the stored value
+	 * @return the plain text
+	 */
+	String decryptEnvelope(String value)
+	{
+		return decrypt(value, value.indexOf('(') + 1, value.length() - 1);
+	}
+
+	/**
+	 * Helper method to encrypt a value. The plain text, the cipher text and its encoding are placed in the buffers of the
+	 * thread, so the result is the only array allocated besides those of the cipher itself.
+	 * @param message the plain text
+	 * @param prefix the prefix of the envelope, <code>null</code> for the bare cipher text
+	 * @return the cipher text, in its envelope if prefix is set
+	 */
+	private String encrypt(String message, String prefix)
+	{
+		int count = 0;
+		int length = 0;
+		int pos = 0;
+		byte[] plain = null;
+		byte[] payload = null;
+		char[] chars = null;
+		EnvelopeCodec.Buffers buffers = EnvelopeCodec.buffers();
+		byte[] nonce = buffers.nonce(NONCE_BYTES);
+		Cipher cipher = _cipher.get();
+
+		plain = buffers.input(message.length());
+		count = EnvelopeCodec.encodeAscii(message, plain);
+		if (count < 0)
+		{
+			plain = message.getBytes(StandardCharsets.UTF_8);
+			count = plain.length;
+		}
+
+		RANDOM.nextBytes(nonce);
+		try
+		{
+			payload = buffers.output(NONCE_BYTES + count + TAG_BITS / 8);
+			cipher.init(Cipher.ENCRYPT_MODE, _key, new GCMParameterSpec(TAG_BITS, nonce));
+			System.arraycopy(nonce, 0, payload, 0, NONCE_BYTES);
+			length = NONCE_BYTES + cipher.doFinal(plain, 0, count, payload, NONCE_BYTES);
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new EncryptionOperationNotPossibleException(gse);
+		}
+		finally
+		{
+			Arrays.fill(plain, 0, count, (byte) 0);
+		}
+
+		chars = buffers.chars(((prefix == null) ? 0 : prefix.length() + 1) + _strSalt.length() + 1
+								+ EnvelopeCodec.encodedLength(length));
+		if (prefix != null) pos = EnvelopeCodec.append(prefix, chars, pos);
+		pos = EnvelopeCodec.append(_strSalt, chars, pos);
+		chars[pos++] = SEPARATOR;
+		pos = EnvelopeCodec.encode(payload, 0, length, chars, pos);
+		if (prefix != null) chars[pos++] = ')';
+		return new String(chars, 0, pos);
+	}
+
+	/**
+	 * Helper method to decrypt the cipher text found in a region of a string. The cipher text is decoded and decrypted in
+	 * the buffers of the thread, the key of the salt of this encryptor is found without extracting the salt.
+	 * @param text the string holding the cipher text
+	 * @param from the index of the first char of the cipher text
+	 * @param to the index after the last char of the cipher text
+	 * @return the plain text
+	 */
+	private String decrypt(String text, int from, int to)
+	{
+		int sep = text.indexOf(SEPARATOR, from);
+		int length = 0;
+		byte[] payload = null;
+		byte[] plain = null;
+		SecretKey key = null;
+		Cipher cipher = null;
+		EnvelopeCodec.Buffers buffers = null;
+
+		if (sep == -1 || sep >= to)
+			return decryptLegacy((from == 0 && to == text.length()) ? text : text.substring(from, to));
+
+		try
+		{
+			key = getKey(text, from, sep);
+			buffers = EnvelopeCodec.buffers();
+			payload = buffers.input(EnvelopeCodec.decodedLength(to - sep - 1));
+			length = EnvelopeCodec.decode(text, sep + 1, to, payload);
+			if (length < NONCE_BYTES) throw new EncryptionOperationNotPossibleException();
+
+			cipher = _cipher.get();
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, payload, 0, NONCE_BYTES));
+			plain = buffers.output(length);
+			try
+			{
+				length = cipher.doFinal(payload, NONCE_BYTES, length - NONCE_BYTES, plain, 0);
+				return new String(plain, 0, length, StandardCharsets.UTF_8);
+			}
+			finally
+			{
+				Arrays.fill(plain, 0, length, (byte) 0);
+			}
+		}
+		catch (IllegalArgumentException iae)
+		{
+			// not valid base64
+			throw new EncryptionOperationNotPossibleException();
+		}
+		catch (GeneralSecurityException gse)
+		{
+			// wrong password or tampered value
+			throw new EncryptionOperationNotPossibleException();
+		}
+	}
+
+	/**
+	 * Helper method to obtain the key of the salt found in a region of a string, the key of this encryptor when the salt is
+	 * its own.
+	 * @param text the string holding the salt
+	 * @param from the index of the first char of the salt
+	 * @param to the index after the last char of the salt
+	 * @return the AES key
+	 */
+	private SecretKey getKey(String text, int from, int to)
+	{
+		String salt = null;
+		SecretKey key = null;
+
+		if (to - from == _strSalt.length() && text.regionMatches(from, _strSalt, 0, to - from))
+			return _key;
+
+		salt = text.substring(from, to);
+		key = _keys.get(salt);
+		if (key == null)
+		{
+			key = derive(Base64.getDecoder().decode(salt));
+			_keys.putIfAbsent(salt, key);
+		}
+		return key;
+	}
+
+	/**
+	 * Helper method to derive the AES key from the password.
+	 * @param salt the salt
+	 * @return the AES key
+	 */
+	private SecretKey derive(byte[] salt)
+	{
+		PBEKeySpec spec = new PBEKeySpec(_strPassword.toCharArray(), salt, _intIterations, KEY_BITS);
+
+		try
+		{
+			return new SecretKeySpec(SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded(), "AES");
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new EncryptionInitializationException(gse);
+		}
+		finally
+		{
+			spec.clearPassword();
+		}
+	}
+
+	/**
+	 * Helper method to decrypt a value encrypted before this algorithm was introduced.
+	 * @param cipherText the cipher text without a salt
+	 * @return the plain text
+	 * @throws EncryptionOperationNotPossibleException if the value was not encrypted with the default PBE algorithm, its
+	 * default iterations and a random salt, or with another password
+	 */
+	private String decryptLegacy(String cipherText)
+	{
+		try
+		{
+			return getLegacy().decrypt(cipherText);
+		}
+		catch (EncryptionOperationNotPossibleException eonpe)
+		{
+			throw new EncryptionOperationNotPossibleException("ENC(...) values are decrypted with " + LEGACY_ALGORITHM
+																+ " at its default iterations only, rekey the values "
+																+ "encrypted with other parameters");
+		}
+	}
+
+	/**
+	 * Helper method to obtain the encryptor of the values encrypted before this algorithm was introduced.
+	 * @return the legacy encryptor
+	 */
+	private PBEStringEncryptor getLegacy()
+	{
+		StandardPBEStringEncryptor std = null;
+
+		if (_legacy == null)
+		{
+			std = new StandardPBEStringEncryptor();
+			std.setAlgorithm(LEGACY_ALGORITHM);
+			std.setPassword(_strPassword);
+			std.initialize();
+			_legacy = std;
+		}
+		return _legacy;
+	}
+}
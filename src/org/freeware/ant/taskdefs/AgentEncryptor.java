@@ -0,0 +1,272 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : AgentEncryptor.java
+ * CREATED  : 19-Oct-2026 12:41:15 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.exceptions.AlreadyInitializedException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+/**
+ * <p>An encryptor sending its work to the {@link KeyAgent}. Every thread uses its own connection to the agent, the values can
+ * be sent one at a time or in batches. When the agent goes away during the build the remaining work is done by an in process
+ * encryptor with the same settings, so the build is not affected by an agent reaching its idle timeout.</p>
+ * <p>Instances are thread safe.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class AgentEncryptor implements PBEStringEncryptor
+{
+	private final File _dir;
+	private final int _intAlgorithm;
+	private final String _strPassword;
+	private final int _intIterations;
+	private final String _strSaltGenerator;
+	private final List<Socket> _sockets = new ArrayList<Socket>();
+	private final ThreadLocal<Connection> _connection = new ThreadLocal<Connection>();
+
+	private volatile PBEStringEncryptor _local;
+
+	/**
+	 * A connection to the agent with the encryptor selected.
+	 */
+	private static final class Connection
+	{
+		final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+
+		Connection(KeyAgent.Session session)
+		{
+			socket = session.socket;
+			in = session.in;
+			out = session.out;
+		}
+	}
+
+	private AgentEncryptor(File dir, int algorithm, String password, int iterations, String saltGenerator)
+	{
+		_dir = dir;
+		_intAlgorithm = algorithm;
+		_strPassword = password;
+		_intIterations = iterations;
+		_strSaltGenerator = saltGenerator;
+	}
+
+	/**
+	 * Connects to the agent of a directory and selects the encryptor of the settings.
+	 * @param dir the agent directory
+	 * @param algorithm the algorithm id
+	 * @param password the password
+	 * @param iterations the key obtention iterations
+	 * @param saltGenerator the salt generator, may be <code>null</code>
+	 * @return the encryptor or <code>null</code> if no agent is running or the agent can not serve the settings
+	 */
+	static AgentEncryptor connect(File dir, int algorithm, String password, int iterations, String saltGenerator)
+	{
+		AgentEncryptor svc = new AgentEncryptor(dir, algorithm, password, iterations, saltGenerator);
+
+		return (svc.getConnection() == null) ? null : svc;
+	}
+
+	/**
+	 * @return true if the values are encrypted with the AES-GCM algorithm and are to be stored in the <code>ENC2(...)</code>
+	 * envelope
+	 */
+	boolean isAesGcm()
+	{
+		return CryptAlgorithm.isAesGcm(_intAlgorithm);
+	}
+
+	/**
+	 * The password is set when the encryptor is connected.
+	 * @throws AlreadyInitializedException always
+	 */
+	public void setPassword(String password)
+	{
+		throw new AlreadyInitializedException();
+	}
+
+	/** {@inheritDoc}. */
+	public String encrypt(String message)
+	{
+		return encryptAll(new String[] {message})[0];
+	}
+
+	/** {@inheritDoc}. */
+	public String decrypt(String encryptedMessage)
+	{
+		return decryptAll(new String[] {encryptedMessage})[0];
+	}
+
+	/**
+	 * Encrypts a batch of values in a single round trip.
+	 * @param messages the values, left as they are
+	 * @return the encrypted values
+	 * @throws EncryptionOperationNotPossibleException if any of the values can not be encrypted
+	 */
+	String[] encryptAll(String[] messages)
+	{
+		return process(KeyAgent.OP_ENCRYPT, messages);
+	}
+
+	/**
+	 * Decrypts a batch of values in a single round trip.
+	 * @param encryptedMessages the values, left as they are
+	 * @return the decrypted values
+	 * @throws EncryptionOperationNotPossibleException if any of the values can not be decrypted
+	 */
+	String[] decryptAll(String[] encryptedMessages)
+	{
+		return process(KeyAgent.OP_DECRYPT, encryptedMessages);
+	}
+
+	/**
+	 * Closes all the connections to the agent.
+	 */
+	void close()
+	{
+		synchronized (_sockets)
+		{
+			for (Socket socket : _sockets)
+				KeyAgent.close(socket);
+			_sockets.clear();
+		}
+	}
+
+	/**
+	 * Helper method to send a batch to the agent, or to process it in process if the agent is gone. A batch larger than the
+	 * agent accepts is sent in several parts.
+	 */
+	private String[] process(byte op, String[] values)
+	{
+		Connection conn = null;
+		String[] results = new String[values.length];
+
+		if (values.length > KeyAgent.MAX_BATCH)
+		{
+			for (int from = 0; from < values.length; from += KeyAgent.MAX_BATCH)
+			{
+				String[] part = process(op, Arrays.copyOfRange(values, from, Math.min(values.length, from + KeyAgent.MAX_BATCH)));
+				System.arraycopy(part, 0, results, from, part.length);
+			}
+			return results;
+		}
+
+		conn = (_local == null) ? getConnection() : null;
+		if (conn != null)
+		{
+			try
+			{
+				conn.out.writeByte(op);
+				conn.out.writeInt(values.length);
+				for (String value : values)
+					KeyAgent.writeString(conn.out, value);
+				conn.out.flush();
+
+				if (conn.in.readByte() != KeyAgent.STATUS_OK)
+					throw new EncryptionOperationNotPossibleException(KeyAgent.readString(conn.in));
+				if (conn.in.readInt() != values.length)
+					throw new IOException("Unexpected response from the key agent");
+				for (int i = 0; i < results.length; i++)
+					results[i] = KeyAgent.readString(conn.in);
+				return results;
+			}
+			catch (IOException ioe)
+			{
+				// the agent went away, carry on in process
+				_connection.remove();
+				KeyAgent.close(conn.socket);
+			}
+		}
+
+		for (int i = 0; i < values.length; i++)
+			results[i] = (op == KeyAgent.OP_ENCRYPT) ? getLocal().encrypt(values[i]) : getLocal().decrypt(values[i]);
+		return results;
+	}
+
+	/**
+	 * Helper method to obtain the connection of the calling thread, opening one if required. The encryptor is selected by the
+	 * key handle of the password, the password is sent, sealed with the session key, only if the agent does not know the
+	 * handle yet.
+	 * @return the connection or <code>null</code> if the agent is not available
+	 */
+	private Connection getConnection()
+	{
+		Connection conn = _connection.get();
+		KeyAgent.Session session = null;
+		Socket socket = null;
+		String handle = null;
+		byte status = 0;
+
+		if (conn != null) return conn;
+
+		session = KeyAgent.connect(_dir);
+		if (session == null) return null;
+
+		socket = session.socket;
+		try
+		{
+			conn = new Connection(session);
+			handle = KeyAgent.handle(session, _strPassword);
+			conn.out.writeByte(KeyAgent.OP_OPEN);
+			KeyAgent.writeString(conn.out, CryptAlgorithm.toValue(_intAlgorithm));
+			conn.out.writeInt(_intIterations);
+			KeyAgent.writeString(conn.out, _strSaltGenerator);
+			KeyAgent.writeString(conn.out, handle);
+			conn.out.flush();
+
+			status = conn.in.readByte();
+			if (status == KeyAgent.STATUS_UNKNOWN)
+			{
+				KeyAgent.writeBytes(conn.out, KeyAgent.seal(session, handle, _strPassword));
+				conn.out.flush();
+				status = conn.in.readByte();
+			}
+			if (status != KeyAgent.STATUS_OK)
+			{
+				KeyAgent.close(socket);
+				return null;
+			}
+		}
+		catch (IOException ioe)
+		{
+			KeyAgent.close(socket);
+			return null;
+		}
+
+		synchronized (_sockets)
+		{
+			_sockets.add(socket);
+		}
+		_connection.set(conn);
+		return conn;
+	}
+
+	private PBEStringEncryptor getLocal()
+	{
+		if (_local == null)
+		{
+			synchronized (this)
+			{
+				if (_local == null)
+					_local = EncryptorCache.newEncryptor(_intAlgorithm, _strPassword, _intIterations, _strSaltGenerator,
+															Runtime.getRuntime().availableProcessors());
+			}
+		}
+		return _local;
+	}
+}
@@ -0,0 +1,175 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : AtomicFileOutput.java
+ * CREATED  : 18-Oct-2026 5:40:13 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>Writes a file through a sibling temporary file which atomically replaces the target once the content has been written
+ * completely. The content is streamed through a buffered file channel, so no in-memory copy of the file is made, and readers
+ * always see either the old or the new file, never a missing or a truncated one.</p>
+ * <h3>Usage</h3>
+ * <pre>
+ * AtomicFileOutput afo = new AtomicFileOutput(file, true);
+ * try
+ * {
+ *     write(afo.getStream());
+ *     afo.commit();
+ * }
+ * finally
+ * {
+ *     afo.close();
+ * }</pre>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class AtomicFileOutput
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path _target;
+	private final Path _temp;
+	private final boolean _blnSync;
+	private final FileChannel _channel;
+	private final OutputStream _out;
+
+	private boolean _blnDone = false;
+
+	/**
+	 * Creates the temporary file next to the target file.
+	 * @param target the file to be replaced
+	 * @param sync true to flush the content to the storage device before replacing the target
+	 * @throws IOException if unable to create the temporary file
+	 */
+	AtomicFileOutput(File target, boolean sync) throws IOException
+	{
+		_target = target.getAbsoluteFile().toPath();
+		_blnSync = sync;
+		_temp = Files.createTempFile(_target.getParent(), "." + _target.getFileName(), ".tmp");
+		try
+		{
+			if (Files.exists(_target))
+				copyPermissions(_target, _temp);
+			_channel = FileChannel.open(_temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+		catch (IOException ioe)
+		{
+			Files.deleteIfExists(_temp);
+			throw ioe;
+		}
+		_out = new BufferedOutputStream(Channels.newOutputStream(_channel), BUFFER_SIZE);
+	}
+
+	/**
+	 * @return the stream to which the content is to be written, must not be closed by the caller
+	 */
+	OutputStream getStream()
+	{
+		return _out;
+	}
+
+	/**
+	 * Flushes the content and replaces the target with the temporary file.
+	 * @throws IOException if unable to write or to replace the target
+	 */
+	void commit() throws IOException
+	{
+		_out.flush();
+		if (_blnSync) _channel.force(true);
+		_channel.close();
+
+		try
+		{
+			Files.move(_temp, _target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException amnse)
+		{
+			Files.move(_temp, _target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		_blnDone = true;
+
+		if (_blnSync) syncDirectory(_target.getParent());
+	}
+
+	/**
+	 * Releases the resources and removes the temporary file if the output was not committed.
+	 * @throws IOException if unable to remove the temporary file
+	 */
+	void close() throws IOException
+	{
+		if (_blnDone) return;
+
+		_blnDone = true;
+		try
+		{
+			_channel.close();
+		}
+		finally
+		{
+			Files.deleteIfExists(_temp);
+		}
+	}
+
+	/**
+	 * Helper method to carry the POSIX permissions of the target over to the temporary file, which is otherwise created
+	 * readable by the owner only.
+	 * @param from the file whose permissions are to be copied
+	 * @param to the file whose permissions are to be set
+	 */
+	private static void copyPermissions(Path from, Path to)
+	{
+		try
+		{
+			Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+		}
+		catch (UnsupportedOperationException uoe)
+		{
+			// not a POSIX file system
+		}
+		catch (IOException ioe)
+		{
+			// keep the default permissions
+		}
+	}
+
+	/**
+	 * Helper method to flush the directory entry of the renamed file, not supported on all the platforms.
+	 * @param dir the directory
+	 */
+	private static void syncDirectory(Path dir)
+	{
+		FileChannel fc = null;
+
+		try
+		{
+			fc = FileChannel.open(dir, StandardOpenOption.READ);
+			try
+			{
+				fc.force(true);
+			}
+			finally
+			{
+				fc.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			// directories can not be opened on some platforms
+		}
+	}
+}
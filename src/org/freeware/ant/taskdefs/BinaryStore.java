@@ -0,0 +1,507 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : BinaryStore.java
+ * CREATED  : 19-Oct-2026 3:41:17 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The indexed binary format of the encrypted property stores and a read only view of a store. A store holds the encryption
+ * parameters, the keys sorted by their UTF-8 bytes and the values, the cipher texts being kept as the bytes they encode rather
+ * than as base64 text. The layout, big endian, is
+ * <pre>
+ * int    magic 'SECS'
+ * short  version
+ * short  number of parameters, followed by the name and the value of each parameter
+ * int    number of keys
+ * 8 byte index slot per key: int key offset, int value offset, followed by a slot with the end offsets
+ * the keys, UTF-8
+ * the values, a type byte followed by the UTF-8 text of a plain value or by the parts of a cipher text</pre>
+ * The offsets are absolute and the keys, like the values, are contiguous and in the order of the index, so the lengths are
+ * those between consecutive offsets. The strings of the parameters are prefixed by their unsigned short length. A cipher text
+ * is made of the base64 parts separated by dots, each stored decoded: the number of parts, then each part prefixed by its int
+ * length but for the last one. A cipher text which does not decode to the same text is stored as the plain text of its
+ * envelope. Used by the tasks and by {@link EncryptedStore}, hence free of any ant dependency.</p>
+ * <p>A key is looked up by a binary search of the index, comparing the bytes in place, only the value found is decoded. As for
+ * {@link MappedProperties} the mapping is released only once the instance has been garbage collected. Stores larger than 2GB
+ * are not supported.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class BinaryStore
+{
+	private static final Charset ENCODING = StandardCharsets.UTF_8;
+	private static final int MAGIC = 0x53454353;
+	private static final int VERSION = 1;
+	private static final int SLOT = 8;
+
+	private static final byte TYPE_PLAIN = 0;
+	private static final byte TYPE_ENC = 1;
+	private static final byte TYPE_ENC2 = 2;
+
+	private static final Comparator<byte[]> KEY_ORDER = new Comparator<byte[]>()
+	{
+		public int compare(byte[] a, byte[] b)
+		{
+			int len = Math.min(a.length, b.length);
+			for (int i = 0; i < len; i++)
+			{
+				if (a[i] != b[i]) return (a[i] & 0xFF) - (b[i] & 0xFF);
+			}
+			return a.length - b.length;
+		}
+	};
+
+	private final ByteBuffer _buf;
+	private final String _strFile;
+	private final Map<String, String> _header = new LinkedHashMap<String, String>();
+	private int _intSize;
+	private int _intIndex;
+
+	private BinaryStore(ByteBuffer buf, File file)
+	{
+		_buf = buf;
+		_strFile = file.getAbsolutePath();
+	}
+
+	/**
+	 * Writes a store, the stream is flushed but not closed.
+	 * @param out the stream to write to
+	 * @param header the encryption parameters by name
+	 * @param values the values, encrypted values in their <code>ENC(...)</code> or <code>ENC2(...)</code> envelope
+	 * @throws IOException if unable to write or if the store would exceed 2GB
+	 */
+	static void write(OutputStream out, Map<String, String> header, Map<String, String> values) throws IOException
+	{
+		long keyOffset = 0;
+		long valueOffset = 0;
+		long keysLength = 0;
+		long valuesLength = 0;
+		DataOutputStream dos = null;
+		List<byte[][]> entries = new ArrayList<byte[][]>(values.size());
+		ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+		dos = new DataOutputStream(head);
+		dos.writeInt(MAGIC);
+		dos.writeShort(VERSION);
+		dos.writeShort(header.size());
+		for (Map.Entry<String, String> param : header.entrySet())
+		{
+			writeString(dos, param.getKey());
+			writeString(dos, param.getValue());
+		}
+		dos.writeInt(values.size());
+
+		for (Map.Entry<String, String> entry : values.entrySet())
+		{
+			byte[] key = entry.getKey().getBytes(ENCODING);
+			entries.add(new byte[][] {key, encode(entry.getValue())});
+			keysLength += key.length;
+		}
+		Collections.sort(entries, new Comparator<byte[][]>()
+		{
+			public int compare(byte[][] a, byte[][] b)
+			{
+				return KEY_ORDER.compare(a[0], b[0]);
+			}
+		});
+
+		keyOffset = head.size() + (long) SLOT * (entries.size() + 1);
+		valueOffset = keyOffset + keysLength;
+		for (byte[][] entry : entries)
+			valuesLength += entry[1].length;
+		if (valueOffset + valuesLength > Integer.MAX_VALUE)
+			throw new IOException("Store too large, the limit is 2GB");
+
+		dos = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+		head.writeTo(dos);
+		for (byte[][] entry : entries)
+		{
+			dos.writeInt((int) keyOffset);
+			dos.writeInt((int) valueOffset);
+			keyOffset += entry[0].length;
+			valueOffset += entry[1].length;
+		}
+		dos.writeInt((int) keyOffset);
+		dos.writeInt((int) valueOffset);
+		for (byte[][] entry : entries)
+			dos.write(entry[0]);
+		for (byte[][] entry : entries)
+			dos.write(entry[1]);
+		dos.flush();
+	}
+
+	/**
+	 * Reads the encryption parameters of a store.
+	 * @param file the store, need not exist
+	 * @return the parameters by name, empty if the store does not exist
+	 * @throws IOException if unable to read the store or if it is not a store
+	 */
+	static Map<String, String> readHeader(File file) throws IOException
+	{
+		int count = 0;
+		DataInputStream dis = null;
+		Map<String, String> header = new LinkedHashMap<String, String>();
+
+		if (!file.exists()) return header;
+
+		// streamed rather than mapped, so that the store can be replaced afterwards on windows
+		dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			checkVersion(dis.readInt(), dis.readShort(), file);
+			count = dis.readUnsignedShort();
+			for (int i = 0; i < count; i++)
+				header.put(readString(dis), readString(dis));
+		}
+		catch (EOFException eofe)
+		{
+			throw new IOException("Not a valid store: " + file.getAbsolutePath(), eofe);
+		}
+		finally
+		{
+			dis.close();
+		}
+		return header;
+	}
+
+	/**
+	 * Opens a store.
+	 * @param file the store
+	 * @param map true to memory map the store, false to read it in the heap, e.g. to be able to replace it on windows
+	 * @return the view of the store
+	 * @throws IOException if unable to read the store or if it is not a store
+	 */
+	static BinaryStore open(File file, boolean map) throws IOException
+	{
+		BinaryStore bs = null;
+		RandomAccessFile raf = null;
+		FileChannel fc = null;
+		ByteBuffer buf = null;
+
+		raf = new RandomAccessFile(file, "r");
+		try
+		{
+			fc = raf.getChannel();
+			if (fc.size() > Integer.MAX_VALUE)
+				throw new IOException("Store too large to be mapped: " + file.getAbsolutePath());
+			if (map)
+				buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			else
+			{
+				buf = ByteBuffer.allocate((int) fc.size());
+				while (buf.hasRemaining() && fc.read(buf) != -1);
+				buf.flip();
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		bs = new BinaryStore(buf.asReadOnlyBuffer(), file);
+		try
+		{
+			bs.readIndex(file);
+		}
+		catch (RuntimeException re)
+		{
+			// BufferUnderflowException, IndexOutOfBoundsException
+			throw new IOException("Not a valid store: " + file.getAbsolutePath(), re);
+		}
+		return bs;
+	}
+
+	/**
+	 * @return the encryption parameters by name
+	 */
+	Map<String, String> getHeader()
+	{
+		return _header;
+	}
+
+	/**
+	 * @return the number of keys
+	 */
+	int size()
+	{
+		return _intSize;
+	}
+
+	/**
+	 * Looks up a key by a binary search of the index.
+	 * @param key the key
+	 * @return the position of the key or -1 if the key is not defined
+	 */
+	int find(String key)
+	{
+		int low = 0;
+		int high = _intSize - 1;
+		int mid = 0;
+		int cmp = 0;
+		byte[] bytes = key.getBytes(ENCODING);
+
+		while (low <= high)
+		{
+			mid = (low + high) >>> 1;
+			cmp = compareKey(mid, bytes);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param pos the position of the key
+	 * @return the key
+	 */
+	String getKey(int pos)
+	{
+		int slot = _intIndex + pos * SLOT;
+		int off = _buf.getInt(slot);
+
+		return new String(bytes(off, _buf.getInt(slot + SLOT) - off), ENCODING);
+	}
+
+	/**
+	 * @param pos the position of the key
+	 * @return the value, an encrypted value in its <code>ENC(...)</code> or <code>ENC2(...)</code> envelope
+	 * @throws IOException if the value is corrupt
+	 */
+	String getValue(int pos) throws IOException
+	{
+		int slot = _intIndex + pos * SLOT;
+		int off = _buf.getInt(slot + 4);
+		String value = decode(bytes(off, _buf.getInt(slot + SLOT + 4) - off));
+
+		if (value == null)
+			throw new IOException("Corrupt value of the key " + getKey(pos) + " in the store " + _strFile);
+		return value;
+	}
+
+	/**
+	 * Helper method to parse the parameters and to locate the index. The offsets of every slot are checked once here, so that
+	 * the lookups of a corrupted store do not fail or read the wrong bytes afterwards.
+	 * @throws IOException if the magic number or the version do not match or if the index is not consistent
+	 */
+	private void readIndex(File file) throws IOException
+	{
+		int count = 0;
+		int slot = 0;
+		long keyOffset = 0;
+		long valueOffset = 0;
+		ByteBuffer buf = _buf.duplicate();
+
+		checkVersion(buf.getInt(), buf.getShort(), file);
+		count = buf.getShort() & 0xFFFF;
+		for (int i = 0; i < count; i++)
+			_header.put(readString(buf), readString(buf));
+
+		_intSize = buf.getInt();
+		_intIndex = buf.position();
+		if (_intSize < 0 || (long) _intIndex + ((long) _intSize + 1) * SLOT > buf.limit())
+			throw new IOException("Not a valid store: " + file.getAbsolutePath());
+
+		// the keys follow the index and the values the keys, both contiguous and in the order of the index
+		keyOffset = (long) _intIndex + ((long) _intSize + 1) * SLOT;
+		valueOffset = _buf.getInt(_intIndex + _intSize * SLOT);
+		for (int i = 0; i <= _intSize; i++)
+		{
+			// every value holds at least its type byte
+			slot = _intIndex + i * SLOT;
+			if (_buf.getInt(slot) < keyOffset || _buf.getInt(slot + 4) < valueOffset
+				|| (i > 0 && _buf.getInt(slot + 4) == valueOffset))
+				throw new IOException("Not a valid store: " + file.getAbsolutePath());
+			keyOffset = _buf.getInt(slot);
+			valueOffset = _buf.getInt(slot + 4);
+		}
+		if (_buf.getInt(_intIndex) != (long) _intIndex + ((long) _intSize + 1) * SLOT
+			|| _buf.getInt(_intIndex + 4) != keyOffset || valueOffset > buf.limit())
+			throw new IOException("Not a valid store: " + file.getAbsolutePath());
+	}
+
+	private static void checkVersion(int magic, int version, File file) throws IOException
+	{
+		if (magic != MAGIC)
+			throw new IOException("Not a store: " + file.getAbsolutePath());
+		if (version != VERSION)
+			throw new IOException("Unsupported version " + version + " of the store " + file.getAbsolutePath());
+	}
+
+	/**
+	 * Helper method to compare a key of the index with the bytes of the key looked up, in place.
+	 */
+	private int compareKey(int pos, byte[] key)
+	{
+		int slot = _intIndex + pos * SLOT;
+		int off = _buf.getInt(slot);
+		int len = _buf.getInt(slot + SLOT) - off;
+		int min = Math.min(len, key.length);
+		int b = 0;
+
+		for (int i = 0; i < min; i++)
+		{
+			b = _buf.get(off + i) & 0xFF;
+			if (b != (key[i] & 0xFF)) return b - (key[i] & 0xFF);
+		}
+		return len - key.length;
+	}
+
+	/**
+	 * Helper method to copy a region of the store, the buffer is duplicated so that concurrent readers do not interfere.
+	 */
+	private byte[] bytes(int off, int len)
+	{
+		byte[] bytes = new byte[len];
+		ByteBuffer buf = _buf.duplicate();
+
+		buf.position(off);
+		buf.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes a parameter string, prefixed by its unsigned short length, also used by {@link SealedFile}.
+	 */
+	static void writeString(DataOutputStream dos, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(ENCODING);
+
+		if (bytes.length > 0xFFFF) throw new IOException("Parameter too long: " + value);
+		dos.writeShort(bytes.length);
+		dos.write(bytes);
+	}
+
+	private static String readString(DataInputStream dis) throws IOException
+	{
+		byte[] bytes = new byte[dis.readUnsignedShort()];
+
+		dis.readFully(bytes);
+		return new String(bytes, ENCODING);
+	}
+
+	/**
+	 * Reads a parameter string written by {@link #writeString(DataOutputStream, String)}.
+	 */
+	static String readString(ByteBuffer buf)
+	{
+		byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+
+		buf.get(bytes);
+		return new String(bytes, ENCODING);
+	}
+
+	/**
+	 * Helper method to encode a value, the cipher texts are stored decoded.
+	 */
+	private static byte[] encode(String value) throws IOException
+	{
+		String[] parts = null;
+		byte[][] decoded = null;
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(value.length());
+		DataOutputStream dos = new DataOutputStream(bos);
+
+		if (Envelope.isEncrypted(value))
+		{
+			parts = Envelope.unwrap(value).split("\\.", -1);
+			decoded = new byte[parts.length][];
+			try
+			{
+				for (int i = 0; i < parts.length; i++)
+				{
+					decoded[i] = Base64.getDecoder().decode(parts[i]);
+					if (!parts[i].equals(Base64.getEncoder().encodeToString(decoded[i])))
+						decoded = null;
+					if (decoded == null) break;
+				}
+			}
+			catch (IllegalArgumentException iae)
+			{
+				decoded = null;
+			}
+		}
+
+		if (decoded == null || decoded.length > 255)
+		{
+			dos.writeByte(TYPE_PLAIN);
+			dos.write(value.getBytes(ENCODING));
+		}
+		else
+		{
+			dos.writeByte(Envelope.isEnc2(value) ? TYPE_ENC2 : TYPE_ENC);
+			dos.writeByte(decoded.length);
+			for (int i = 0; i < decoded.length; i++)
+			{
+				if (i < decoded.length - 1) dos.writeInt(decoded[i].length);
+				dos.write(decoded[i]);
+			}
+		}
+		dos.flush();
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Helper method to decode a value, the cipher texts are encoded in base64 and wrapped in their envelope again.
+	 * @return the value or <code>null</code> if the bytes are not those of a value
+	 */
+	private static String decode(byte[] bytes)
+	{
+		int parts = 0;
+		int len = 0;
+		StringBuilder sb = null;
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+		byte type = 0;
+
+		if (bytes.length == 0) return null;
+
+		type = buf.get();
+		if (type == TYPE_PLAIN)
+			return new String(bytes, 1, bytes.length - 1, ENCODING);
+		if ((type != TYPE_ENC && type != TYPE_ENC2) || !buf.hasRemaining())
+			return null;
+
+		sb = new StringBuilder(bytes.length * 4 / 3 + 8);
+		parts = buf.get() & 0xFF;
+		if (parts == 0) return null;
+		for (int i = 0; i < parts; i++)
+		{
+			if (i > 0) sb.append('.');
+			if (i < parts - 1 && buf.remaining() < 4) return null;
+			len = (i < parts - 1) ? buf.getInt() : buf.remaining();
+			if (len < 0 || len > buf.remaining()) return null;
+			sb.append(Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, buf.position(), buf.position() + len)));
+			buf.position(buf.position() + len);
+		}
+		return Envelope.wrap(sb.toString(), type == TYPE_ENC2);
+	}
+}
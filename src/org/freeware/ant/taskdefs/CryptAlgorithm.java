@@ -20,9 +20,10 @@ public class CryptAlgorithm extends EnumeratedAttribute
 	private static final int ALGO_PBEWITHMD5ANDTRIPLEDES = 1;
 	private static final int ALGO_PBEWITHSHA1ANDDESEDE   = 2;
 	private static final int ALGO_PBEWITHSHA1ANDRC2_40   = 3;
+	private static final int ALGO_PBKDF2WITHHMACSHA256ANDAES_GCM = 4;
 
 	private static final String[] ALGORITHMS = {"PBEWITHMD5ANDDES", "PBEWITHMD5ANDTRIPLEDES", "PBEWITHSHA1ANDDESEDE",
-													"PBEWITHSHA1ANDRC2_40"};
+													"PBEWITHSHA1ANDRC2_40", "PBKDF2WITHHMACSHA256ANDAES_GCM"};
 
     /** {@inheritDoc}. */
     public String[] getValues()
@@ -38,10 +39,23 @@ public class CryptAlgorithm extends EnumeratedAttribute
     		return ALGO_PBEWITHSHA1ANDDESEDE;
     	else if ("PBEWITHSHA1ANDRC2_40".equalsIgnoreCase(algo))
     		return ALGO_PBEWITHSHA1ANDRC2_40;
+    	else if ("PBKDF2WITHHMACSHA256ANDAES_GCM".equalsIgnoreCase(algo))
+    		return ALGO_PBKDF2WITHHMACSHA256ANDAES_GCM;
 
     	return ALGO_PBEWITHMD5ANDDES;
     }
 
+    /**
+     * Checks whether the algorithm is the PBKDF2 and AES-GCM one, whose values are stored in the <code>ENC2(...)</code>
+     * envelope, as opposed to the jasypt PBE algorithms.
+     * @param algoId the algorithm id
+     * @return true for <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>
+     */
+    public static boolean isAesGcm(int algoId)
+    {
+    	return (algoId == ALGO_PBKDF2WITHHMACSHA256ANDAES_GCM);
+    }
+
     public static String toValue(int algoId)
     {
     	if (algoId > -1 & algoId < ALGORITHMS.length)
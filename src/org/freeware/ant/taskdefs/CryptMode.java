@@ -19,8 +19,9 @@ public class CryptMode extends EnumeratedAttribute
 	public static final int OPERATION_ENCRYPT = 0;
 	public static final int OPERATION_DECRYPT = 1;
 	public static final int OPERATION_NONE    = 2;
+	public static final int OPERATION_REKEY   = 3;
 
-	private static final String[] MODES = {"ENCRYPT", "DECRYPT", "NONE"};
+	private static final String[] MODES = {"ENCRYPT", "DECRYPT", "NONE", "REKEY"};
 
     /** {@inheritDoc}. */
     public String[] getValues()
@@ -34,6 +35,8 @@ public class CryptMode extends EnumeratedAttribute
     		return OPERATION_ENCRYPT;
     	else if ("DECRYPT".equalsIgnoreCase(mode))
     		return OPERATION_DECRYPT;
+    	else if ("REKEY".equalsIgnoreCase(mode))
+    		return OPERATION_REKEY;
 
     	return OPERATION_NONE;
     }
@@ -0,0 +1,383 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : DecryptionCache.java
+ * CREATED  : 19-Oct-2026 5:12:36 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tools.ant.PropertyHelper;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.exceptions.AlreadyInitializedException;
+
+/**
+ * <p>A bounded cache of the plain texts of the cipher texts decrypted during a build, so that the same secret found in many
+ * files, e.g. in overlays copied from a common base, is decrypted once per build. The plain texts are keyed by the algorithm,
+ * the key obtention iterations, the salt generator, a fingerprint of the password and the cipher text, a cipher text
+ * decrypting to the same plain text whenever these are the same.</p>
+ * <p>The cache is split in segments, each an access ordered map guarded by its own lock, so the eviction is least recently
+ * used per segment and concurrent decryptions rarely contend. The cipher texts encrypted during the build are cached along
+ * with their plain text as well. Values longer than {@link #MAX_VALUE_LENGTH} are not cached, which bounds the memory used
+ * along with the number of entries.</p>
+ * <p>The cache is owned by the {@link EncryptorCache} of the project and is wiped when the build finishes. The plain texts
+ * are then only dropped, not overwritten, as strings are immutable.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class DecryptionCache
+{
+	/** The default maximum number of entries. */
+	static final int DEFAULT_SIZE = 4096;
+
+	/** The longest plain text or cipher text cached. */
+	static final int MAX_VALUE_LENGTH = 1024;
+
+	private static final int SEGMENTS = 16;
+	private static final int SEGMENT_SHIFT = 32 - Integer.numberOfTrailingZeros(SEGMENTS);
+
+	private final Segment[] _segments = new Segment[SEGMENTS];
+	private final AtomicLong _lngHits = new AtomicLong();
+	private final AtomicLong _lngMisses = new AtomicLong();
+	private final AtomicLong _lngEvictions = new AtomicLong();
+
+	/**
+	 * Creates a cache.
+	 * @param maxEntries the maximum number of entries
+	 */
+	DecryptionCache(int maxEntries)
+	{
+		for (int i = 0; i < SEGMENTS; i++)
+			_segments[i] = new Segment(Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS));
+	}
+
+	/**
+	 * Wraps an encryptor so that its decryptions go through the cache.
+	 * @param svc the encryptor
+	 * @param namespace the algorithm, the iterations, the salt generator and the password fingerprint of the encryptor
+	 * @return the caching encryptor
+	 */
+	PBEStringEncryptor wrap(PBEStringEncryptor svc, String namespace)
+	{
+		return new CachingEncryptor(svc, namespace + '\u0000');
+	}
+
+	/**
+	 * Returns the encryptor wrapped by {@link #wrap(PBEStringEncryptor, String)}, so that its kind can be checked.
+	 * @param svc an encryptor, wrapped or not
+	 * @return the wrapped encryptor or svc itself
+	 */
+	static StringEncryptor unwrap(StringEncryptor svc)
+	{
+		return (svc instanceof CachingEncryptor) ? ((CachingEncryptor) svc)._svc : svc;
+	}
+
+	/**
+	 * Encrypts a value with an AES-GCM encryptor, wrapped or not, writing the envelope along with the cipher text.
+	 * @param svc the encryptor, {@link #unwrap(StringEncryptor)} must return an {@link AesGcmStringEncryptor}
+	 * @param message the plain text
+	 * @return the <code>ENC2(...)</code> value
+	 */
+	static String encryptEnvelope(StringEncryptor svc, String message)
+	{
+		if (svc instanceof CachingEncryptor)
+			return ((CachingEncryptor) svc).encryptEnvelope(message);
+		return ((AesGcmStringEncryptor) svc).encryptEnvelope(message);
+	}
+
+	/**
+	 * Decrypts an <code>ENC2(...)</code> value in place with an AES-GCM encryptor, through the cache if the encryptor is
+	 * wrapped.
+	 * @param svc the encryptor, {@link #unwrap(StringEncryptor)} must return an {@link AesGcmStringEncryptor}
+	 * @param value the encrypted value
+	 * @return the plain text
+	 */
+	static String decryptEnvelope(StringEncryptor svc, String value)
+	{
+		if (svc instanceof CachingEncryptor)
+			return ((CachingEncryptor) svc).decryptEnvelope(value);
+		return ((AesGcmStringEncryptor) svc).decryptEnvelope(value);
+	}
+
+	/**
+	 * Decrypts several cipher texts, with a single round trip to the key agent for those not cached if svc uses the agent.
+	 * @param svc the encryptor, wrapped or not
+	 * @param cipherTexts the cipher texts
+	 * @return the plain texts
+	 */
+	static String[] decryptAll(StringEncryptor svc, String[] cipherTexts)
+	{
+		String[] plainTexts = null;
+
+		if (svc instanceof CachingEncryptor)
+			return ((CachingEncryptor) svc).decryptAll(cipherTexts);
+		if (svc instanceof AgentEncryptor)
+			return ((AgentEncryptor) svc).decryptAll(cipherTexts);
+
+		plainTexts = new String[cipherTexts.length];
+		for (int i = 0; i < cipherTexts.length; i++)
+			plainTexts[i] = svc.decrypt(cipherTexts[i]);
+		return plainTexts;
+	}
+
+	/**
+	 * @return the number of decryptions served from the cache
+	 */
+	long getHits()
+	{
+		return _lngHits.get();
+	}
+
+	/**
+	 * @return the number of decryptions not served from the cache
+	 */
+	long getMisses()
+	{
+		return _lngMisses.get();
+	}
+
+	/**
+	 * @return the number of entries evicted to make room for newer ones
+	 */
+	long getEvictions()
+	{
+		return _lngEvictions.get();
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	int size()
+	{
+		int size = 0;
+
+		for (Segment segment : _segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Publishes the counts as the properties <code>prefix.decryptCache.hits</code>, <code>prefix.decryptCache.misses</code>,
+	 * <code>prefix.decryptCache.evictions</code> and <code>prefix.decryptCache.size</code>.
+	 * @param ph the property helper of the project
+	 * @param prefix the prefix of the properties
+	 */
+	void publish(PropertyHelper ph, String prefix)
+	{
+		if (!prefix.endsWith(".")) prefix += ".";
+
+		ph.setNewProperty(prefix + "decryptCache.hits", String.valueOf(getHits()));
+		ph.setNewProperty(prefix + "decryptCache.misses", String.valueOf(getMisses()));
+		ph.setNewProperty(prefix + "decryptCache.evictions", String.valueOf(getEvictions()));
+		ph.setNewProperty(prefix + "decryptCache.size", String.valueOf(size()));
+	}
+
+	/**
+	 * @return a one line summary of the counts for the build log
+	 */
+	String summary()
+	{
+		return getHits() + " hit(s), " + getMisses() + " miss(es), " + getEvictions() + " eviction(s)";
+	}
+
+	/**
+	 * Drops all the entries.
+	 */
+	void clear()
+	{
+		for (Segment segment : _segments)
+		{
+			synchronized (segment)
+			{
+				segment.clear();
+			}
+		}
+	}
+
+	private String get(String key)
+	{
+		Segment segment = segmentFor(key);
+
+		synchronized (segment)
+		{
+			return segment.get(key);
+		}
+	}
+
+	private void put(String key, String plainText)
+	{
+		Segment segment = null;
+
+		if (plainText == null || plainText.length() > MAX_VALUE_LENGTH) return;
+
+		segment = segmentFor(key);
+		synchronized (segment)
+		{
+			segment.put(key, plainText);
+		}
+	}
+
+	/**
+	 * Helper method to select the segment of a key from the high bits of its mixed hash. The segment maps index their buckets
+	 * by the low bits, a segment selected by the same bits would use only one bucket in {@link #SEGMENTS}.
+	 */
+	private Segment segmentFor(String key)
+	{
+		return _segments[(key.hashCode() * 0x9E3779B9) >>> SEGMENT_SHIFT];
+	}
+
+	/**
+	 * An access ordered map evicting its least recently used entry once full.
+	 */
+	private final class Segment extends LinkedHashMap<String, String>
+	{
+		private static final long serialVersionUID = 1L;
+		private final int _intMax;
+
+		Segment(int max)
+		{
+			super(16, 0.75f, true);
+			_intMax = max;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+		{
+			if (size() <= _intMax) return false;
+
+			_lngEvictions.incrementAndGet();
+			return true;
+		}
+	}
+
+	/**
+	 * The encryptor decrypting through the cache.
+	 */
+	private final class CachingEncryptor implements PBEStringEncryptor
+	{
+		private final PBEStringEncryptor _svc;
+		private final String _strNamespace;
+
+		CachingEncryptor(PBEStringEncryptor svc, String namespace)
+		{
+			_svc = svc;
+			_strNamespace = namespace;
+		}
+
+		public String encrypt(String message)
+		{
+			String cipherText = _svc.encrypt(message);
+
+			if (cipherText != null && cipherText.length() <= MAX_VALUE_LENGTH)
+				put(_strNamespace + cipherText, message);
+			return cipherText;
+		}
+
+		public String decrypt(String encryptedMessage)
+		{
+			return decrypt(encryptedMessage, false);
+		}
+
+		/**
+		 * Encrypts a value with the wrapped AES-GCM encryptor, the value is cached by its envelope.
+		 */
+		String encryptEnvelope(String message)
+		{
+			String value = ((AesGcmStringEncryptor) _svc).encryptEnvelope(message);
+
+			if (value.length() <= MAX_VALUE_LENGTH)
+				put(_strNamespace + value, message);
+			return value;
+		}
+
+		/**
+		 * Decrypts an <code>ENC2(...)</code> value in place with the wrapped AES-GCM encryptor, the value being cached by its
+		 * envelope. The envelope and the bare cipher texts do not collide, a cipher text never starting with the prefix.
+		 */
+		String decryptEnvelope(String value)
+		{
+			return decrypt(value, true);
+		}
+
+		private String decrypt(String encryptedMessage, boolean envelope)
+		{
+			String key = null;
+			String plainText = null;
+
+			if (encryptedMessage == null || encryptedMessage.length() > MAX_VALUE_LENGTH)
+				return envelope ? ((AesGcmStringEncryptor) _svc).decryptEnvelope(encryptedMessage)
+								: _svc.decrypt(encryptedMessage);
+
+			key = _strNamespace + encryptedMessage;
+			plainText = get(key);
+			if (plainText != null)
+			{
+				_lngHits.incrementAndGet();
+				return plainText;
+			}
+
+			_lngMisses.incrementAndGet();
+			plainText = envelope ? ((AesGcmStringEncryptor) _svc).decryptEnvelope(encryptedMessage)
+									: _svc.decrypt(encryptedMessage);
+			put(key, plainText);
+			return plainText;
+		}
+
+		/**
+		 * The password is set when the wrapped encryptor is created.
+		 * @throws AlreadyInitializedException always
+		 */
+		public void setPassword(String password)
+		{
+			throw new AlreadyInitializedException();
+		}
+
+		/**
+		 * Decrypts several cipher texts, those not cached in a single call to the wrapped encryptor if it uses the agent.
+		 */
+		String[] decryptAll(String[] cipherTexts)
+		{
+			String[] plainTexts = new String[cipherTexts.length];
+			String[] decrypted = null;
+			List<Integer> misses = new ArrayList<Integer>();
+
+			if (!(_svc instanceof AgentEncryptor))
+			{
+				for (int i = 0; i < cipherTexts.length; i++)
+					plainTexts[i] = decrypt(cipherTexts[i]);
+				return plainTexts;
+			}
+
+			for (int i = 0; i < cipherTexts.length; i++)
+			{
+				plainTexts[i] = (cipherTexts[i].length() > MAX_VALUE_LENGTH) ? null : get(_strNamespace + cipherTexts[i]);
+				if (plainTexts[i] == null) misses.add(i);
+			}
+			_lngHits.addAndGet(cipherTexts.length - misses.size());
+			_lngMisses.addAndGet(misses.size());
+			if (misses.isEmpty()) return plainTexts;
+
+			decrypted = new String[misses.size()];
+			for (int i = 0; i < decrypted.length; i++)
+				decrypted[i] = cipherTexts[misses.get(i)];
+			decrypted = ((AgentEncryptor) _svc).decryptAll(decrypted);
+			for (int i = 0; i < decrypted.length; i++)
+			{
+				plainTexts[misses.get(i)] = decrypted[i];
+				put(_strNamespace + cipherTexts[misses.get(i)], decrypted[i]);
+			}
+			return plainTexts;
+		}
+	}
+}
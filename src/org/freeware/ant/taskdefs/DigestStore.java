@@ -0,0 +1,302 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : DigestStore.java
+ * CREATED  : 18-Oct-2026 4:26:50 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.tools.ant.BuildException;
+import org.jasypt.encryption.StringEncryptor;
+
+/**
+ * <p>The digests used by the incremental mode of the task <code>secpropfile</code>. For each encrypted key the store keeps a
+ * keyed digest (HMAC-SHA256) of the encryption parameters, i.e. the algorithm, the iterations and the salt generator, of the
+ * key, of the plain text and of the resulting cipher text. When an entry evaluates to the same plain text and the file still
+ * holds the same cipher text, encrypted with the same parameters, the existing value is kept instead of being encrypted
+ * again with a new random salt, so the file is left unchanged. A change of the parameters thus encrypts every value again.</p>
+ * <p>The digests are kept in a sidecar property file next to the encrypted file, along with the random salt the HMAC key
+ * is derived from. The key is derived from the password with PBKDF2-HMAC-SHA256 and the iterations of
+ * <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>, so that a guess of the password costs as much against a digest as against an
+ * encrypted value, and the digests do not reveal the plain text values to anybody not knowing the password. A sidecar file
+ * without a salt, or derived with other iterations, is ignored and every value is encrypted again.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class DigestStore
+{
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+	private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int KDF_ITERATIONS = AesGcmStringEncryptor.DEFAULT_ITERATIONS;
+	private static final int SALT_BYTES = 16;
+	private static final int KEY_BYTES = 32;
+	private static final String SALT_KEY = "kdf.salt";
+	private static final String ITERATIONS_KEY = "kdf.iterations";
+	private static final String DIGEST_PREFIX = "digest.";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final String _strParameters;
+	private final String _strPassword;
+	private final ThreadLocal<Mac> _mac;
+	private final ConcurrentMap<String, String> _digests = new ConcurrentHashMap<String, String>();
+	private final AtomicInteger _intSkipped = new AtomicInteger();
+	private final AtomicInteger _intEncrypted = new AtomicInteger();
+
+	private byte[] _salt = new byte[SALT_BYTES];
+	private volatile SecretKeySpec _key;
+	private volatile boolean _blnModified = false;
+
+	/**
+	 * Creates an empty store.
+	 * @param algorithm the name of the encryption algorithm
+	 * @param iterations the key obtention iterations of the encryption
+	 * @param saltGenerator the name of the salt generator of the encryption, may be <code>null</code>
+	 * @param password the encryption password
+	 */
+	DigestStore(String algorithm, int iterations, String saltGenerator, String password)
+	{
+		_strParameters = algorithm + '\0' + iterations + '\0' + ((saltGenerator == null) ? "" : saltGenerator);
+		_strPassword = password;
+		RANDOM.nextBytes(_salt);
+
+		_mac = new ThreadLocal<Mac>()
+		{
+			protected Mac initialValue()
+			{
+				Mac mac = null;
+				try
+				{
+					mac = Mac.getInstance(MAC_ALGORITHM);
+					mac.init(getKey());
+				}
+				catch (GeneralSecurityException gse)
+				{
+					throw new BuildException(gse);
+				}
+				return mac;
+			}
+		};
+	}
+
+	/**
+	 * Loads the digests and the salt from the sidecar file, if it exists. The digests of a file without a salt or derived
+	 * with other iterations are dropped.
+	 * @param file the sidecar file
+	 * @throws IOException if unable to read the file
+	 */
+	void load(File file) throws IOException
+	{
+		InputStream in = null;
+		String salt = null;
+		Properties props = new Properties();
+
+		if (!file.exists()) return;
+
+		in = new BufferedInputStream(new FileInputStream(file));
+		try
+		{
+			props.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		salt = props.getProperty(SALT_KEY);
+		if (salt == null || salt.length() != SALT_BYTES * 2
+			|| !String.valueOf(KDF_ITERATIONS).equals(props.getProperty(ITERATIONS_KEY)))
+		{
+			_blnModified = true;
+			return;
+		}
+		try
+		{
+			for (int i = 0; i < SALT_BYTES; i++)
+				_salt[i] = (byte) Integer.parseInt(salt.substring(i * 2, i * 2 + 2), 16);
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new IOException("Invalid salt in the digest file " + file.getAbsolutePath());
+		}
+
+		for (String key : props.stringPropertyNames())
+		{
+			if (key.startsWith(DIGEST_PREFIX))
+				_digests.put(key.substring(DIGEST_PREFIX.length()), props.getProperty(key));
+		}
+	}
+
+	/**
+	 * Encrypts the plain text unless the current value already is the encryption of the same plain text.
+	 * @param key the property key
+	 * @param plainText the plain text to be stored
+	 * @param current the value currently stored for the key, may be <code>null</code>
+	 * @param svc the encryptor to use
+	 * @return the value to be stored, wrapped in the envelope of the encryptor
+	 */
+	String encrypt(String key, String plainText, String current, StringEncryptor svc)
+	{
+		String cipherText = null;
+		String digest = _digests.get(key);
+
+		if (digest != null && SecEntry.isEncrypted(current)
+			&& digest.equals(digest(key, plainText, SecEntry.unwrap(current))))
+		{
+			_intSkipped.incrementAndGet();
+			return current;
+		}
+
+		cipherText = svc.encrypt(plainText);
+		_digests.put(key, digest(key, plainText, cipherText));
+		_intEncrypted.incrementAndGet();
+		_blnModified = true;
+		return SecEntry.wrap(cipherText, svc);
+	}
+
+	/**
+	 * Drops the digest of a removed key.
+	 * @param key the removed key
+	 */
+	void remove(String key)
+	{
+		if (_digests.remove(key) != null) _blnModified = true;
+	}
+
+	/**
+	 * @return true if the digests have changed since they were loaded
+	 */
+	boolean isModified()
+	{
+		return _blnModified;
+	}
+
+	/**
+	 * @return the number of values which were left as is
+	 */
+	int getSkipped()
+	{
+		return _intSkipped.get();
+	}
+
+	/**
+	 * @return the number of values which were encrypted
+	 */
+	int getEncrypted()
+	{
+		return _intEncrypted.get();
+	}
+
+	/**
+	 * Writes the digests to the sidecar file, which is replaced atomically.
+	 * @param file the sidecar file
+	 * @param sync true to flush the file to the storage device
+	 * @throws IOException if unable to write the file
+	 */
+	void store(File file, boolean sync) throws IOException
+	{
+		AtomicFileOutput afo = null;
+		Properties props = new Properties();
+
+		props.setProperty(SALT_KEY, hex(_salt));
+		props.setProperty(ITERATIONS_KEY, String.valueOf(KDF_ITERATIONS));
+		for (Map.Entry<String, String> entry : _digests.entrySet())
+			props.setProperty(DIGEST_PREFIX + entry.getKey(), entry.getValue());
+		afo = new AtomicFileOutput(file, sync);
+		try
+		{
+			props.store(afo.getStream(), "secpropfile digests, do not edit");
+			afo.commit();
+		}
+		finally
+		{
+			afo.close();
+		}
+	}
+
+	/**
+	 * Helper method to compute the keyed digest of an encrypted value.
+	 * @param key the property key
+	 * @param plainText the plain text
+	 * @param cipherText the cipher text
+	 * @return the hex encoded digest
+	 */
+	private String digest(String key, String plainText, String cipherText)
+	{
+		Mac mac = _mac.get();
+
+		mac.update(_strParameters.getBytes(StandardCharsets.UTF_8));
+		mac.update((byte) 0);
+		mac.update(key.getBytes(StandardCharsets.UTF_8));
+		mac.update((byte) 0);
+		mac.update(plainText.getBytes(StandardCharsets.UTF_8));
+		mac.update((byte) 0);
+		return hex(mac.doFinal(cipherText.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Helper method to derive the HMAC key once, on first use, the salt being known once the sidecar file is loaded.
+	 */
+	private SecretKeySpec getKey()
+	{
+		byte[] bytes = null;
+		PBEKeySpec spec = null;
+
+		if (_key != null) return _key;
+
+		synchronized (this)
+		{
+			if (_key != null) return _key;
+
+			spec = new PBEKeySpec(_strPassword.toCharArray(), _salt, KDF_ITERATIONS, KEY_BYTES * 8);
+			try
+			{
+				bytes = SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+				_key = new SecretKeySpec(bytes, MAC_ALGORITHM);
+			}
+			catch (GeneralSecurityException gse)
+			{
+				throw new BuildException(gse);
+			}
+			finally
+			{
+				spec.clearPassword();
+				if (bytes != null) Arrays.fill(bytes, (byte) 0);
+			}
+			return _key;
+		}
+	}
+
+	private static String hex(byte[] bytes)
+	{
+		char[] chars = new char[bytes.length * 2];
+
+		for (int i = 0; i < bytes.length; i++)
+		{
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,326 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : EncryptedProperties.java
+ * CREATED  : 19-Oct-2026 2:49:22 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+/**
+ * <p>Reads the property files written by <code>secpropfile</code> in applications. This class, and what it uses, does not
+ * depend on ant, only jasypt is required at run time. The encryption parameters recorded in the file are used unless
+ * overridden.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * EncryptedProperties props = new EncryptedProperties(System.getenv("SECRET"));
+ * props.load(new File("config/secprops.properties"));
+ * String dbPassword = props.getProperty("DB_PASSWORD");</pre>
+ * By default all the values are decrypted when the file is loaded, concurrently on all the available processors. In lazy
+ * mode a value is decrypted on its first access only and the plain text is kept for the later ones. A file sealed by
+ * <code>secpropfile format="sealed"</code> is decrypted as a whole while it is loaded.
+ * <p>Once loaded, instances are safe for any number of concurrent readers, the values are held in concurrent maps so the
+ * readers do not serialize on a lock the way they do on <code>java.util.Properties</code>. The setters and
+ * {@link #load(File)} are not meant to be called concurrently with the readers.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public final class EncryptedProperties
+{
+	private final String _strPassword;
+	private String _strAlgorithm;
+	private int _intIterations = 0;
+	private String _strSaltGenerator;
+	private int _intThreads = Runtime.getRuntime().availableProcessors();
+	private boolean _blnLazy = false;
+
+	private volatile ConcurrentMap<String, String> _values = new ConcurrentHashMap<String, String>();
+	private volatile ConcurrentMap<String, String> _plainTexts = new ConcurrentHashMap<String, String>();
+	private volatile PBEStringEncryptor _svc;
+	private String _strFile;
+
+	/**
+	 * Creates an instance decrypting with the supplied password.
+	 * @param password the password
+	 */
+	public EncryptedProperties(String password)
+	{
+		if (password == null) throw new IllegalArgumentException("password must not be null");
+		_strPassword = password;
+	}
+
+	/**
+	 * Sets the encryption algorithm, defaults to the algorithm recorded in the file, else to
+	 * <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code> for files with <code>ENC2(...)</code> values or to
+	 * <code>PBEWITHMD5ANDDES</code>.
+	 * @param algorithm the algorithm name
+	 */
+	public void setAlgorithm(String algorithm)
+	{
+		_strAlgorithm = algorithm;
+	}
+
+	/**
+	 * Sets the key obtention iterations, defaults to the iterations recorded in the file or else to the default of the
+	 * algorithm.
+	 * @param iterations the key obtention iterations
+	 */
+	public void setIterations(int iterations)
+	{
+		_intIterations = iterations;
+	}
+
+	/**
+	 * Sets the salt generator, defaults to the generator recorded in the file or else to <code>random</code>.
+	 * @param saltGenerator <code>random</code>, <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>
+	 */
+	public void setSaltGenerator(String saltGenerator)
+	{
+		_strSaltGenerator = saltGenerator;
+	}
+
+	/**
+	 * Sets the number of threads decrypting the values on load, defaults to the number of available processors. Also the
+	 * number of pooled ciphers shared by the concurrent readers in lazy mode.
+	 * @param threads the number of threads
+	 */
+	public void setThreads(int threads)
+	{
+		_intThreads = threads;
+	}
+
+	/**
+	 * Sets the lazy mode, in which the values are decrypted on their first access instead of on load.
+	 * @param lazy the flag to decrypt lazily
+	 */
+	public void setLazy(boolean lazy)
+	{
+		_blnLazy = lazy;
+	}
+
+	/**
+	 * Loads a property file, replacing the properties loaded earlier.
+	 * @param file the property file
+	 * @throws IOException if unable to read the file, or if the sealed file has been tampered with
+	 * @throws EncryptionOperationNotPossibleException if a value can not be decrypted, in eager mode, or if the password of a
+	 * sealed file is wrong
+	 * @throws IllegalArgumentException if the recorded or the supplied parameters are invalid
+	 */
+	public void load(File file) throws IOException
+	{
+		String algorithm = _strAlgorithm;
+		Map<String, String> recorded = null;
+		Properties props = new Properties();
+		ConcurrentMap<String, String> values = null;
+		String value = null;
+		PBEStringEncryptor svc = null;
+
+		PropertiesEditor.KeyFilter all = new PropertiesEditor.KeyFilter()
+		{
+			public boolean accept(String key)
+			{
+				return true;
+			}
+		};
+
+		if (SealedFile.isSealed(file))
+		{
+			recorded = new LinkedHashMap<String, String>();
+			PropertiesEditor.scan(SealedFile.open(file, _strPassword), all, props, recorded);
+		}
+		else
+		{
+			recorded = PropertiesEditor.readHeader(file);
+			PropertiesEditor.scan(file, all, props);
+		}
+
+		if (algorithm == null)
+			algorithm = recorded.get("algorithm");
+		values = new ConcurrentHashMap<String, String>(Math.max(16, props.size() * 4 / 3 + 1));
+		for (String key : props.stringPropertyNames())
+		{
+			value = props.getProperty(key);
+			// without a header the envelope tells the algorithm
+			if (algorithm == null && Envelope.isEncrypted(value) && Envelope.isEnc2(value))
+				algorithm = EncryptorFactory.AES_GCM;
+			values.put(key, value);
+		}
+
+		svc = EncryptorFactory.create(recorded, algorithm, _intIterations, _strSaltGenerator, _strPassword,
+										Math.max(1, _intThreads), file.getPath());
+		_strFile = file.getPath();
+		if (!_blnLazy)
+			decryptAll(values, svc);
+
+		_svc = svc;
+		_plainTexts = new ConcurrentHashMap<String, String>();
+		_values = values;
+	}
+
+	/**
+	 * Returns the plain text value of a property.
+	 * @param key the key
+	 * @return the value or <code>null</code> if the key is not defined
+	 * @throws EncryptionOperationNotPossibleException if the value can not be decrypted, in lazy mode
+	 */
+	public String getProperty(String key)
+	{
+		String value = _values.get(key);
+		String plainText = null;
+
+		if (!Envelope.isEncrypted(value)) return value;
+
+		plainText = _plainTexts.get(key);
+		if (plainText == null)
+		{
+			plainText = Envelope.decrypt(key, value, _svc, _strFile);
+			_plainTexts.putIfAbsent(key, plainText);
+		}
+		return plainText;
+	}
+
+	/**
+	 * Returns the plain text value of a property.
+	 * @param key the key
+	 * @param defaultValue the value returned if the key is not defined
+	 * @return the value or the default value
+	 */
+	public String getProperty(String key, String defaultValue)
+	{
+		String value = getProperty(key);
+
+		return (value == null) ? defaultValue : value;
+	}
+
+	/**
+	 * @param key the key
+	 * @return true if the key is defined
+	 */
+	public boolean containsKey(String key)
+	{
+		return _values.containsKey(key);
+	}
+
+	/**
+	 * @return the keys, unmodifiable
+	 */
+	public Set<String> stringPropertyNames()
+	{
+		return Collections.unmodifiableSet(_values.keySet());
+	}
+
+	/**
+	 * @return the number of properties
+	 */
+	public int size()
+	{
+		return _values.size();
+	}
+
+	/**
+	 * Copies the plain text properties, decrypting those not decrypted yet.
+	 * @return the properties
+	 */
+	public Properties toProperties()
+	{
+		Properties props = new Properties();
+
+		for (String key : _values.keySet())
+			props.setProperty(key, getProperty(key));
+		return props;
+	}
+
+	/**
+	 * Helper method to decrypt the values in place, in contiguous slices on a pool of threads.
+	 */
+	private void decryptAll(final ConcurrentMap<String, String> values, final PBEStringEncryptor svc) throws IOException
+	{
+		int workers = 0;
+		int slice = 0;
+		final List<String> keys = new ArrayList<String>();
+		ExecutorService pool = null;
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+
+		for (Map.Entry<String, String> entry : values.entrySet())
+		{
+			if (Envelope.isEncrypted(entry.getValue())) keys.add(entry.getKey());
+		}
+
+		workers = Math.max(1, Math.min(_intThreads, keys.size()));
+		if (workers == 1)
+		{
+			decryptSlice(values, keys, 0, keys.size(), svc);
+			return;
+		}
+
+		slice = (keys.size() + workers - 1) / workers;
+		pool = Executors.newFixedThreadPool(workers);
+		try
+		{
+			for (int start = 0; start < keys.size(); start += slice)
+			{
+				final int from = start;
+				final int to = Math.min(keys.size(), start + slice);
+
+				results.add(pool.submit(new Callable<Void>()
+				{
+					public Void call() throws Exception
+					{
+						decryptSlice(values, keys, from, to, svc);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results)
+				result.get();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decrypting " + _strFile, ie);
+		}
+		catch (ExecutionException ee)
+		{
+			if (ee.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ee.getCause();
+			throw new IOException(ee.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	private void decryptSlice(ConcurrentMap<String, String> values, List<String> keys, int from, int to,
+								PBEStringEncryptor svc)
+	{
+		String key = null;
+
+		for (int i = from; i < to; i++)
+		{
+			key = keys.get(i);
+			values.put(key, Envelope.decrypt(key, values.get(key), svc, _strFile));
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : EncryptedStore.java
+ * CREATED  : 19-Oct-2026 4:06:52 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+/**
+ * <p>Reads the binary stores written by <code>secpropfile</code> with <code>format="store"</code> or converted by
+ * <code>secstore</code>, in applications. Like {@link EncryptedProperties} it does not depend on ant, only jasypt is required
+ * at run time, and the encryption parameters recorded in the store are used unless overridden.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * EncryptedStore store = new EncryptedStore(System.getenv("SECRET"));
+ * store.open(new File("config/secprops.sst"));
+ * String dbPassword = store.getProperty("DB_PASSWORD");</pre>
+ * The store is memory mapped, nothing but the parameters is read when it is opened. A lookup is a binary search of the
+ * index followed by the decryption of the value found, so the cost of reading a single secret does not depend on the size of
+ * the store. The values are not kept once decrypted.
+ * <p>Once opened, instances are safe for any number of concurrent readers, which share a pool of ciphers.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public final class EncryptedStore
+{
+	private final String _strPassword;
+	private String _strAlgorithm;
+	private int _intIterations = 0;
+	private String _strSaltGenerator;
+	private int _intThreads = Runtime.getRuntime().availableProcessors();
+
+	private volatile BinaryStore _store;
+	private volatile PBEStringEncryptor _svc;
+	private String _strFile;
+
+	/**
+	 * Creates an instance decrypting with the supplied password.
+	 * @param password the password
+	 */
+	public EncryptedStore(String password)
+	{
+		if (password == null) throw new IllegalArgumentException("password must not be null");
+		_strPassword = password;
+	}
+
+	/**
+	 * Sets the encryption algorithm, defaults to the algorithm recorded in the store.
+	 * @param algorithm the algorithm name
+	 */
+	public void setAlgorithm(String algorithm)
+	{
+		_strAlgorithm = algorithm;
+	}
+
+	/**
+	 * Sets the key obtention iterations, defaults to the iterations recorded in the store or else to the default of the
+	 * algorithm.
+	 * @param iterations the key obtention iterations
+	 */
+	public void setIterations(int iterations)
+	{
+		_intIterations = iterations;
+	}
+
+	/**
+	 * Sets the salt generator, defaults to the generator recorded in the store or else to <code>random</code>.
+	 * @param saltGenerator <code>random</code>, <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>
+	 */
+	public void setSaltGenerator(String saltGenerator)
+	{
+		_strSaltGenerator = saltGenerator;
+	}
+
+	/**
+	 * Sets the number of pooled ciphers shared by the concurrent readers, defaults to the number of available processors.
+	 * @param threads the number of pooled ciphers
+	 */
+	public void setThreads(int threads)
+	{
+		_intThreads = threads;
+	}
+
+	/**
+	 * Opens a store, replacing the store opened earlier.
+	 * @param file the store
+	 * @throws IOException if unable to read the store or if it is not a store
+	 * @throws IllegalArgumentException if the recorded or the supplied parameters are invalid
+	 */
+	public void open(File file) throws IOException
+	{
+		BinaryStore store = BinaryStore.open(file, true);
+		PBEStringEncryptor svc = EncryptorFactory.create(store.getHeader(), _strAlgorithm, _intIterations, _strSaltGenerator,
+															_strPassword, Math.max(1, _intThreads), file.getPath());
+
+		_strFile = file.getPath();
+		_svc = svc;
+		_store = store;
+	}
+
+	/**
+	 * Returns the plain text value of a property, only this value is read and decrypted.
+	 * @param key the key
+	 * @return the value or <code>null</code> if the key is not defined
+	 * @throws EncryptionOperationNotPossibleException if the value can not be decrypted
+	 * @throws UncheckedIOException if the value is corrupt
+	 * @throws IllegalStateException if no store is open
+	 */
+	public String getProperty(String key)
+	{
+		BinaryStore store = getStore();
+		int pos = store.find(key);
+		String value = null;
+
+		if (pos == -1) return null;
+
+		try
+		{
+			value = store.getValue(pos);
+		}
+		catch (IOException ioe)
+		{
+			throw new UncheckedIOException(ioe);
+		}
+		return Envelope.isEncrypted(value) ? Envelope.decrypt(key, value, _svc, _strFile) : value;
+	}
+
+	/**
+	 * Returns the plain text value of a property.
+	 * @param key the key
+	 * @param defaultValue the value returned if the key is not defined
+	 * @return the value or the default value
+	 */
+	public String getProperty(String key, String defaultValue)
+	{
+		String value = getProperty(key);
+
+		return (value == null) ? defaultValue : value;
+	}
+
+	/**
+	 * @param key the key
+	 * @return true if the key is defined
+	 */
+	public boolean containsKey(String key)
+	{
+		return getStore().find(key) != -1;
+	}
+
+	/**
+	 * @return the keys in the order of the store, decoded on every call
+	 */
+	public Set<String> stringPropertyNames()
+	{
+		BinaryStore store = getStore();
+		Set<String> keys = new LinkedHashSet<String>(store.size() * 4 / 3 + 1);
+
+		for (int i = 0; i < store.size(); i++)
+			keys.add(store.getKey(i));
+		return keys;
+	}
+
+	/**
+	 * @return the number of properties
+	 */
+	public int size()
+	{
+		return getStore().size();
+	}
+
+	private BinaryStore getStore()
+	{
+		BinaryStore store = _store;
+
+		if (store == null) throw new IllegalStateException("No store open");
+		return store;
+	}
+}
@@ -0,0 +1,386 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : EncryptorCache.java
+ * CREATED  : 18-Oct-2026 11:02:41 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.salt.SaltGenerator;
+
+/**
+ * <p>A project scoped cache of initialized encryptors. Encryptors are keyed by the algorithm, the key obtention iterations,
+ * the salt generator and a fingerprint of the password, so tasks invoked repeatedly with the same settings share a single encryptor instead of
+ * building and initializing a new one on every execution.</p>
+ * <p>The encryptors returned decrypt through a {@link DecryptionCache} shared by all the tasks of the project, so a cipher
+ * text is decrypted only once per build. Its maximum number of entries is set by the project property
+ * <code>org.freeware.secprop.decryptcache.size</code>, 4096 by default, 0 disables it.</p>
+ * <p>The cache is stored as a project reference and registers itself as a build listener, the cached encryptors and the
+ * decrypted values are dropped and the hit/miss counts are logged when the build finishes. Jasypt encryptors are thread safe once initialized, hence the
+ * cache can be used from within <code>parallel</code> tasks.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public final class EncryptorCache implements BuildListener
+{
+	/** The id under which the cache is registered with the project. */
+	public static final String REFID = "org.freeware.ant.taskdefs.EncryptorCache";
+
+	/** The project property setting the maximum number of entries of the decryption cache, 0 disables it. */
+	public static final String DECRYPT_CACHE_SIZE = "org.freeware.secprop.decryptcache.size";
+
+	/** Use the default key obtention iterations of the algorithm. */
+	public static final int DEFAULT_ITERATIONS = 0;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Project _project;
+	private final ConcurrentMap<String, PBEStringEncryptor> _cache = new ConcurrentHashMap<String, PBEStringEncryptor>();
+	private final AtomicLong _lngHits = new AtomicLong();
+	private final AtomicLong _lngMisses = new AtomicLong();
+	private final DecryptionCache _decryptions;
+
+	private EncryptorCache(Project project)
+	{
+		String size = project.getProperty(DECRYPT_CACHE_SIZE);
+		int entries = DecryptionCache.DEFAULT_SIZE;
+
+		_project = project;
+		if (size != null)
+		{
+			try
+			{
+				entries = Integer.parseInt(size.trim());
+			}
+			catch (NumberFormatException nfe)
+			{
+				throw new BuildException("Invalid " + DECRYPT_CACHE_SIZE + ": " + size);
+			}
+		}
+		_decryptions = (entries > 0) ? new DecryptionCache(entries) : null;
+	}
+
+	/**
+	 * Returns the cache associated with the supplied project, creating and registering one if required.
+	 * @param project the project whose cache is required
+	 * @return the encryptor cache for the project
+	 */
+	public static EncryptorCache getInstance(Project project)
+	{
+		EncryptorCache cache = null;
+
+		synchronized (project)
+		{
+			cache = (EncryptorCache) project.getReference(REFID);
+			if (cache == null)
+			{
+				cache = new EncryptorCache(project);
+				project.addReference(REFID, cache);
+				project.addBuildListener(cache);
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns an initialized encryptor for the supplied settings, an existing one is reused if available.
+	 * @param algorithm the algorithm id as returned by {@link CryptAlgorithm#toAlgorithm(String)}
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations or {@link #DEFAULT_ITERATIONS}
+	 * @return the initialized encryptor
+	 */
+	public PBEStringEncryptor getEncryptor(int algorithm, String password, int iterations)
+	{
+		return getEncryptor(algorithm, password, iterations, 1);
+	}
+
+	/**
+	 * Returns an initialized encryptor for the supplied settings, an existing one is reused if available. When the pool size
+	 * is more than one, a pooled encryptor is returned so that the callers running on different threads do not serialize on
+	 * a single cipher.
+	 * @param algorithm the algorithm id as returned by {@link CryptAlgorithm#toAlgorithm(String)}
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations or {@link #DEFAULT_ITERATIONS}
+	 * @param poolSize the number of ciphers to be pooled
+	 * @return the initialized encryptor
+	 */
+	public PBEStringEncryptor getEncryptor(int algorithm, String password, int iterations, int poolSize)
+	{
+		return getEncryptor(algorithm, password, iterations, null, poolSize);
+	}
+
+	/**
+	 * Returns an initialized encryptor for the supplied settings, an existing one is reused if available.
+	 * @param algorithm the algorithm id as returned by {@link CryptAlgorithm#toAlgorithm(String)}
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations or {@link #DEFAULT_ITERATIONS}
+	 * @param saltGenerator the salt generator, <code>random</code>, <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>, <code>null</code> for the default random salts
+	 * @param poolSize the number of ciphers to be pooled
+	 * @return the initialized encryptor
+	 * @throws BuildException if the salt generator can not be instantiated
+	 */
+	public PBEStringEncryptor getEncryptor(int algorithm, String password, int iterations, String saltGenerator, int poolSize)
+	{
+		return getEncryptor(algorithm, password, iterations, saltGenerator, poolSize, false);
+	}
+
+	/**
+	 * Returns an initialized encryptor for the supplied settings, an existing one is reused if available. When the key agent
+	 * is to be used and is running, the returned encryptor sends its work to the agent, otherwise an in process encryptor is
+	 * returned.
+	 * @param algorithm the algorithm id as returned by {@link CryptAlgorithm#toAlgorithm(String)}
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations or {@link #DEFAULT_ITERATIONS}
+	 * @param saltGenerator the salt generator, <code>random</code>, <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>, <code>null</code> for the default random salts
+	 * @param poolSize the number of ciphers to be pooled
+	 * @param agent whether to use the {@link KeyAgent} if it is running
+	 * @return the initialized encryptor
+	 * @throws BuildException if the salt generator can not be instantiated
+	 */
+	public PBEStringEncryptor getEncryptor(int algorithm, String password, int iterations, String saltGenerator, int poolSize,
+											boolean agent)
+	{
+		String namespace = null;
+		String key = null;
+		PBEStringEncryptor svc = null;
+		PBEStringEncryptor prev = null;
+
+		if (poolSize < 1 || CryptAlgorithm.isAesGcm(algorithm)) poolSize = 1;
+
+		namespace = CryptAlgorithm.toValue(algorithm) + ":" + iterations + ":" + saltGenerator + ":" + fingerprint(password);
+		key = namespace + ":" + poolSize;
+		if (agent)
+		{
+			// the agent pools on its side
+			svc = _cache.get("agent:" + key);
+			if (svc != null)
+			{
+				_lngHits.incrementAndGet();
+				return cached(svc, namespace);
+			}
+
+			svc = AgentEncryptor.connect(KeyAgent.defaultDirectory(), algorithm, password, iterations, saltGenerator);
+			if (svc != null)
+			{
+				_lngMisses.incrementAndGet();
+				prev = _cache.putIfAbsent("agent:" + key, svc);
+				if (prev == null) return cached(svc, namespace);
+
+				((AgentEncryptor) svc).close();
+				return cached(prev, namespace);
+			}
+			_project.log("No key agent running, encrypting in process", Project.MSG_VERBOSE);
+		}
+
+		svc = _cache.get(key);
+		if (svc != null)
+		{
+			_lngHits.incrementAndGet();
+			return cached(svc, namespace);
+		}
+
+		_lngMisses.incrementAndGet();
+		svc = createEncryptor(algorithm, password, iterations, createSaltGenerator(saltGenerator), poolSize);
+		prev = _cache.putIfAbsent(key, svc);
+		return cached((prev == null) ? svc : prev, namespace);
+	}
+
+	/**
+	 * @return the decryption cache of the project, <code>null</code> if disabled
+	 */
+	DecryptionCache getDecryptionCache()
+	{
+		return _decryptions;
+	}
+
+	/**
+	 * Helper method to wrap an encryptor so that it decrypts through the decryption cache, if enabled.
+	 */
+	private PBEStringEncryptor cached(PBEStringEncryptor svc, String namespace)
+	{
+		return (_decryptions == null) ? svc : _decryptions.wrap(svc, namespace);
+	}
+
+	/**
+	 * @return the number of requests served from the cache
+	 */
+	public long getHits()
+	{
+		return _lngHits.get();
+	}
+
+	/**
+	 * @return the number of requests which required a new encryptor
+	 */
+	public long getMisses()
+	{
+		return _lngMisses.get();
+	}
+
+	/**
+	 * Drops all the cached encryptors and decrypted values.
+	 */
+	public void clear()
+	{
+		if (_decryptions != null)
+			_decryptions.clear();
+		for (PBEStringEncryptor svc : _cache.values())
+		{
+			if (svc instanceof AgentEncryptor) ((AgentEncryptor) svc).close();
+		}
+		_cache.clear();
+	}
+
+	/**
+	 * Builds and initializes a new encryptor which is not cached, used to measure the cost of the settings.
+	 * @param algorithm the algorithm id
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations
+	 * @param saltGenerator the salt generator, <code>null</code> for the default one
+	 * @return the initialized encryptor
+	 * @throws BuildException if the salt generator can not be instantiated
+	 */
+	static PBEStringEncryptor newEncryptor(int algorithm, String password, int iterations, String saltGenerator)
+	{
+		return newEncryptor(algorithm, password, iterations, saltGenerator, 1);
+	}
+
+	/**
+	 * Builds and initializes a new encryptor which is not cached.
+	 * @param algorithm the algorithm id
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations
+	 * @param saltGenerator the salt generator, <code>null</code> for the default one
+	 * @param poolSize the number of ciphers to be pooled
+	 * @return the initialized encryptor
+	 * @throws BuildException if the salt generator can not be instantiated
+	 */
+	static PBEStringEncryptor newEncryptor(int algorithm, String password, int iterations, String saltGenerator,
+											int poolSize)
+	{
+		if (poolSize < 1 || CryptAlgorithm.isAesGcm(algorithm)) poolSize = 1;
+		return createEncryptor(algorithm, password, iterations, createSaltGenerator(saltGenerator), poolSize);
+	}
+
+	/**
+	 * Helper method to build and initialize a new encryptor.
+	 * @param algorithm the algorithm id
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations
+	 * @param saltGenerator the salt generator, <code>null</code> for the default one
+	 * @param poolSize the number of ciphers to be pooled
+	 * @return the initialized encryptor
+	 */
+	private static PBEStringEncryptor createEncryptor(int algorithm, String password, int iterations,
+														SaltGenerator saltGenerator, int poolSize)
+	{
+		return EncryptorFactory.create(CryptAlgorithm.toValue(algorithm), password, iterations, saltGenerator, poolSize);
+	}
+
+	/**
+	 * Helper method to instantiate a salt generator.
+	 * @param name <code>random</code>, <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>, may be <code>null</code>
+	 * @return the salt generator or <code>null</code> if no name is supplied
+	 * @throws BuildException if the class can not be instantiated
+	 */
+	private static SaltGenerator createSaltGenerator(String name)
+	{
+		try
+		{
+			return EncryptorFactory.createSaltGenerator(name);
+		}
+		catch (IllegalArgumentException iae)
+		{
+			throw new BuildException(iae.getMessage(), iae.getCause());
+		}
+	}
+
+	/**
+	 * Helper method to compute a fingerprint of the password, so that the password itself is not kept as part of the key.
+	 * @param password the password
+	 * @return the hex encoded SHA-256 digest of the password
+	 */
+	static String fingerprint(String password)
+	{
+		byte[] digest = null;
+		char[] chars = null;
+
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256").digest(password.getBytes("UTF-8"));
+		}
+		catch (NoSuchAlgorithmException nsae)
+		{
+			throw new BuildException(nsae);
+		}
+		catch (UnsupportedEncodingException uee)
+		{
+			throw new BuildException(uee);
+		}
+
+		chars = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++)
+		{
+			chars[i * 2] = HEX[(digest[i] >> 4) & 0x0F];
+			chars[i * 2 + 1] = HEX[digest[i] & 0x0F];
+		}
+		return new String(chars);
+	}
+
+	/** {@inheritDoc}. */
+	public void buildFinished(BuildEvent event)
+	{
+		if (_lngHits.get() > 0 || _lngMisses.get() > 0)
+			_project.log("Encryptor cache: " + _lngHits.get() + " hit(s), " + _lngMisses.get() + " miss(es)");
+		if (_decryptions != null && (_decryptions.getHits() > 0 || _decryptions.getMisses() > 0))
+			_project.log("Decryption cache: " + _decryptions.summary());
+		clear();
+		_project.removeBuildListener(this);
+	}
+
+	/** {@inheritDoc}. */
+	public void buildStarted(BuildEvent event)
+	{
+	}
+
+	/** {@inheritDoc}. */
+	public void targetStarted(BuildEvent event)
+	{
+	}
+
+	/** {@inheritDoc}. */
+	public void targetFinished(BuildEvent event)
+	{
+	}
+
+	/** {@inheritDoc}. */
+	public void taskStarted(BuildEvent event)
+	{
+	}
+
+	/** {@inheritDoc}. */
+	public void taskFinished(BuildEvent event)
+	{
+	}
+
+	/** {@inheritDoc}. */
+	public void messageLogged(BuildEvent event)
+	{
+	}
+}
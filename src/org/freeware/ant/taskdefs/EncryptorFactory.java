@@ -0,0 +1,162 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : EncryptorFactory.java
+ * CREATED  : 19-Oct-2026 2:38:44 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.Map;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.encryption.pbe.config.EnvironmentStringPBEConfig;
+import org.jasypt.salt.RandomSaltGenerator;
+import org.jasypt.salt.SaltGenerator;
+
+/**
+ * <p>Builds the initialized encryptors of the supported algorithms. Used by the {@link EncryptorCache} of the tasks and by
+ * {@link EncryptedProperties}, hence free of any ant dependency, the algorithms are therefore named rather than referred to
+ * by their {@link CryptAlgorithm} ids.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class EncryptorFactory
+{
+	/** The name of the PBKDF2 and AES-GCM algorithm. */
+	static final String AES_GCM = "PBKDF2WITHHMACSHA256ANDAES_GCM";
+
+	/** The default algorithm. */
+	static final String DEFAULT_ALGORITHM = "PBEWITHMD5ANDDES";
+
+	private EncryptorFactory()
+	{
+	}
+
+	/**
+	 * Builds and initializes a new encryptor. The AES-GCM encryptor holds no per call state, hence it is never pooled.
+	 * @param algorithm the algorithm name
+	 * @param password the encryption password
+	 * @param iterations the key obtention iterations, 0 or less for the default of the algorithm
+	 * @param saltGenerator the salt generator, <code>null</code> for the default one
+	 * @param poolSize the number of ciphers to be pooled
+	 * @return the initialized encryptor
+	 */
+	static PBEStringEncryptor create(String algorithm, String password, int iterations, SaltGenerator saltGenerator,
+										int poolSize)
+	{
+		StandardPBEStringEncryptor std = null;
+		PooledPBEStringEncryptor pooled = null;
+		EnvironmentStringPBEConfig cfg = null;
+
+		if (AES_GCM.equalsIgnoreCase(algorithm))
+			return new AesGcmStringEncryptor(password, (iterations > 0) ? iterations : AesGcmStringEncryptor.DEFAULT_ITERATIONS,
+												saltGenerator);
+
+		cfg = new EnvironmentStringPBEConfig();
+		cfg.setAlgorithm(algorithm);
+		cfg.setPassword(password);
+		if (iterations > 0)
+			cfg.setKeyObtentionIterations(iterations);
+		if (saltGenerator != null)
+			cfg.setSaltGenerator(saltGenerator);
+
+		// Initialize eagerly, so that concurrent users do not contend on the lazy initialization lock
+		if (poolSize > 1)
+		{
+			pooled = new PooledPBEStringEncryptor();
+			pooled.setConfig(cfg);
+			pooled.setPoolSize(poolSize);
+			pooled.initialize();
+			return pooled;
+		}
+
+		std = new StandardPBEStringEncryptor();
+		std.setConfig(cfg);
+		std.initialize();
+		return std;
+	}
+
+	/**
+	 * Builds and initializes a new encryptor, the parameters not supplied are taken from those recorded in a file.
+	 * @param recorded the parameters recorded in the file by name
+	 * @param algorithm the algorithm name, <code>null</code> for the recorded or else the default algorithm
+	 * @param iterations the key obtention iterations, 0 or less for the recorded iterations or else the default of the algorithm
+	 * @param saltGenerator the salt generator name, <code>null</code> for the recorded or else the default generator
+	 * @param password the encryption password
+	 * @param poolSize the number of ciphers to be pooled
+	 * @param source the file, named in the errors
+	 * @return the initialized encryptor
+	 * @throws IllegalArgumentException if a parameter is invalid
+	 */
+	static PBEStringEncryptor create(Map<String, String> recorded, String algorithm, int iterations, String saltGenerator,
+										String password, int poolSize, String source)
+	{
+		if (algorithm == null)
+			algorithm = recorded.containsKey("algorithm") ? recorded.get("algorithm") : DEFAULT_ALGORITHM;
+		if (iterations <= 0 && recorded.containsKey("iterations"))
+		{
+			try
+			{
+				iterations = Integer.parseInt(recorded.get("iterations"));
+			}
+			catch (NumberFormatException nfe)
+			{
+				throw new IllegalArgumentException("Invalid iterations recorded in " + source + ": " + recorded.get("iterations"));
+			}
+		}
+		if (saltGenerator == null)
+			saltGenerator = recorded.get("saltGenerator");
+
+		return create(algorithm, password, iterations, createSaltGenerator(saltGenerator), poolSize);
+	}
+
+	/**
+	 * Instantiates a salt generator.
+	 * @param name <code>random</code>, <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>, may be <code>null</code>
+	 * @return the salt generator or <code>null</code> if no name is supplied
+	 * @throws IllegalArgumentException if the class can not be instantiated
+	 */
+	static SaltGenerator createSaltGenerator(String name)
+	{
+		if (name == null)
+			return null;
+		else if ("random".equalsIgnoreCase(name))
+			return new RandomSaltGenerator();
+		else if ("zero".equalsIgnoreCase(name))
+		{
+			// same as jasypt's ZeroSaltGenerator, which is not part of the lite distribution
+			return new SaltGenerator()
+			{
+				public byte[] generateSalt(int lengthBytes)
+				{
+					return new byte[lengthBytes];
+				}
+
+				public boolean includePlainSaltInEncryptionResults()
+				{
+					return false;
+				}
+			};
+		}
+
+		try
+		{
+			return Class.forName(name, true, EncryptorFactory.class.getClassLoader()).asSubclass(SaltGenerator.class)
+						.getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException roe)
+		{
+			// ClassNotFoundException, NoSuchMethodException, InstantiationException, IllegalAccessException or a failure of the
+			// constructor
+			throw new IllegalArgumentException("Invalid salt generator: " + name, roe);
+		}
+		catch (ClassCastException cce)
+		{
+			throw new IllegalArgumentException("Not a salt generator: " + name, cce);
+		}
+	}
+}
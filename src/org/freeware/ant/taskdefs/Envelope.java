@@ -0,0 +1,94 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : Envelope.java
+ * CREATED  : 19-Oct-2026 2:31:06 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+/**
+ * <p>The envelopes of the encrypted values, <code>ENC(...)</code> for the jasypt PBE algorithms and <code>ENC2(...)</code>
+ * for <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>. Used by the tasks and by {@link EncryptedProperties}, hence free of any
+ * ant dependency.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class Envelope
+{
+	private Envelope()
+	{
+	}
+
+	/**
+	 * Checks whether the value is wrapped in the <code>ENC(...)</code> or in the <code>ENC2(...)</code> envelope.
+	 * @param value the value to be checked, may be <code>null</code>
+	 * @return true if the value is encrypted
+	 */
+	static boolean isEncrypted(String value)
+	{
+		return (value != null && (value.startsWith(EnvelopeCodec.ENC_PREFIX) || value.startsWith(EnvelopeCodec.ENC2_PREFIX))
+				&& value.endsWith(")"));
+	}
+
+	/**
+	 * Checks whether an encrypted value is wrapped in the <code>ENC2(...)</code> envelope.
+	 * @param value the encrypted value
+	 * @return true for the AES-GCM envelope
+	 */
+	static boolean isEnc2(String value)
+	{
+		return value.startsWith(EnvelopeCodec.ENC2_PREFIX);
+	}
+
+	/**
+	 * Strips the envelope from an encrypted value.
+	 * @param value the encrypted value
+	 * @return the cipher text
+	 */
+	static String unwrap(String value)
+	{
+		return value.substring(value.indexOf('(') + 1, value.length() - 1);
+	}
+
+	/**
+	 * Decrypts a value wrapped in an envelope, the <code>ENC2(...)</code> values can only be decrypted by the AES-GCM
+	 * encryptor, which reads the cipher text in place.
+	 * @param key the key of the value, named in the errors
+	 * @param value the encrypted value
+	 * @param svc the encryptor
+	 * @param source the file of the value, named in the errors
+	 * @return the plain text
+	 * @throws EncryptionOperationNotPossibleException if the value can not be decrypted
+	 */
+	static String decrypt(String key, String value, PBEStringEncryptor svc, String source)
+	{
+		if (isEnc2(value) && !(svc instanceof AesGcmStringEncryptor))
+			throw new EncryptionOperationNotPossibleException("ENC2 value of " + key + " in " + source
+																+ " requires the algorithm " + EncryptorFactory.AES_GCM);
+		try
+		{
+			if (svc instanceof AesGcmStringEncryptor)
+				return ((AesGcmStringEncryptor) svc).decryptEnvelope(value);
+			return svc.decrypt(unwrap(value));
+		}
+		catch (EncryptionOperationNotPossibleException eonpe)
+		{
+			throw new EncryptionOperationNotPossibleException("Unable to decrypt " + key + " in " + source);
+		}
+	}
+
+	/**
+	 * Wraps a cipher text in its envelope with a single allocation.
+	 * @param cipherText the cipher text
+	 * @param aesGcm true if produced by the AES-GCM algorithm
+	 * @return the value to be stored
+	 */
+	static String wrap(String cipherText, boolean aesGcm)
+	{
+		return EnvelopeCodec.wrap(cipherText, aesGcm);
+	}
+}
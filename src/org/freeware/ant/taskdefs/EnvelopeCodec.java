@@ -0,0 +1,275 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : EnvelopeCodec.java
+ * CREATED  : 19-Oct-2026 8:05:42 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.Arrays;
+
+/**
+ * <p>Encodes and decodes the cipher texts of the encrypted values into per thread buffers, so that encrypting or decrypting
+ * a value allocates little more than its result. The base64 encoding is the basic one of <code>java.util.Base64</code>,
+ * the text is encoded and decoded directly from and into the envelope, without the intermediate strings and arrays of the
+ * JDK encoder.</p>
+ * <p>The buffers of a thread grow to the largest value it has processed and are reused afterwards, the callers wipe the
+ * plain texts they have placed in them. Used by {@link AesGcmStringEncryptor} and by {@link Envelope}, hence free of any
+ * ant dependency.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class EnvelopeCodec
+{
+	/** The prefix of the envelope of the jasypt PBE algorithms. */
+	static final String ENC_PREFIX = "ENC(";
+
+	/** The prefix of the envelope of the AES-GCM algorithm. */
+	static final String ENC2_PREFIX = "ENC2(";
+
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	private static final int[] DIGITS = new int[128];
+	private static final char PAD = '=';
+	private static final int MIN_BUFFER = 256;
+
+	private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>()
+	{
+		protected Buffers initialValue()
+		{
+			return new Buffers();
+		}
+	};
+
+	static
+	{
+		Arrays.fill(DIGITS, -1);
+		for (int i = 0; i < ALPHABET.length; i++)
+			DIGITS[ALPHABET[i]] = i;
+	}
+
+	private EnvelopeCodec()
+	{
+	}
+
+	/**
+	 * @return the buffers of the current thread
+	 */
+	static Buffers buffers()
+	{
+		return BUFFERS.get();
+	}
+
+	/**
+	 * Wraps a cipher text in its envelope with a single allocation.
+	 * @param cipherText the cipher text
+	 * @param aesGcm true if produced by the AES-GCM algorithm
+	 * @return the value to be stored
+	 */
+	static String wrap(String cipherText, boolean aesGcm)
+	{
+		int pos = 0;
+		String prefix = aesGcm ? ENC2_PREFIX : ENC_PREFIX;
+		char[] chars = buffers().chars(prefix.length() + cipherText.length() + 1);
+
+		pos = append(prefix, chars, 0);
+		pos = append(cipherText, chars, pos);
+		chars[pos++] = ')';
+		return new String(chars, 0, pos);
+	}
+
+	/**
+	 * Copies a string into a char buffer.
+	 * @param text the string
+	 * @param dst the buffer
+	 * @param pos the position in the buffer
+	 * @return the position after the copied chars
+	 */
+	static int append(String text, char[] dst, int pos)
+	{
+		text.getChars(0, text.length(), dst, pos);
+		return pos + text.length();
+	}
+
+	/**
+	 * @param length the number of bytes
+	 * @return the number of chars of their padded base64 encoding
+	 */
+	static int encodedLength(int length)
+	{
+		return 4 * ((length + 2) / 3);
+	}
+
+	/**
+	 * @param length the number of chars of a base64 text
+	 * @return the largest number of bytes it can decode to
+	 */
+	static int decodedLength(int length)
+	{
+		return 3 * ((length + 3) / 4);
+	}
+
+	/**
+	 * Encodes bytes in padded base64.
+	 * @param src the bytes
+	 * @param off the offset of the first byte
+	 * @param len the number of bytes
+	 * @param dst the buffer receiving the chars, of at least {@link #encodedLength(int)} chars from pos on
+	 * @param pos the position in the buffer
+	 * @return the position after the encoded chars
+	 */
+	static int encode(byte[] src, int off, int len, char[] dst, int pos)
+	{
+		int bits = 0;
+		int end = off + len - len % 3;
+
+		for (int i = off; i < end; i += 3)
+		{
+			bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+			dst[pos++] = ALPHABET[bits >>> 18];
+			dst[pos++] = ALPHABET[(bits >>> 12) & 0x3f];
+			dst[pos++] = ALPHABET[(bits >>> 6) & 0x3f];
+			dst[pos++] = ALPHABET[bits & 0x3f];
+		}
+		if (len % 3 == 1)
+		{
+			bits = (src[end] & 0xff) << 16;
+			dst[pos++] = ALPHABET[bits >>> 18];
+			dst[pos++] = ALPHABET[(bits >>> 12) & 0x3f];
+			dst[pos++] = PAD;
+			dst[pos++] = PAD;
+		}
+		else if (len % 3 == 2)
+		{
+			bits = (src[end] & 0xff) << 16 | (src[end + 1] & 0xff) << 8;
+			dst[pos++] = ALPHABET[bits >>> 18];
+			dst[pos++] = ALPHABET[(bits >>> 12) & 0x3f];
+			dst[pos++] = ALPHABET[(bits >>> 6) & 0x3f];
+			dst[pos++] = PAD;
+		}
+		return pos;
+	}
+
+	/**
+	 * Decodes a region of a base64 text, the padding is optional as with <code>java.util.Base64</code>.
+	 * @param src the text
+	 * @param from the index of the first char
+	 * @param to the index after the last char
+	 * @param dst the buffer receiving the bytes, of at least {@link #decodedLength(int)} bytes
+	 * @return the number of bytes decoded
+	 * @throws IllegalArgumentException if the region is not valid base64
+	 */
+	static int decode(String src, int from, int to, byte[] dst)
+	{
+		int pos = 0;
+		int bits = 0;
+		int count = 0;
+		int digit = 0;
+
+		if (to - from >= 1 && src.charAt(to - 1) == PAD) to--;
+		if (to - from >= 1 && src.charAt(to - 1) == PAD) to--;
+		if ((to - from) % 4 == 1)
+			throw new IllegalArgumentException("Invalid base64 length");
+
+		for (int i = from; i < to; i++)
+		{
+			digit = src.charAt(i);
+			digit = (digit < DIGITS.length) ? DIGITS[digit] : -1;
+			if (digit < 0)
+				throw new IllegalArgumentException("Invalid base64 character at " + i);
+
+			bits = bits << 6 | digit;
+			if (++count == 4)
+			{
+				dst[pos++] = (byte) (bits >>> 16);
+				dst[pos++] = (byte) (bits >>> 8);
+				dst[pos++] = (byte) bits;
+				bits = 0;
+				count = 0;
+			}
+		}
+		if (count == 2)
+			dst[pos++] = (byte) (bits >>> 4);
+		else if (count == 3)
+		{
+			dst[pos++] = (byte) (bits >>> 10);
+			dst[pos++] = (byte) (bits >>> 2);
+		}
+		return pos;
+	}
+
+	/**
+	 * Encodes a text made only of ASCII chars, the common case of the values, without going through a charset encoder.
+	 * @param text the text
+	 * @param dst the buffer receiving the bytes, of at least as many bytes as the text has chars
+	 * @return the number of bytes, -1 if the text has non ASCII chars and must be encoded in UTF-8 instead
+	 */
+	static int encodeAscii(String text, byte[] dst)
+	{
+		char c = 0;
+
+		for (int i = 0; i < text.length(); i++)
+		{
+			c = text.charAt(i);
+			if (c >= 0x80) return -1;
+			dst[i] = (byte) c;
+		}
+		return text.length();
+	}
+
+	/**
+	 * The reusable buffers of a thread.
+	 */
+	static final class Buffers
+	{
+		private byte[] _input = new byte[MIN_BUFFER];
+		private byte[] _output = new byte[MIN_BUFFER];
+		private char[] _chars = new char[MIN_BUFFER];
+		private byte[] _nonce;
+
+		/**
+		 * @param length the number of bytes needed
+		 * @return the buffer of the input of a cipher
+		 */
+		byte[] input(int length)
+		{
+			if (_input.length < length) _input = new byte[grow(length)];
+			return _input;
+		}
+
+		/**
+		 * @param length the number of bytes needed
+		 * @return the buffer of the output of a cipher
+		 */
+		byte[] output(int length)
+		{
+			if (_output.length < length) _output = new byte[grow(length)];
+			return _output;
+		}
+
+		/**
+		 * @param length the number of chars needed
+		 * @return the buffer of the encoded text
+		 */
+		char[] chars(int length)
+		{
+			if (_chars.length < length) _chars = new char[grow(length)];
+			return _chars;
+		}
+
+		/**
+		 * @param length the exact size of the nonce
+		 * @return the buffer of the nonce
+		 */
+		byte[] nonce(int length)
+		{
+			if (_nonce == null || _nonce.length != length) _nonce = new byte[length];
+			return _nonce;
+		}
+
+		private static int grow(int length)
+		{
+			return Math.max(MIN_BUFFER, Integer.highestOneBit(length - 1) << 1);
+		}
+	}
+}
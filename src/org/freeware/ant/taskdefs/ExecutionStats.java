@@ -0,0 +1,275 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : ExecutionStats.java
+ * CREATED  : 18-Oct-2026 11:17:40 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.tools.ant.PropertyHelper;
+
+/**
+ * <p>The timings and counters of a <code>secpropfile</code> execution. The wall time is measured per phase of each file,
+ * <code>setup</code> (encryption parameters, encryptor and digests), <code>read</code>, <code>crypto</code> (evaluation of
+ * the entries) and <code>write</code>. The totals are published as project properties and optionally written as a JSON
+ * report. When the JVM supports the JDK Flight Recorder every phase is also committed as a
+ * <code>org.freeware.ant.SecurePropertyFile.Phase</code> event, see {@link PhaseEvent}.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class ExecutionStats
+{
+	static final int PHASE_SETUP = 0;
+	static final int PHASE_READ = 1;
+	static final int PHASE_CRYPTO = 2;
+	static final int PHASE_WRITE = 3;
+
+	// the counters follow the phase timings
+	private static final int ENTRIES = 4;
+	private static final int UNCHANGED = 5;
+	private static final int CRYPTO_OPS = 6;
+	private static final int BYTES_READ = 7;
+	private static final int BYTES_WRITTEN = 8;
+	private static final int COUNTERS = 9;
+
+	private static final String[] PHASES = {"setup", "read", "crypto", "write"};
+	private static final boolean JFR = isFlightRecorderPresent();
+
+	private final List<FileStats> _files = new ArrayList<FileStats>();
+
+	/**
+	 * Starts the statistics of a file, the returned instance is to be used by a single thread.
+	 * @param file the property file
+	 * @return the statistics of the file
+	 */
+	synchronized FileStats start(File file)
+	{
+		FileStats stats = new FileStats(file);
+
+		_files.add(stats);
+		return stats;
+	}
+
+	/**
+	 * Publishes the totals as project properties named <code>prefix.files</code>, <code>prefix.entries</code>,
+	 * <code>prefix.unchanged</code>, <code>prefix.cryptoOps</code>, <code>prefix.cryptoOpsPerSecond</code>,
+	 * <code>prefix.bytesRead</code>, <code>prefix.bytesWritten</code> and <code>prefix.&lt;phase&gt;.ms</code>.
+	 * @param ph the property helper of the project
+	 * @param prefix the prefix of the property names
+	 */
+	synchronized void publish(PropertyHelper ph, String prefix)
+	{
+		long[] totals = totals();
+
+		if (!prefix.endsWith(".")) prefix += ".";
+
+		ph.setNewProperty(prefix + "files", String.valueOf(_files.size()));
+		ph.setNewProperty(prefix + "entries", String.valueOf(totals[ENTRIES]));
+		ph.setNewProperty(prefix + "unchanged", String.valueOf(totals[UNCHANGED]));
+		ph.setNewProperty(prefix + "cryptoOps", String.valueOf(totals[CRYPTO_OPS]));
+		ph.setNewProperty(prefix + "cryptoOpsPerSecond", String.valueOf(perSecond(totals[CRYPTO_OPS], totals[PHASE_CRYPTO])));
+		ph.setNewProperty(prefix + "bytesRead", String.valueOf(totals[BYTES_READ]));
+		ph.setNewProperty(prefix + "bytesWritten", String.valueOf(totals[BYTES_WRITTEN]));
+		for (int i = 0; i < PHASES.length; i++)
+			ph.setNewProperty(prefix + PHASES[i] + ".ms", String.valueOf(totals[i] / 1000000L));
+	}
+
+	/**
+	 * Writes the totals and the statistics of every file as a JSON document.
+	 * @param report the report file
+	 * @throws IOException if unable to write the report
+	 */
+	synchronized void writeReport(File report) throws IOException
+	{
+		Writer out = null;
+
+		if (report.getParentFile() != null)
+			report.getParentFile().mkdirs();
+
+		out = new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8);
+		try
+		{
+			out.write("{\n  \"totals\": ");
+			writeCounters(out, totals(), "  ");
+			out.write(",\n  \"files\": [");
+			for (int i = 0; i < _files.size(); i++)
+			{
+				out.write((i == 0) ? "\n    {\"file\": " : ",\n    {\"file\": ");
+				out.write(quote(_files.get(i)._filProps.getAbsolutePath()));
+				out.write(", \"stats\": ");
+				writeCounters(out, _files.get(i)._counters, "    ");
+				out.write("}");
+			}
+			out.write("\n  ]\n}\n");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns a one line summary of the totals for the build log.
+	 * @return the summary
+	 */
+	synchronized String summary()
+	{
+		long[] totals = totals();
+
+		return _files.size() + " file(s), " + totals[ENTRIES] + " entries, " + totals[CRYPTO_OPS] + " crypto op(s) in "
+			+ (totals[PHASE_CRYPTO] / 1000000L) + "ms, setup " + (totals[PHASE_SETUP] / 1000000L) + "ms, read "
+			+ (totals[PHASE_READ] / 1000000L) + "ms (" + totals[BYTES_READ] + " bytes), write " + (totals[PHASE_WRITE] / 1000000L)
+			+ "ms (" + totals[BYTES_WRITTEN] + " bytes)";
+	}
+
+	private long[] totals()
+	{
+		long[] totals = new long[COUNTERS];
+
+		for (FileStats stats : _files)
+		{
+			for (int i = 0; i < totals.length; i++)
+				totals[i] += stats._counters[i];
+		}
+		return totals;
+	}
+
+	private static void writeCounters(Writer out, long[] counters, String indent) throws IOException
+	{
+		out.write("{\"entries\": " + counters[ENTRIES] + ", \"unchanged\": " + counters[UNCHANGED] + ", \"cryptoOps\": " + counters[CRYPTO_OPS]
+					+ ", \"cryptoOpsPerSecond\": " + perSecond(counters[CRYPTO_OPS], counters[PHASE_CRYPTO]) + ", \"bytesRead\": "
+					+ counters[BYTES_READ] + ", \"bytesWritten\": " + counters[BYTES_WRITTEN] + ",\n" + indent + "  \"phasesMs\": {");
+		for (int i = 0; i < PHASES.length; i++)
+		{
+			out.write((i == 0) ? "\"" : ", \"");
+			out.write(PHASES[i] + "\": " + String.format(Locale.ROOT, "%.3f", counters[i] / 1000000.0));
+		}
+		out.write("}}");
+	}
+
+	private static long perSecond(long count, long nanos)
+	{
+		return (nanos == 0) ? 0 : count * 1000000000L / nanos;
+	}
+
+	private static String quote(String value)
+	{
+		StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			char ch = value.charAt(i);
+			if (ch == '"' || ch == '\\')
+				sb.append('\\').append(ch);
+			else if (ch < 0x20)
+				sb.append(String.format("\\u%04x", (int) ch));
+			else
+				sb.append(ch);
+		}
+		return sb.append('"').toString();
+	}
+
+	private static boolean isFlightRecorderPresent()
+	{
+		try
+		{
+			Class.forName("jdk.jfr.Event");
+			return true;
+		}
+		catch (ClassNotFoundException cnfe)
+		{
+			return false;
+		}
+		catch (LinkageError le)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * The statistics of a single file. The phases of a file are timed one after the other on the thread processing it.
+	 */
+	static final class FileStats
+	{
+		private final long[] _counters = new long[COUNTERS];
+		private final File _filProps;
+
+		private int _intPhase = -1;
+		private long _lngStart;
+		private Object _event;
+
+		private FileStats(File file)
+		{
+			_filProps = file;
+		}
+
+		/**
+		 * Starts timing a phase, ends the phase being timed if any.
+		 * @param phase the phase
+		 */
+		void begin(int phase)
+		{
+			end();
+			_intPhase = phase;
+			if (JFR) _event = PhaseEvent.start();
+			_lngStart = System.nanoTime();
+		}
+
+		/**
+		 * Ends timing the current phase, if any.
+		 */
+		void end()
+		{
+			if (_intPhase == -1) return;
+
+			_counters[_intPhase] += System.nanoTime() - _lngStart;
+			if (JFR) PhaseEvent.finish(_event, _filProps.getPath(), PHASES[_intPhase], phaseBytes(), _counters[CRYPTO_OPS]);
+			_event = null;
+			_intPhase = -1;
+		}
+
+		void addEntries(int entries)
+		{
+			_counters[ENTRIES] += entries;
+		}
+
+		void addUnchanged(int unchanged)
+		{
+			_counters[UNCHANGED] += unchanged;
+		}
+
+		void addCryptoOps(int ops)
+		{
+			_counters[CRYPTO_OPS] += ops;
+		}
+
+		void addBytesRead(long bytes)
+		{
+			_counters[BYTES_READ] += bytes;
+		}
+
+		void addBytesWritten(long bytes)
+		{
+			_counters[BYTES_WRITTEN] += bytes;
+		}
+
+		// the bytes the phase event reports, those read or written so far by the I/O phases
+		private long phaseBytes()
+		{
+			if (_intPhase == PHASE_READ) return _counters[BYTES_READ];
+			if (_intPhase == PHASE_WRITE) return _counters[BYTES_WRITTEN];
+			return 0;
+		}
+	}
+}
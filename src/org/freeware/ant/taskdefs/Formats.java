@@ -0,0 +1,172 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : Formats.java
+ * CREATED  : 18-Oct-2026 10:52:19 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.text.DecimalFormat;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalField;
+import java.time.temporal.TemporalQueries;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.tools.ant.BuildException;
+
+/**
+ * <p>Shared caches of the compiled date and number formats used by the <code>secentry</code> elements, keyed by pattern. The
+ * date formatters are immutable and shared by all the threads, the number formats are not thread safe and are therefore
+ * cached per thread. Parsing reports failures by returning <code>null</code> rather than by throwing, so that values not
+ * matching the pattern do not take the slow exception path.</p>
+ * <p>The date patterns are those of <code>java.time.format.DateTimeFormatter</code>, which differ from the ones of
+ * <code>SimpleDateFormat</code> for a few letters: <code>u</code> is the year, not the day number of the week, and
+ * <code>y</code> the year of the era, and <code>a</code> must appear once, its text being taken from the locale. Patterns
+ * using only the common letters, e.g. <code>yyyy/MM/dd HH:mm</code> or <code>yyyyMMdd</code>, behave the same.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class Formats
+{
+	/** The date pattern used when none is specified. */
+	static final String DEFAULT_DATE_PATTERN = "yyyy/MM/dd HH:mm";
+
+	private static final ConcurrentMap<String, DateTimeFormatter> DATE_FORMATS
+		= new ConcurrentHashMap<String, DateTimeFormatter>();
+
+	private static final ThreadLocal<Map<String, DecimalFormat>> NUMBER_FORMATS = new ThreadLocal<Map<String, DecimalFormat>>()
+	{
+		protected Map<String, DecimalFormat> initialValue()
+		{
+			return new HashMap<String, DecimalFormat>();
+		}
+	};
+
+	private Formats()
+	{
+	}
+
+	/**
+	 * Returns the date formatter of a pattern.
+	 * @param pattern the pattern, <code>null</code> for {@link #DEFAULT_DATE_PATTERN}
+	 * @return the formatter
+	 * @throws BuildException if the pattern is invalid
+	 */
+	static DateTimeFormatter dateFormat(String pattern) throws BuildException
+	{
+		DateTimeFormatter fmt = null;
+
+		if (pattern == null) pattern = DEFAULT_DATE_PATTERN;
+
+		fmt = DATE_FORMATS.get(pattern);
+		if (fmt == null)
+		{
+			try
+			{
+				fmt = DateTimeFormatter.ofPattern(pattern);
+			}
+			catch (IllegalArgumentException iae)
+			{
+				throw new BuildException("Invalid date pattern: " + pattern, iae);
+			}
+			DATE_FORMATS.putIfAbsent(pattern, fmt);
+		}
+		return fmt;
+	}
+
+	/**
+	 * Returns the number format of a pattern for the calling thread.
+	 * @param pattern the pattern, <code>null</code> for the default number format of the locale
+	 * @return the number format, not to be shared with other threads
+	 * @throws BuildException if the pattern is invalid
+	 */
+	static DecimalFormat numberFormat(String pattern) throws BuildException
+	{
+		String key = (pattern == null) ? "" : pattern;
+		Map<String, DecimalFormat> formats = NUMBER_FORMATS.get();
+		DecimalFormat fmt = formats.get(key);
+
+		if (fmt == null)
+		{
+			try
+			{
+				fmt = (pattern == null) ? new DecimalFormat() : new DecimalFormat(pattern);
+			}
+			catch (IllegalArgumentException iae)
+			{
+				throw new BuildException("Invalid number pattern: " + pattern, iae);
+			}
+			formats.put(key, fmt);
+		}
+		return fmt;
+	}
+
+	/**
+	 * Parses a date. The fields missing from the pattern default to the start of the epoch, e.g. a time only pattern yields
+	 * a time on 1970-01-01, and the zone defaults to the default zone, the same as <code>SimpleDateFormat</code> does.
+	 * @param fmt the formatter
+	 * @param text the text to be parsed
+	 * @return the date or <code>null</code> if the text does not match the pattern
+	 */
+	static ZonedDateTime parseDate(DateTimeFormatter fmt, String text)
+	{
+		ParsePosition pos = new ParsePosition(0);
+		TemporalAccessor parsed = null;
+		LocalDate date = null;
+		LocalTime time = null;
+		ZoneId zone = null;
+
+		// the unresolved parse reports a mismatch through the position instead of an exception
+		if (fmt.parseUnresolved(text, pos) == null || pos.getErrorIndex() >= 0 || pos.getIndex() < text.length())
+			return null;
+
+		try
+		{
+			// DateTimeFormatter can not resolve an unresolved result, only the matching text is parsed again
+			parsed = fmt.parse(text);
+			date = parsed.query(TemporalQueries.localDate());
+			if (date == null)
+				date = LocalDate.of(get(parsed, ChronoField.YEAR, 1970), get(parsed, ChronoField.MONTH_OF_YEAR, 1),
+									get(parsed, ChronoField.DAY_OF_MONTH, 1));
+			time = parsed.query(TemporalQueries.localTime());
+			if (time == null)
+				time = LocalTime.of(get(parsed, ChronoField.HOUR_OF_DAY, 0), get(parsed, ChronoField.MINUTE_OF_HOUR, 0),
+									get(parsed, ChronoField.SECOND_OF_MINUTE, 0));
+			zone = parsed.query(TemporalQueries.zone());
+			return ZonedDateTime.of(date, time, (zone == null) ? ZoneId.systemDefault() : zone);
+		}
+		catch (DateTimeException dte)
+		{
+			// well formed but invalid, e.g. the 30th of February
+			return null;
+		}
+	}
+
+	/**
+	 * Parses a number, any text following the number is ignored.
+	 * @param fmt the number format
+	 * @param text the text to be parsed
+	 * @return the number or <code>null</code> if the text does not start with a number
+	 */
+	static Number parseNumber(DecimalFormat fmt, String text)
+	{
+		return fmt.parse(text, new ParsePosition(0));
+	}
+
+	private static int get(TemporalAccessor parsed, TemporalField field, int defaultValue)
+	{
+		return parsed.isSupported(field) ? parsed.get(field) : defaultValue;
+	}
+}
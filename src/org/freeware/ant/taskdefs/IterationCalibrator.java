@@ -0,0 +1,116 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : IterationCalibrator.java
+ * CREATED  : 18-Oct-2026 9:03:27 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.Arrays;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+
+/**
+ * <p>Finds the highest key obtention iteration count an algorithm can afford on the current machine within a latency budget.
+ * For the jasypt PBE algorithms the key is derived for every value, so the budget applies to the encryption of a single
+ * value. For <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code> the key is derived once per run and the encryption of a value costs
+ * next to nothing, so the budget applies to the key derivation.</p>
+ * <p>The cost grows linearly with the iterations, after a warm up a probe measurement is therefore scaled to the budget,
+ * refined until it settles and then verified and lowered until it fits.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class IterationCalibrator
+{
+	/** The lowest iteration count ever returned. */
+	static final int MIN_ITERATIONS = 1000;
+
+	private static final int MAX_ITERATIONS = 100000000;
+	private static final int RUNS = 5;
+	private static final int MAX_REFINEMENTS = 5;
+	private static final long WARMUP_NANOS = 500000000L;
+	private static final String SAMPLE = "calibration-sample-value";
+
+	private IterationCalibrator()
+	{
+	}
+
+	/**
+	 * Calibrates the iterations of an algorithm.
+	 * @param algorithm the algorithm id
+	 * @param password the password
+	 * @param saltGenerator the salt generator, <code>null</code> for the default one
+	 * @param budgetMillis the latency budget in milliseconds
+	 * @return the highest iteration count, rounded down to a multiple of 1000, which fits the budget, at least
+	 * {@link #MIN_ITERATIONS}
+	 */
+	static int calibrate(int algorithm, String password, String saltGenerator, long budgetMillis)
+	{
+		long budget = budgetMillis * 1000000L;
+		long elapsed = 0;
+		long start = System.nanoTime();
+		int iterations = MIN_ITERATIONS;
+		int next = 0;
+
+		// the first runs are interpreted and would make the algorithm look far slower than it is
+		do
+			elapsed = measure(algorithm, password, saltGenerator, iterations);
+		while (System.nanoTime() - start < WARMUP_NANOS);
+
+		// double the probe until it is long enough to be measured reliably
+		while (elapsed < budget / 8 && iterations < MAX_ITERATIONS / 2)
+		{
+			iterations *= 2;
+			elapsed = measure(algorithm, password, saltGenerator, iterations);
+		}
+
+		// the compiler may still be catching up, scale until the estimate settles
+		iterations = round((long) iterations * budget / Math.max(1, elapsed));
+		for (int i = 0; i < MAX_REFINEMENTS; i++)
+		{
+			elapsed = measure(algorithm, password, saltGenerator, iterations);
+			next = round((long) iterations * budget / Math.max(1, elapsed));
+			if (Math.abs(next - iterations) <= iterations / 20) break;
+			iterations = next;
+		}
+		while (iterations > MIN_ITERATIONS && measure(algorithm, password, saltGenerator, iterations) > budget)
+			iterations = round(iterations * 9L / 10);
+
+		return iterations;
+	}
+
+	/**
+	 * Helper method to measure the median cost of the operation bound by the budget.
+	 * @return the median time in nanoseconds
+	 */
+	private static long measure(int algorithm, String password, String saltGenerator, int iterations)
+	{
+		long start = 0;
+		long[] times = new long[RUNS];
+		PBEStringEncryptor svc = null;
+		boolean derivation = CryptAlgorithm.isAesGcm(algorithm);
+
+		svc = EncryptorCache.newEncryptor(algorithm, password, iterations, saltGenerator);
+		// warm up
+		svc.encrypt(SAMPLE);
+
+		for (int i = 0; i < RUNS; i++)
+		{
+			start = System.nanoTime();
+			if (derivation)
+				EncryptorCache.newEncryptor(algorithm, password, iterations, saltGenerator);
+			else
+				svc.encrypt(SAMPLE);
+			times[i] = System.nanoTime() - start;
+		}
+
+		Arrays.sort(times);
+		return times[RUNS / 2];
+	}
+
+	private static int round(long iterations)
+	{
+		return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations / 1000 * 1000));
+	}
+}
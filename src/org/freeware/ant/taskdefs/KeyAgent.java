@@ -0,0 +1,955 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : KeyAgent.java
+ * CREATED  : 19-Oct-2026 12:06:51 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
+
+/**
+ * <p>A local key agent holding initialized encryptors, and with them the derived keys and a warm JIT, for the short lived
+ * build JVMs. The tasks started with <code>agent="true"</code> send their encryption and decryption requests to the agent
+ * when it is running and do the work in process otherwise.</p>
+ * <p>The agent listens on an ephemeral loopback port only. The port and a random access token are published in the
+ * <code>agent.properties</code> file of the agent directory, <code>~/.secagent</code> unless the system property
+ * <code>org.freeware.secagent.dir</code> says otherwise. The agent refuses to start, and the clients refuse to connect, unless
+ * the directory and the file belong to the current user and are accessible by that user only, i.e. have the permissions
+ * 0700 and 0600 where the file system supports them.</p>
+ * <p>The token itself never goes over the socket. On connecting, the client sends a random nonce and the agent answers with
+ * its own nonce and an HMAC of both under the token, proving that it is the agent of the file before the client sends
+ * anything else, the client then proves the same with an HMAC in the opposite order. Both derive a session key from the
+ * nonces. An encryptor is selected by a handle, an HMAC of the password under the token, and the password is sent, sealed
+ * with the session key, only when the agent has no encryptor for the handle yet. The agent exits, and drops its encryptors,
+ * after it has been idle for the idle timeout.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * java -cp antsecprops.jar:jasypt.jar:ant.jar org.freeware.ant.taskdefs.KeyAgent start -idle 1800
+ * java -cp antsecprops.jar:jasypt.jar:ant.jar org.freeware.ant.taskdefs.KeyAgent stop</pre>
+ * or the <code>secagent</code> task.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public final class KeyAgent
+{
+	/** The system property overriding the agent directory. */
+	public static final String DIR_PROPERTY = "org.freeware.secagent.dir";
+
+	/** The default idle timeout in seconds. */
+	public static final int DEFAULT_IDLE_TIMEOUT = 900;
+
+	static final String AGENT_FILE = "agent.properties";
+	static final int MAGIC = 0x53454341;
+	static final int VERSION = 2;
+
+	static final byte OP_OPEN = 1;
+	static final byte OP_ENCRYPT = 2;
+	static final byte OP_DECRYPT = 3;
+	static final byte OP_STOP = 4;
+
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_ERROR = 1;
+	static final byte STATUS_UNKNOWN = 2;
+
+	static final int NONCE_BYTES = 32;
+
+	/** The largest number of values of a batch, larger batches are split by the clients. */
+	static final int MAX_BATCH = 64 * 1024;
+
+	// the longest string accepted, guards against a client claiming absurd lengths
+	private static final int MAX_STRING = 16 * 1024 * 1024;
+	private static final int ACCEPT_TIMEOUT = 1000;
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+	private static final String SEAL_ALGORITHM = "AES/GCM/NoPadding";
+	private static final int SEAL_NONCE_BYTES = 12;
+	private static final int SEAL_TAG_BITS = 128;
+
+	private final File _dir;
+	private final long _lngIdleMillis;
+	private final byte[] _token;
+	private final String _strToken;
+	private final SecureRandom _random = new SecureRandom();
+	private final ConcurrentMap<String, Holder> _encryptors = new ConcurrentHashMap<String, Holder>();
+
+	private volatile long _lngLastActivity = System.currentTimeMillis();
+	private volatile boolean _blnStopped = false;
+	private ServerSocket _server;
+
+	/**
+	 * An authenticated connection to the agent, along with the session key.
+	 */
+	static final class Session
+	{
+		final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+		final byte[] token;
+		final byte[] key;
+
+		Session(Socket s, DataInputStream input, DataOutputStream output, byte[] accessToken, byte[] sessionKey)
+		{
+			socket = s;
+			in = input;
+			out = output;
+			token = accessToken;
+			key = sessionKey;
+		}
+	}
+
+	/**
+	 * An encryptor and the time it was last used.
+	 */
+	private static final class Holder
+	{
+		final PBEStringEncryptor svc;
+		volatile long lastUsed = System.currentTimeMillis();
+
+		Holder(PBEStringEncryptor encryptor)
+		{
+			svc = encryptor;
+		}
+	}
+
+	private KeyAgent(File dir, int idleSeconds)
+	{
+		_dir = dir;
+		_lngIdleMillis = idleSeconds * 1000L;
+		_token = new byte[32];
+		_random.nextBytes(_token);
+		_strToken = Base64.getEncoder().encodeToString(_token);
+	}
+
+	/**
+	 * Runs or controls the agent. Usage: <code>KeyAgent [start [-idle seconds] [-dir directory] | stop [-dir directory] |
+	 * status [-dir directory]]</code>, the agent runs in the foreground until stopped or idle.
+	 * @param args the command line arguments
+	 * @throws Exception if the agent can not be started
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		String command = "start";
+		int idle = DEFAULT_IDLE_TIMEOUT;
+		File dir = defaultDirectory();
+
+		for (int i = 0; i < args.length; i++)
+		{
+			if ("-idle".equals(args[i]) && i + 1 < args.length)
+				idle = Integer.parseInt(args[++i]);
+			else if ("-dir".equals(args[i]) && i + 1 < args.length)
+				dir = new File(args[++i]);
+			else if (!args[i].startsWith("-"))
+				command = args[i];
+			else
+			{
+				System.err.println("Usage: KeyAgent [start [-idle seconds] | stop | status] [-dir directory]");
+				System.exit(2);
+			}
+		}
+
+		if ("stop".equals(command))
+			System.exit(stop(dir) ? 0 : 1);
+		else if ("status".equals(command))
+		{
+			System.out.println(isRunning(dir) ? "running" : "not running");
+			System.exit(isRunning(dir) ? 0 : 1);
+		}
+		else if (isRunning(dir))
+		{
+			System.err.println("A key agent is already running for " + dir.getAbsolutePath());
+			System.exit(1);
+		}
+		new KeyAgent(dir, idle).run();
+	}
+
+	/**
+	 * Returns the directory of the agent file.
+	 * @return the directory named by the system property {@link #DIR_PROPERTY} or else <code>~/.secagent</code>
+	 */
+	public static File defaultDirectory()
+	{
+		String dir = System.getProperty(DIR_PROPERTY);
+
+		return (dir != null) ? new File(dir) : new File(System.getProperty("user.home"), ".secagent");
+	}
+
+	/**
+	 * Checks whether an agent is running and proves that it holds the token of the agent file.
+	 * @param dir the agent directory
+	 * @return true if an agent is running
+	 */
+	public static boolean isRunning(File dir)
+	{
+		Session session = connect(dir);
+
+		if (session == null) return false;
+		close(session.socket);
+		return true;
+	}
+
+	/**
+	 * Asks the running agent to stop.
+	 * @param dir the agent directory
+	 * @return true if an agent was running
+	 */
+	public static boolean stop(File dir)
+	{
+		Session session = connect(dir);
+
+		if (session == null) return false;
+		try
+		{
+			session.out.writeByte(OP_STOP);
+			session.out.flush();
+			// the agent closes the connection once it has stopped accepting
+			session.in.read();
+			return true;
+		}
+		catch (IOException ioe)
+		{
+			return true;
+		}
+		finally
+		{
+			close(session.socket);
+		}
+	}
+
+	/**
+	 * Opens an authenticated connection to the agent of a directory. Nothing but a nonce is sent before the listener has
+	 * proven that it holds the token of the agent file.
+	 * @param dir the agent directory
+	 * @return the connection or <code>null</code> if no agent is running, if the agent directory or file is not private to
+	 * the current user or if the listener is not the agent
+	 */
+	static Session connect(File dir)
+	{
+		File file = new File(dir, AGENT_FILE);
+		Properties props = new Properties();
+		InputStream in = null;
+		Socket socket = null;
+		DataInputStream din = null;
+		DataOutputStream out = null;
+		byte[] token = null;
+		byte[] clientNonce = new byte[NONCE_BYTES];
+		byte[] agentNonce = new byte[NONCE_BYTES];
+		byte[] proof = new byte[NONCE_BYTES];
+
+		if (!file.isFile()) return null;
+		if (!isPrivate(dir.toPath(), true) || !isPrivate(file.toPath(), false)) return null;
+
+		try
+		{
+			in = new FileInputStream(file);
+			try
+			{
+				props.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+			token = Base64.getDecoder().decode(props.getProperty("token"));
+
+			socket = new Socket();
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+													Integer.parseInt(props.getProperty("port"))), 500);
+			din = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			new SecureRandom().nextBytes(clientNonce);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.write(clientNonce);
+			out.flush();
+
+			din.readFully(agentNonce);
+			din.readFully(proof);
+			if (!MessageDigest.isEqual(proof, mac(token, "agent", clientNonce, agentNonce)))
+				throw new IOException("The listener is not the key agent");
+
+			out.write(mac(token, "client", agentNonce, clientNonce));
+			out.flush();
+			if (din.readByte() != STATUS_OK)
+				throw new IOException("Rejected by the key agent");
+			return new Session(socket, din, out, token, mac(token, "session", clientNonce, agentNonce));
+		}
+		catch (IOException ioe)
+		{
+			close(socket);
+			return null;
+		}
+		catch (RuntimeException re)
+		{
+			// missing or malformed port or token
+			close(socket);
+			return null;
+		}
+	}
+
+	/**
+	 * Derives the key handle of a password, the HMAC of the password under the token of the agent.
+	 * @param session the connection
+	 * @param password the password
+	 * @return the handle
+	 */
+	static String handle(Session session, String password)
+	{
+		return Base64.getEncoder().encodeToString(mac(session.token, "key", password.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Seals a password with the session key, bound to its handle.
+	 * @param session the connection
+	 * @param handle the key handle of the password
+	 * @param password the password
+	 * @return the nonce followed by the cipher text
+	 * @throws IOException if the password can not be sealed
+	 */
+	static byte[] seal(Session session, String handle, String password) throws IOException
+	{
+		byte[] nonce = new byte[SEAL_NONCE_BYTES];
+		byte[] sealed = null;
+		byte[] cipherText = null;
+
+		new SecureRandom().nextBytes(nonce);
+		cipherText = crypt(Cipher.ENCRYPT_MODE, session.key, nonce, handle, password.getBytes(StandardCharsets.UTF_8), 0);
+		sealed = new byte[SEAL_NONCE_BYTES + cipherText.length];
+		System.arraycopy(nonce, 0, sealed, 0, SEAL_NONCE_BYTES);
+		System.arraycopy(cipherText, 0, sealed, SEAL_NONCE_BYTES, cipherText.length);
+		return sealed;
+	}
+
+	/**
+	 * Helper method to accept the connections until the agent is stopped or idle.
+	 * @throws IOException if unable to listen or to write the agent file
+	 */
+	private void run() throws IOException
+	{
+		ExecutorService pool = null;
+
+		_server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		_server.setSoTimeout(ACCEPT_TIMEOUT);
+		writeAgentFile();
+
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			public void run()
+			{
+				deleteAgentFile();
+			}
+		});
+
+		pool = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "secagent-connection");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		log("Key agent listening on port " + _server.getLocalPort() + ", idle timeout " + (_lngIdleMillis / 1000) + "s");
+		try
+		{
+			while (!_blnStopped)
+			{
+				try
+				{
+					final Socket socket = _server.accept();
+					touch();
+					pool.execute(new Runnable()
+					{
+						public void run()
+						{
+							serve(socket);
+						}
+					});
+				}
+				catch (SocketTimeoutException ste)
+				{
+					evictIdle();
+				}
+				catch (IOException ioe)
+				{
+					// closed by stop
+					if (!_blnStopped) throw ioe;
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+			close(_server);
+			_encryptors.clear();
+			deleteAgentFile();
+			log("Key agent stopped");
+		}
+	}
+
+	/**
+	 * Helper method to serve the requests of a single connection.
+	 * @param socket the connection
+	 */
+	private void serve(Socket socket)
+	{
+		byte op = 0;
+		Holder holder = null;
+		DataInputStream in = null;
+		DataOutputStream out = null;
+		byte[] sessionKey = null;
+
+		try
+		{
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, _lngIdleMillis));
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return;
+
+			sessionKey = authenticate(in, out);
+			if (sessionKey == null)
+			{
+				out.writeByte(STATUS_ERROR);
+				out.flush();
+				return;
+			}
+			out.writeByte(STATUS_OK);
+			out.flush();
+
+			while (!_blnStopped)
+			{
+				try
+				{
+					op = in.readByte();
+				}
+				catch (EOFException eofe)
+				{
+					return;
+				}
+				touch();
+
+				if (op == OP_STOP)
+				{
+					_blnStopped = true;
+					close(_server);
+					return;
+				}
+				else if (op == OP_OPEN)
+					holder = open(sessionKey, in, out);
+				else if ((op == OP_ENCRYPT || op == OP_DECRYPT) && holder != null)
+				{
+					if (!process(op, holder, in, out))
+					{
+						out.flush();
+						return;
+					}
+				}
+				else
+					return;
+				out.flush();
+			}
+		}
+		catch (IOException ioe)
+		{
+			// the client went away or timed out
+		}
+		finally
+		{
+			close(socket);
+		}
+	}
+
+	/**
+	 * Helper method to prove the possession of the token to the client and to check the proof of the client.
+	 * @return the session key or <code>null</code> if the client does not hold the token
+	 */
+	private byte[] authenticate(DataInputStream in, DataOutputStream out) throws IOException
+	{
+		byte[] clientNonce = new byte[NONCE_BYTES];
+		byte[] agentNonce = new byte[NONCE_BYTES];
+		byte[] proof = new byte[NONCE_BYTES];
+
+		in.readFully(clientNonce);
+		_random.nextBytes(agentNonce);
+		out.write(agentNonce);
+		out.write(mac(_token, "agent", clientNonce, agentNonce));
+		out.flush();
+
+		in.readFully(proof);
+		if (!MessageDigest.isEqual(proof, mac(_token, "client", agentNonce, clientNonce))) return null;
+		return mac(_token, "session", clientNonce, agentNonce);
+	}
+
+	/**
+	 * Helper method to select the encryptor of a connection by its key handle. When the agent has no encryptor for the handle
+	 * it asks for the sealed password and creates the encryptor.
+	 */
+	private Holder open(byte[] sessionKey, DataInputStream in, DataOutputStream out) throws IOException
+	{
+		String algorithm = readString(in);
+		int iterations = in.readInt();
+		String saltGenerator = readString(in);
+		String handle = readString(in);
+		String key = algorithm + ":" + iterations + ":" + saltGenerator + ":" + handle;
+		String password = null;
+		Holder holder = _encryptors.get(key);
+
+		if (handle == null)
+		{
+			out.writeByte(STATUS_ERROR);
+			writeString(out, "Missing key handle");
+			return null;
+		}
+		if (holder != null)
+		{
+			out.writeByte(STATUS_OK);
+			return holder;
+		}
+
+		out.writeByte(STATUS_UNKNOWN);
+		out.flush();
+		password = unseal(sessionKey, handle, readBytes(in));
+		if (password == null)
+		{
+			out.writeByte(STATUS_ERROR);
+			writeString(out, "Invalid key handle");
+			return null;
+		}
+
+		try
+		{
+			holder = _encryptors.get(key);
+			if (holder == null)
+			{
+				holder = new Holder(EncryptorCache.newEncryptor(CryptAlgorithm.toAlgorithm(algorithm), password, iterations,
+																saltGenerator, Runtime.getRuntime().availableProcessors()));
+				_encryptors.putIfAbsent(key, holder);
+				holder = _encryptors.get(key);
+			}
+			out.writeByte(STATUS_OK);
+			return holder;
+		}
+		catch (RuntimeException re)
+		{
+			// BuildException for an invalid algorithm or salt generator, or a jasypt initialization failure
+			out.writeByte(STATUS_ERROR);
+			writeString(out, String.valueOf(re.getMessage()));
+			return null;
+		}
+	}
+
+	/**
+	 * Helper method to encrypt or decrypt a batch of values. A batch fails as a whole.
+	 * @return false if the size of the batch is invalid, the rest of the request is then not read and the connection is to be
+	 * closed
+	 */
+	private boolean process(byte op, Holder holder, DataInputStream in, DataOutputStream out) throws IOException
+	{
+		int count = in.readInt();
+		String[] values = null;
+
+		// bounded like the lengths of the strings, guards against a client claiming absurd sizes
+		if (count < 0 || count > MAX_BATCH)
+		{
+			out.writeByte(STATUS_ERROR);
+			writeString(out, "Invalid batch size " + count);
+			return false;
+		}
+
+		values = new String[count];
+		for (int i = 0; i < count; i++)
+			values[i] = readString(in);
+
+		holder.lastUsed = System.currentTimeMillis();
+		try
+		{
+			for (int i = 0; i < count; i++)
+				values[i] = (op == OP_ENCRYPT) ? holder.svc.encrypt(values[i]) : holder.svc.decrypt(values[i]);
+		}
+		catch (RuntimeException re)
+		{
+			out.writeByte(STATUS_ERROR);
+			writeString(out, String.valueOf(re.getMessage()));
+			return true;
+		}
+
+		out.writeByte(STATUS_OK);
+		out.writeInt(count);
+		for (String value : values)
+			writeString(out, value);
+		return true;
+	}
+
+	/**
+	 * Helper method to drop the encryptors not used within the idle timeout and to stop the agent once it is idle.
+	 */
+	private void evictIdle()
+	{
+		long now = System.currentTimeMillis();
+
+		for (Iterator<Map.Entry<String, Holder>> it = _encryptors.entrySet().iterator(); it.hasNext();)
+		{
+			if (now - it.next().getValue().lastUsed > _lngIdleMillis) it.remove();
+		}
+		if (now - _lngLastActivity > _lngIdleMillis)
+		{
+			log("Key agent idle for " + (_lngIdleMillis / 1000) + "s");
+			_blnStopped = true;
+		}
+	}
+
+	private void touch()
+	{
+		_lngLastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Helper method to open a password sealed by {@link #seal(Session, String, String)} and to check it against its handle.
+	 * @return the password or <code>null</code> if it can not be opened or does not match the handle
+	 */
+	private String unseal(byte[] sessionKey, String handle, byte[] sealed)
+	{
+		byte[] plain = null;
+		byte[] expected = null;
+
+		if (sealed.length < SEAL_NONCE_BYTES) return null;
+		try
+		{
+			plain = crypt(Cipher.DECRYPT_MODE, sessionKey, Arrays.copyOf(sealed, SEAL_NONCE_BYTES), handle, sealed,
+							SEAL_NONCE_BYTES);
+			expected = mac(_token, "key", plain);
+			if (!MessageDigest.isEqual(expected, Base64.getDecoder().decode(handle))) return null;
+			return new String(plain, StandardCharsets.UTF_8);
+		}
+		catch (IOException ioe)
+		{
+			return null;
+		}
+		catch (IllegalArgumentException iae)
+		{
+			// not a base64 handle
+			return null;
+		}
+		finally
+		{
+			if (plain != null) Arrays.fill(plain, (byte) 0);
+		}
+	}
+
+	/**
+	 * Helper method to publish the port and the token. The directory and the file must belong to the current user and be
+	 * accessible by that user only.
+	 */
+	private void writeAgentFile() throws IOException
+	{
+		Properties props = new Properties();
+		Path tmp = null;
+		OutputStream out = null;
+
+		_dir.mkdirs();
+		if (isOwned(_dir.toPath())) restrict(_dir.toPath(), "rwx------");
+		if (!isPrivate(_dir.toPath(), true))
+			throw new IOException("The agent directory " + _dir.getAbsolutePath() + " must belong to "
+									+ System.getProperty("user.name") + " and have the permissions 0700");
+		props.setProperty("port", String.valueOf(_server.getLocalPort()));
+		props.setProperty("token", _strToken);
+
+		tmp = Files.createTempFile(_dir.toPath(), "agent", ".tmp");
+		restrict(tmp, "rw-------");
+		if (!isPrivate(tmp, false))
+		{
+			Files.delete(tmp);
+			throw new IOException("Unable to restrict the agent file to the permissions 0600");
+		}
+		out = new FileOutputStream(tmp.toFile());
+		try
+		{
+			props.store(out, "secagent");
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(tmp, new File(_dir, AGENT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void deleteAgentFile()
+	{
+		Properties props = new Properties();
+		File file = new File(_dir, AGENT_FILE);
+		InputStream in = null;
+
+		// another agent may have replaced the file since
+		try
+		{
+			in = new FileInputStream(file);
+			try
+			{
+				props.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+			if (_strToken.equals(props.getProperty("token")))
+				file.delete();
+		}
+		catch (IOException ioe)
+		{
+			// already gone
+		}
+	}
+
+	/**
+	 * Checks that a file or directory belongs to the current user and can not be accessed by anybody else, i.e. that a
+	 * directory has the permissions 0700 and a file the permissions 0600 where the file system supports them. Links are not
+	 * followed.
+	 * @param path the file or directory
+	 * @param directory true for a directory
+	 * @return true if the path is private to the current user
+	 */
+	static boolean isPrivate(Path path, boolean directory)
+	{
+		BasicFileAttributes attrs = null;
+
+		try
+		{
+			attrs = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			return (directory ? attrs.isDirectory() : attrs.isRegularFile()) && isOwned(path)
+					&& ((PosixFileAttributes) attrs).permissions()
+						.equals(PosixFilePermissions.fromString(directory ? "rwx------" : "rw-------"));
+		}
+		catch (UnsupportedOperationException uoe)
+		{
+			// not a POSIX file system, the user profile directory is private already, check the owner only
+			try
+			{
+				attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				return (directory ? attrs.isDirectory() : attrs.isRegularFile()) && isOwned(path);
+			}
+			catch (IOException ioe)
+			{
+				return false;
+			}
+		}
+		catch (IOException ioe)
+		{
+			return false;
+		}
+	}
+
+	private static boolean isOwned(Path path)
+	{
+		String user = System.getProperty("user.name");
+		String owner = null;
+
+		try
+		{
+			owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName();
+		}
+		catch (IOException ioe)
+		{
+			return false;
+		}
+		catch (UnsupportedOperationException uoe)
+		{
+			return false;
+		}
+		// a Windows owner is qualified by its domain
+		return owner.equals(user) || owner.endsWith("\\" + user);
+	}
+
+	private static void restrict(Path path, String permissions)
+	{
+		try
+		{
+			Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+		}
+		catch (UnsupportedOperationException uoe)
+		{
+			// not a POSIX file system, the user profile directory is private already
+		}
+		catch (IOException ioe)
+		{
+			// best effort
+		}
+	}
+
+	private static void log(String message)
+	{
+		System.out.println("[secagent] " + message);
+	}
+
+	/**
+	 * Computes the HMAC-SHA256 of a label and of byte arrays under a key.
+	 */
+	private static byte[] mac(byte[] key, String label, byte[]... parts)
+	{
+		Mac mac = null;
+
+		try
+		{
+			mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+			mac.update(label.getBytes(StandardCharsets.UTF_8));
+			for (byte[] part : parts)
+				mac.update(part);
+			return mac.doFinal();
+		}
+		catch (GeneralSecurityException gse)
+		{
+			// HmacSHA256 is required of every Java platform
+			throw new IllegalStateException(gse);
+		}
+	}
+
+	/**
+	 * Encrypts or decrypts with AES-GCM under the session key, the handle being the associated data.
+	 */
+	private static byte[] crypt(int mode, byte[] key, byte[] nonce, String handle, byte[] data, int offset)
+		throws IOException
+	{
+		Cipher cipher = null;
+
+		try
+		{
+			cipher = Cipher.getInstance(SEAL_ALGORITHM);
+			cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(SEAL_TAG_BITS, nonce));
+			cipher.updateAAD(handle.getBytes(StandardCharsets.UTF_8));
+			return cipher.doFinal(data, offset, data.length - offset);
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new IOException("Unable to seal or unseal the password", gse);
+		}
+	}
+
+	/**
+	 * Writes a length prefixed byte array.
+	 */
+	static void writeBytes(DataOutputStream out, byte[] value) throws IOException
+	{
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+	/**
+	 * Reads a byte array written by {@link #writeBytes(DataOutputStream, byte[])}.
+	 */
+	static byte[] readBytes(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		byte[] bytes = null;
+
+		if (length < 0 || length > MAX_STRING) throw new IOException("Invalid length " + length);
+		bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes a length prefixed UTF-8 string, <code>null</code> is written as the length -1.
+	 */
+	static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = null;
+
+		if (value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+	 */
+	static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		byte[] bytes = null;
+
+		if (length == -1) return null;
+		if (length < 0 || length > MAX_STRING) throw new IOException("Invalid string length " + length);
+
+		bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void close(Socket socket)
+	{
+		try
+		{
+			if (socket != null) socket.close();
+		}
+		catch (IOException ioe)
+		{
+			// ignore
+		}
+	}
+
+	private static void close(ServerSocket server)
+	{
+		try
+		{
+			if (server != null) server.close();
+		}
+		catch (IOException ioe)
+		{
+			// ignore
+		}
+	}
+}
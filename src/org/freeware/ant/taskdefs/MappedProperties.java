@@ -0,0 +1,489 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : MappedProperties.java
+ * CREATED  : 18-Oct-2026 7:02:44 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * <p>A read only view of a property file for very large files. The file is memory mapped and indexed in a single pass which
+ * records, for each key, the offsets of the key and of the value in the file along with the hash code of the key. Neither the
+ * keys nor the values are decoded while indexing, a value is decoded, including its <code>\\uXXXX</code> escapes and line
+ * continuations, only when it is asked for, so the heap used depends on the number of keys and not on the size of the file.</p>
+ * <p>The syntax understood is the one of {@link Properties#load(java.io.InputStream)}, when a key is defined more than once
+ * the last definition wins. Files larger than 2GB are not supported.</p>
+ * <p>The mapping is released only once the instance has been garbage collected, on platforms which do not allow a mapped
+ * file to be replaced (e.g. Windows) this view should therefore be used only for files which are not rewritten in place.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class MappedProperties
+{
+	private static final int STRIDE = 5;
+	private static final int KEY_START = 0;
+	private static final int KEY_END = 1;
+	private static final int VALUE_START = 2;
+	private static final int LINE_END = 3;
+	private static final int HASH = 4;
+
+	private final ByteBuffer _buf;
+
+	// STRIDE ints per definition, KEY_START is set to -1 for the definitions superseded by a later one
+	private int[] _entries = new int[STRIDE * 64];
+	private int _intCount = 0;
+	private int _intSize = 0;
+	private int[] _table;
+
+	private MappedProperties(ByteBuffer buf)
+	{
+		_buf = buf;
+	}
+
+	/**
+	 * Maps and indexes a property file.
+	 * @param file the property file
+	 * @return the view of the file
+	 * @throws IOException if unable to read the file or if the file is too large
+	 */
+	static MappedProperties load(File file) throws IOException
+	{
+		MappedProperties mp = null;
+		RandomAccessFile raf = null;
+		FileChannel fc = null;
+
+		raf = new RandomAccessFile(file, "r");
+		try
+		{
+			fc = raf.getChannel();
+			if (fc.size() > Integer.MAX_VALUE)
+				throw new IOException("File too large to be mapped: " + file.getAbsolutePath());
+			// the mapping stays valid once the channel is closed
+			mp = new MappedProperties(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+		}
+		finally
+		{
+			raf.close();
+		}
+		mp.index();
+		return mp;
+	}
+
+	/**
+	 * @return the number of distinct keys defined by the file
+	 */
+	int size()
+	{
+		return _intSize;
+	}
+
+	/**
+	 * Looks up a key without decoding any other key or value.
+	 * @param key the key
+	 * @return the decoded value or <code>null</code> if the key is not defined
+	 * @throws IOException if the value contains a malformed escape sequence
+	 */
+	String getProperty(String key) throws IOException
+	{
+		int entry = find(key, key.hashCode());
+		return (entry == -1) ? null : decode(entry + VALUE_START, entry + LINE_END);
+	}
+
+	/**
+	 * Loads the values of the keys accepted by the filter, in the order in which the keys appear in the file. Every key is
+	 * decoded to be offered to the filter, the values are decoded only for the accepted keys.
+	 * @param filter the filter selecting the keys to be loaded
+	 * @param props the properties to which the selected values are to be added
+	 * @throws IOException if a key or a selected value contains a malformed escape sequence
+	 */
+	void select(PropertiesEditor.KeyFilter filter, Properties props) throws IOException
+	{
+		String key = null;
+
+		for (int entry = 0; entry < _intCount * STRIDE; entry += STRIDE)
+		{
+			if (_entries[entry + KEY_START] == -1) continue;
+
+			key = decode(entry + KEY_START, entry + KEY_END);
+			if (filter.accept(key))
+				props.put(key, decode(entry + VALUE_START, entry + LINE_END));
+		}
+	}
+
+	/**
+	 * Helper method to index the file in a single pass, the logical lines are parsed the same way as
+	 * {@link Properties#load(java.io.Reader)} does.
+	 * @throws IOException if a key contains a malformed escape sequence
+	 */
+	private void index() throws IOException
+	{
+		int c = 0;
+		int pos = 0;
+		int limit = _buf.limit();
+		Cursor cur = new Cursor();
+
+		while (pos < limit)
+		{
+			c = _buf.get(pos) & 0xFF;
+			if (c == ' ' || c == '\t' || c == '\f' || c == '\n' || c == '\r')
+			{
+				pos++;
+				continue;
+			}
+			if (c == '\\' && pos + 1 < limit && isNewLine(_buf.get(pos + 1)))
+			{
+				// a line continued before any character, the next line starts afresh
+				pos++;
+				continue;
+			}
+			if (c == '#' || c == '!')
+			{
+				// comments are never continued
+				while (pos < limit && (c = _buf.get(pos) & 0xFF) != '\n' && c != '\r')
+					pos++;
+				continue;
+			}
+
+			pos = parseLine(cur, pos, limit);
+		}
+
+		_table = new int[tableSize(_intCount)];
+		for (int entry = 0; entry < _intCount * STRIDE; entry += STRIDE)
+			insert(entry);
+	}
+
+	/**
+	 * Helper method to locate the key and the value of a logical line and to record them.
+	 * @param cur the cursor to be used
+	 * @param start the offset of the first character of the line
+	 * @param limit the end of the file
+	 * @return the offset of the line terminator or the end of the file
+	 * @throws IOException if the key contains a malformed escape sequence
+	 */
+	private int parseLine(Cursor cur, int start, int limit) throws IOException
+	{
+		int c = 0;
+		int keyEnd = -1;
+		int valueStart = -1;
+		int mark = 0;
+		boolean empty = true;
+		boolean hasSep = false;
+		boolean precedingBackslash = false;
+
+		cur.reset(start, limit);
+		while (true)
+		{
+			mark = cur.position();
+			c = cur.next();
+			if (c == -1) break;
+
+			empty = false;
+			if (keyEnd == -1)
+			{
+				if ((c == '=' || c == ':') && !precedingBackslash)
+				{
+					keyEnd = mark;
+					hasSep = true;
+				}
+				else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash)
+					keyEnd = mark;
+				else
+					precedingBackslash = (c == '\\') ? !precedingBackslash : false;
+			}
+			else if (valueStart == -1)
+			{
+				if (c == ' ' || c == '\t' || c == '\f')
+					continue;
+				if (!hasSep && (c == '=' || c == ':'))
+					hasSep = true;
+				else
+					valueStart = mark;
+			}
+			else
+				break;
+		}
+
+		// the remainder of the value need not be parsed, only its end
+		if (c != -1)
+			while (cur.next() != -1);
+
+		mark = cur.position();
+		// nothing but a continuation, same as a blank line
+		if (empty) return mark;
+		if (keyEnd == -1) keyEnd = mark;
+		if (valueStart == -1) valueStart = mark;
+
+		add(start, keyEnd, valueStart, mark);
+		return mark;
+	}
+
+	/**
+	 * Helper method to record a definition.
+	 * @throws IOException if the key contains a malformed escape sequence
+	 */
+	private void add(int keyStart, int keyEnd, int valueStart, int lineEnd) throws IOException
+	{
+		int entry = _intCount * STRIDE;
+
+		if (entry == _entries.length)
+			_entries = Arrays.copyOf(_entries, _entries.length * 2);
+
+		_entries[entry + KEY_START] = keyStart;
+		_entries[entry + KEY_END] = keyEnd;
+		_entries[entry + VALUE_START] = valueStart;
+		_entries[entry + LINE_END] = lineEnd;
+		_entries[entry + HASH] = hash(entry);
+		_intCount++;
+	}
+
+	/**
+	 * Helper method to add a definition to the hash table, superseding an earlier definition of the same key.
+	 * @param entry the offset of the definition
+	 * @throws IOException if the key contains a malformed escape sequence
+	 */
+	private void insert(int entry) throws IOException
+	{
+		int mask = _table.length - 1;
+		int slot = mix(_entries[entry + HASH]) & mask;
+		int other = 0;
+
+		while (_table[slot] != 0)
+		{
+			other = _table[slot] - 1;
+			if (_entries[other + HASH] == _entries[entry + HASH] && sameKey(other, entry))
+			{
+				_entries[other + KEY_START] = -1;
+				_table[slot] = entry + 1;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		_table[slot] = entry + 1;
+		_intSize++;
+	}
+
+	/**
+	 * Helper method to look up the definition of a key.
+	 * @param key the key
+	 * @param hash the hash code of the key
+	 * @return the offset of the definition or -1 if the key is not defined
+	 * @throws IOException if a key contains a malformed escape sequence
+	 */
+	private int find(String key, int hash) throws IOException
+	{
+		int mask = _table.length - 1;
+		int slot = mix(hash) & mask;
+		int entry = 0;
+		int c = 0;
+		int i = 0;
+		Decoder dec = null;
+
+		while (_table[slot] != 0)
+		{
+			entry = _table[slot] - 1;
+			if (_entries[entry + HASH] == hash)
+			{
+				dec = new Decoder(_entries[entry + KEY_START], _entries[entry + KEY_END]);
+				for (i = 0; (c = dec.next()) != -1 && i < key.length() && c == key.charAt(i); i++);
+				if (c == -1 && i == key.length()) return entry;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Helper method to compare the keys of two definitions.
+	 * @throws IOException if a key contains a malformed escape sequence
+	 */
+	private boolean sameKey(int entry, int other) throws IOException
+	{
+		int c = 0;
+		Decoder d1 = new Decoder(_entries[entry + KEY_START], _entries[entry + KEY_END]);
+		Decoder d2 = new Decoder(_entries[other + KEY_START], _entries[other + KEY_END]);
+
+		do
+		{
+			c = d1.next();
+			if (c != d2.next()) return false;
+		}
+		while (c != -1);
+		return true;
+	}
+
+	/**
+	 * Helper method to compute the hash code of the key of a definition, same as the one of the decoded key.
+	 * @throws IOException if the key contains a malformed escape sequence
+	 */
+	private int hash(int entry) throws IOException
+	{
+		int c = 0;
+		int h = 0;
+		Decoder dec = new Decoder(_entries[entry + KEY_START], _entries[entry + KEY_END]);
+
+		while ((c = dec.next()) != -1)
+			h = 31 * h + c;
+		return h;
+	}
+
+	/**
+	 * Helper method to decode a part of a definition.
+	 * @param from the index of the start offset in the entries
+	 * @param to the index of the end offset in the entries
+	 * @return the decoded text
+	 * @throws IOException if the text contains a malformed escape sequence
+	 */
+	private String decode(int from, int to) throws IOException
+	{
+		int c = 0;
+		Decoder dec = new Decoder(_entries[from], _entries[to]);
+		StringBuilder sb = new StringBuilder(_entries[to] - _entries[from]);
+
+		while ((c = dec.next()) != -1)
+			sb.append((char) c);
+		return sb.toString();
+	}
+
+	private static int mix(int h)
+	{
+		return h ^ (h >>> 16);
+	}
+
+	private static int tableSize(int count)
+	{
+		int size = 16;
+
+		while (size < count * 2)
+			size <<= 1;
+		return size;
+	}
+
+	/**
+	 * Iterates over the characters of a logical line, joining the continued lines.
+	 */
+	private final class Cursor
+	{
+		private int _intPos;
+		private int _intLimit;
+		private boolean _blnEscaped;
+
+		void reset(int pos, int limit)
+		{
+			_intPos = pos;
+			_intLimit = limit;
+			_blnEscaped = false;
+		}
+
+		int position()
+		{
+			return _intPos;
+		}
+
+		/**
+		 * @return the next character of the logical line, -1 at the end of the line
+		 */
+		int next()
+		{
+			int c = 0;
+
+			while (_intPos < _intLimit)
+			{
+				c = _buf.get(_intPos) & 0xFF;
+				if (c == '\n' || c == '\r') return -1;
+
+				if (c == '\\' && !_blnEscaped && _intPos + 1 < _intLimit && isNewLine(_buf.get(_intPos + 1)))
+				{
+					// a continuation, the line terminator and the leading white space of the next line are dropped
+					_intPos++;
+					if (_buf.get(_intPos) == '\r' && _intPos + 1 < _intLimit && _buf.get(_intPos + 1) == '\n')
+						_intPos++;
+					_intPos++;
+					while (_intPos < _intLimit && isWhiteSpace(_buf.get(_intPos)))
+						_intPos++;
+					continue;
+				}
+
+				_intPos++;
+				_blnEscaped = (c == '\\') ? !_blnEscaped : false;
+				return c;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Decodes the escape sequences of a part of a logical line.
+	 */
+	private final class Decoder
+	{
+		private final Cursor _cur = new Cursor();
+
+		Decoder(int start, int end)
+		{
+			_cur.reset(start, end);
+		}
+
+		/**
+		 * @return the next decoded character, -1 at the end
+		 * @throws IOException if the text contains a malformed escape sequence
+		 */
+		int next() throws IOException
+		{
+			int c = _cur.next();
+			int value = 0;
+
+			if (c != '\\') return c;
+
+			c = _cur.next();
+			switch (c)
+			{
+				case -1:
+					// a trailing backslash at the end of the file is dropped
+					return -1;
+				case 'u':
+					for (int j = 0; j < 4; j++)
+					{
+						c = _cur.next();
+						if (c >= '0' && c <= '9')
+							value = (value << 4) + c - '0';
+						else if (c >= 'a' && c <= 'f')
+							value = (value << 4) + 10 + c - 'a';
+						else if (c >= 'A' && c <= 'F')
+							value = (value << 4) + 10 + c - 'A';
+						else
+							throw new IOException("Malformed \\uxxxx encoding.");
+					}
+					return value;
+				case 't':
+					return '\t';
+				case 'r':
+					return '\r';
+				case 'n':
+					return '\n';
+				case 'f':
+					return '\f';
+				default:
+					return c;
+			}
+		}
+	}
+
+	private static boolean isNewLine(byte b)
+	{
+		return (b == '\n' || b == '\r');
+	}
+
+	private static boolean isWhiteSpace(byte b)
+	{
+		return (b == ' ' || b == '\t' || b == '\f');
+	}
+}
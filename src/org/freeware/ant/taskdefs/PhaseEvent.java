@@ -0,0 +1,77 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : PhaseEvent.java
+ * CREATED  : 18-Oct-2026 11:34:08 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>The JDK Flight Recorder event of a phase of a <code>secpropfile</code> execution. This is the only class referring to the
+ * <code>jdk.jfr</code> API, it is loaded by {@link ExecutionStats} only when the running JVM provides it, so the tasks still
+ * run on JVMs without the flight recorder. The events cost next to nothing unless a recording enables them, e.g. with
+ * <code>-XX:StartFlightRecording</code> in <code>ANT_OPTS</code>.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+@Name("org.freeware.ant.SecurePropertyFile.Phase")
+@Label("Secure Property File Phase")
+@Category({"Ant", "Secure Properties"})
+@Description("A phase of the processing of a property file by secpropfile")
+final class PhaseEvent extends Event
+{
+	@Label("File")
+	String file;
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+
+	@Label("Crypto Operations")
+	long cryptoOps;
+
+	/**
+	 * Starts an event.
+	 * @return the event, typed as an object so that the callers do not refer to this class
+	 */
+	static Object start()
+	{
+		PhaseEvent event = new PhaseEvent();
+
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits an event if the recording enables it.
+	 * @param obj the event returned by {@link #start()}
+	 * @param file the property file
+	 * @param phase the name of the phase
+	 * @param bytes the bytes read or written
+	 * @param cryptoOps the values encrypted or decrypted
+	 */
+	static void finish(Object obj, String file, String phase, long bytes, long cryptoOps)
+	{
+		PhaseEvent event = (PhaseEvent) obj;
+
+		event.end();
+		if (!event.shouldCommit()) return;
+
+		event.file = file;
+		event.phase = phase;
+		event.bytes = bytes;
+		event.cryptoOps = cryptoOps;
+		event.commit();
+	}
+}
@@ -0,0 +1,307 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : PipelinedEditor.java
+ * CREATED  : 19-Oct-2026 6:47:15 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>Rewrites a property file in three overlapping stages, so that the reading of the file, the transformation of its values
+ * and the writing of the result proceed at the same time. A reader thread parses the file in chunks of lines, each chunk is
+ * transformed on a pool of worker threads and the caller writes the chunks in the order of the file as they complete.</p>
+ * <p>The chunks travel through a bounded queue, the reader waits once the queue is full, so the memory used depends on the
+ * number of threads and on the number of keys, whose names are remembered, rather than on the size of the file, and the
+ * elapsed time tends to that of the slowest stage. The output is the one of
+ * {@link PropertiesEditor#rewrite(File, OutputStream, Map, String, Map)}, a key whose value is changed must likewise be
+ * defined only once.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class PipelinedEditor
+{
+	private static final int CHUNK_LINES = 512;
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * Selects and transforms the values, called concurrently by the worker threads.
+	 */
+	interface ValueTransform
+	{
+		/**
+		 * @param key the key read from the file
+		 * @return true if the value of the key is to be transformed
+		 */
+		boolean accept(String key);
+
+		/**
+		 * @param key the key
+		 * @param value the value read from the file, <code>null</code> for a key appended to the file
+		 * @return the new value, <code>null</code> to remove the key
+		 * @throws Exception if the value can not be transformed
+		 */
+		String transform(String key, String value) throws Exception;
+	}
+
+	private PipelinedEditor()
+	{
+	}
+
+	/**
+	 * Copies the source file to the target stream transforming the values of the accepted keys.
+	 * @param source the property file to be edited, need not exist
+	 * @param target the stream to which the edited content is to be written, flushed but not closed
+	 * @param transform the transformation of the values
+	 * @param appended the keys transformed from <code>null</code> and appended at the end if the source does not define them
+	 * @param comment the header comment written when the source does not exist, may be <code>null</code>
+	 * @param header the encryption parameters by name, <code>null</code> to leave the recorded parameters as they are
+	 * @param threads the number of worker threads transforming the values
+	 * @return the number of keys changed, removed or appended
+	 * @throws IOException if unable to read the source or write the target, or if a changed key is defined more than once
+	 * @throws Exception as thrown by the transformation
+	 */
+	static int rewrite(final File source, OutputStream target, final ValueTransform transform, Collection<String> appended,
+						String comment, Map<String, String> header, int threads) throws Exception
+	{
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads));
+		final ExecutorService pool = workers;
+		final BlockingQueue<Future<Chunk>> queue =
+			new ArrayBlockingQueue<Future<Chunk>>(Math.max(1, threads) * CHUNKS_PER_THREAD);
+		Writer out = new BufferedWriter(new OutputStreamWriter(target, PropertiesEditor.ENCODING));
+
+		try
+		{
+			if (header != null)
+				PropertiesEditor.writeHeader(out, header);
+			if (!source.exists())
+			{
+				if (comment != null)
+					PropertiesEditor.writeComment(out, comment);
+				PropertiesEditor.writeComment(out, new Date().toString());
+			}
+			else
+			{
+				reader.submit(new Callable<Void>()
+				{
+					public Void call() throws Exception
+					{
+						read(source, transform, pool, queue);
+						return null;
+					}
+				});
+			}
+			return write(out, queue, transform, appended, header != null, source.exists());
+		}
+		catch (ExecutionException ee)
+		{
+			if (ee.getCause() instanceof Exception)
+				throw (Exception) ee.getCause();
+			throw ee;
+		}
+		finally
+		{
+			reader.shutdownNow();
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Helper method run by the reader thread, parses the file in chunks handed to the worker threads. A failure is handed
+	 * over to the writer in place of the next chunk.
+	 */
+	private static void read(File source, ValueTransform transform, ExecutorService pool, BlockingQueue<Future<Chunk>> queue)
+		throws InterruptedException
+	{
+		String key = null;
+		Chunk chunk = new Chunk();
+		PropertiesEditor.LineReader lr = null;
+
+		try
+		{
+			lr = new PropertiesEditor.LineReader(new BufferedReader(new InputStreamReader(new FileInputStream(source),
+																		PropertiesEditor.ENCODING)));
+			try
+			{
+				while (lr.next())
+				{
+					key = lr.getKey();
+					if (key != null && transform.accept(key))
+						chunk.add(lr.getRaw(), lr.getTerminator(), key, lr.getValue(), transform);
+					else
+						chunk.add(lr.getRaw(), lr.getTerminator(), key, null, null);
+
+					if (chunk.size() == CHUNK_LINES)
+					{
+						queue.put(pool.submit(chunk));
+						chunk = new Chunk();
+					}
+				}
+			}
+			finally
+			{
+				lr.close();
+			}
+			queue.put(pool.submit(chunk));
+			queue.put(done(Chunk.LAST));
+		}
+		catch (final Exception e)
+		{
+			if (e instanceof InterruptedException) throw (InterruptedException) e;
+
+			queue.put(done(new Callable<Chunk>()
+			{
+				public Chunk call() throws Exception
+				{
+					throw e;
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Helper method to write the chunks in order, then the appended keys.
+	 * @return the number of keys changed, removed or appended
+	 */
+	private static int write(Writer out, BlockingQueue<Future<Chunk>> queue, ValueTransform transform,
+								Collection<String> appended, boolean replaceHeader, boolean hasSource) throws Exception
+	{
+		String value = null;
+		Chunk chunk = null;
+		Set<String> pending = new LinkedHashSet<String>(appended);
+		Set<String> seen = new HashSet<String>();
+		Set<String> changed = new HashSet<String>();
+		boolean terminated = true;
+		boolean continued = false;
+
+		while (hasSource && (chunk = queue.take().get()) != Chunk.LAST)
+		{
+			for (int i = 0; i < chunk.size(); i++)
+			{
+				String key = chunk._keys.get(i);
+				String raw = chunk._raws.get(i);
+
+				if (key == null && replaceHeader && raw.trim().startsWith(PropertiesEditor.HEADER_PREFIX))
+					continue;
+
+				// whichever of its definitions is changed, as the editor rejects a changed key defined more than once
+				if (key != null && !seen.add(key) && (changed.contains(key) || chunk.isChanged(i)))
+					throw PropertiesEditor.redefined(key);
+				pending.remove(key);
+				if (key == null || !chunk.isChanged(i))
+					out.write(raw);
+				else if (changed.add(key) && chunk._results.get(i) != null)
+				{
+					PropertiesEditor.writeEntry(out, key, chunk._results.get(i));
+					out.write(chunk._terminators.get(i));
+				}
+				terminated = (chunk._terminators.get(i).length() > 0);
+				continued = (!terminated && PropertiesEditor.trailingBackslashes(raw) % 2 == 1);
+			}
+		}
+
+		for (String key : pending)
+		{
+			value = transform.transform(key, null);
+			if (value == null) continue;
+
+			if (!terminated)
+			{
+				// an empty line ends the dangling continuation of an unterminated last line
+				out.write(PropertiesEditor.LINE_SEPARATOR);
+				if (continued) out.write(PropertiesEditor.LINE_SEPARATOR);
+				terminated = true;
+			}
+			PropertiesEditor.writeEntry(out, key, value);
+			out.write(PropertiesEditor.LINE_SEPARATOR);
+			changed.add(key);
+		}
+		out.flush();
+		return changed.size();
+	}
+
+	private static Future<Chunk> done(Callable<Chunk> callable)
+	{
+		FutureTask<Chunk> task = new FutureTask<Chunk>(callable);
+
+		task.run();
+		return task;
+	}
+
+	/**
+	 * A chunk of consecutive lines, the accepted values are transformed when the chunk is run by a worker thread.
+	 */
+	private static final class Chunk implements Callable<Chunk>
+	{
+		static final Chunk LAST = new Chunk();
+
+		private final List<String> _raws = new ArrayList<String>(CHUNK_LINES);
+		private final List<String> _terminators = new ArrayList<String>(CHUNK_LINES);
+		private final List<String> _keys = new ArrayList<String>(CHUNK_LINES);
+		private final List<String> _values = new ArrayList<String>(CHUNK_LINES);
+		private final List<String> _results = new ArrayList<String>(CHUNK_LINES);
+		private ValueTransform _transform;
+
+		void add(String raw, String terminator, String key, String value, ValueTransform transform)
+		{
+			_raws.add(raw);
+			_terminators.add(terminator);
+			_keys.add(key);
+			_values.add(value);
+			_results.add(value);
+			if (transform != null) _transform = transform;
+		}
+
+		int size()
+		{
+			return _raws.size();
+		}
+
+		boolean isChanged(int i)
+		{
+			String value = _values.get(i);
+			String result = _results.get(i);
+
+			return (value != null && !value.equals(result));
+		}
+
+		public Chunk call() throws Exception
+		{
+			if (_transform == null) return this;
+
+			for (int i = 0; i < _values.size(); i++)
+			{
+				if (_values.get(i) != null)
+					_results.set(i, _transform.transform(_keys.get(i), _values.get(i)));
+			}
+			return this;
+		}
+	}
+}
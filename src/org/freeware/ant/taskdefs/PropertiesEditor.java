@@ -0,0 +1,673 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : PropertiesEditor.java
+ * CREATED  : 18-Oct-2026 3:12:08 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * <p>A streaming, line oriented editor for property files. The file is read one logical line at a time, so the memory used
+ * does not depend on the size of the file. The syntax understood is the one of {@link Properties#load(java.io.InputStream)},
+ * i.e. ISO-8859-1 text with <code>\\uXXXX</code> escapes, <code>#</code> and <code>!</code> comments and line
+ * continuations.</p>
+ * <p>When a file is rewritten only the lines defining the changed keys are replaced, all the other lines including the
+ * comments, blank lines and the original key order are copied through as is.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class PropertiesEditor
+{
+	static final String ENCODING = "ISO-8859-1";
+	static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	/** The prefix of the comment line recording the encryption parameters of a file. */
+	static final String HEADER_PREFIX = "#secpropfile:";
+
+	/**
+	 * Selects the keys whose values are to be loaded while scanning a file.
+	 */
+	interface KeyFilter
+	{
+		/**
+		 * @param key the key read from the file
+		 * @return true if the value of the key is required
+		 */
+		boolean accept(String key);
+	}
+
+	private PropertiesEditor()
+	{
+	}
+
+	/**
+	 * Scans the file and loads the values of the keys accepted by the filter. Values are decoded only for the accepted keys.
+	 * @param file the property file to be scanned
+	 * @param filter the filter selecting the keys to be loaded
+	 * @param props the properties to which the selected values are to be added
+	 * @throws IOException if unable to read the file or if the file contains a malformed escape sequence
+	 */
+	static void scan(File file, KeyFilter filter, Properties props) throws IOException
+	{
+		scan(new FileInputStream(file), filter, props);
+	}
+
+	/**
+	 * Same as {@link #scan(File, KeyFilter, Properties)} for the content of a stream, e.g. that of a sealed file.
+	 * @param in the content of the property file, closed once scanned
+	 * @param filter the filter selecting the keys to be loaded
+	 * @param props the properties to which the selected values are to be added
+	 * @throws IOException if unable to read the stream or if the content contains a malformed escape sequence
+	 */
+	static void scan(InputStream in, KeyFilter filter, Properties props) throws IOException
+	{
+		scan(in, filter, props, null);
+	}
+
+	/**
+	 * Same as {@link #scan(InputStream, KeyFilter, Properties)}, additionally reads the encryption parameters recorded in
+	 * the leading comments in the same pass, as {@link #readHeader(File)} does. The values may be loaded into any map, e.g.
+	 * an insertion ordered one to keep the keys in the order of the file.
+	 * @param in the content of the property file, closed once scanned
+	 * @param filter the filter selecting the keys to be loaded
+	 * @param props the properties to which the selected values are to be added
+	 * @param header the map to which the recorded parameters are to be added, may be <code>null</code>
+	 * @throws IOException if unable to read the stream or if the content contains a malformed escape sequence
+	 */
+	static void scan(InputStream in, KeyFilter filter, Map<? super String, ? super String> props, Map<String, String> header)
+		throws IOException
+	{
+		String key = null;
+		LineReader lr = null;
+		boolean leading = (header != null);
+
+		lr = new LineReader(new BufferedReader(new InputStreamReader(in, ENCODING)));
+		try
+		{
+			while (lr.next())
+			{
+				key = lr.getKey();
+				if (key == null && leading && lr.getRaw().trim().startsWith(HEADER_PREFIX))
+				{
+					parseHeader(lr.getRaw().trim(), header);
+					leading = false;
+				}
+				else if (key != null)
+				{
+					leading = false;
+					if (filter.accept(key))
+						props.put(key, lr.getValue());
+				}
+			}
+		}
+		finally
+		{
+			lr.close();
+		}
+	}
+
+	/**
+	 * Reads the encryption parameters recorded in the leading comments of the file by a previous
+	 * {@link #rewrite(File, OutputStream, Map, String, Map)}, the rest of the file is not read.
+	 * @param file the property file, need not exist
+	 * @return the parameters by name, empty if none are recorded
+	 * @throws IOException if unable to read the file
+	 */
+	static Map<String, String> readHeader(File file) throws IOException
+	{
+		String raw = null;
+		LineReader lr = null;
+		Map<String, String> header = new LinkedHashMap<String, String>();
+
+		if (!file.exists()) return header;
+
+		lr = new LineReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING)));
+		try
+		{
+			while (lr.next() && lr.getKey() == null)
+			{
+				raw = lr.getRaw().trim();
+				if (!raw.startsWith(HEADER_PREFIX)) continue;
+
+				parseHeader(raw, header);
+				break;
+			}
+		}
+		finally
+		{
+			lr.close();
+		}
+		return header;
+	}
+
+	/**
+	 * Helper method to parse the parameters of a header line.
+	 * @param raw the trimmed header line
+	 * @param header the map to which the parameters are to be added
+	 */
+	private static void parseHeader(String raw, Map<String, String> header)
+	{
+		int eq = 0;
+		String param = null;
+		StringTokenizer tok = new StringTokenizer(raw.substring(HEADER_PREFIX.length()), ", ");
+
+		while (tok.hasMoreTokens())
+		{
+			param = tok.nextToken();
+			eq = param.indexOf('=');
+			if (eq > 0) header.put(param.substring(0, eq), param.substring(eq + 1));
+		}
+	}
+
+	/**
+	 * Copies the source file to the target file replacing the definitions of the changed keys. The definition of a changed
+	 * key is rewritten with the new value, the keys mapped to <code>null</code> are removed and the keys not defined in the
+	 * source are appended at the end. A changed key must be defined only once, as with the pipelined mode.
+	 * @param source the property file to be edited, need not exist
+	 * @param target the stream to which the edited content is to be written, flushed but not closed
+	 * @param changes the new values keyed by the property names, a <code>null</code> value removes the key
+	 * @param comment the header comment written when the source does not exist, may be <code>null</code>
+	 * @throws IOException if unable to read the source or write the target, or if a changed key is defined more than once
+	 */
+	static void rewrite(File source, OutputStream target, Map<String, String> changes, String comment) throws IOException
+	{
+		rewrite(source, target, changes, comment, null);
+	}
+
+	/**
+	 * Same as {@link #rewrite(File, OutputStream, Map, String)}, additionally records the encryption parameters in the first
+	 * line of the file, replacing the ones recorded earlier.
+	 * @param source the property file to be edited, need not exist
+	 * @param target the stream to which the edited content is to be written, flushed but not closed
+	 * @param changes the new values keyed by the property names, a <code>null</code> value removes the key
+	 * @param comment the header comment written when the source does not exist, may be <code>null</code>
+	 * @param header the encryption parameters by name, <code>null</code> to leave the recorded parameters as they are
+	 * @throws IOException if unable to read the source or write the target, or if a changed key is defined more than once
+	 */
+	static void rewrite(File source, OutputStream target, Map<String, String> changes, String comment,
+						Map<String, String> header) throws IOException
+	{
+		rewrite(source.exists() ? new FileInputStream(source) : null, target, changes, comment, header);
+	}
+
+	/**
+	 * Same as {@link #rewrite(File, OutputStream, Map, String, Map)} for the content of a stream, e.g. that of a sealed file.
+	 * @param source the content of the property file to be edited, closed once read, <code>null</code> for a new file
+	 * @param target the stream to which the edited content is to be written, flushed but not closed
+	 * @param changes the new values keyed by the property names, a <code>null</code> value removes the key
+	 * @param comment the header comment written when there is no source, may be <code>null</code>
+	 * @param header the encryption parameters by name, <code>null</code> to leave the recorded parameters as they are
+	 * @throws IOException if unable to read the source or write the target, or if a changed key is defined more than once
+	 */
+	static void rewrite(InputStream source, OutputStream target, Map<String, String> changes, String comment,
+						Map<String, String> header) throws IOException
+	{
+		String key = null;
+		String value = null;
+		String raw = null;
+		Writer out = null;
+		LineReader lr = null;
+		Set<String> written = new HashSet<String>();
+		boolean terminated = true;
+		boolean continued = false;
+
+		out = new BufferedWriter(new OutputStreamWriter(target, ENCODING));
+		if (header != null)
+			writeHeader(out, header);
+
+		if (source != null)
+		{
+			lr = new LineReader(new BufferedReader(new InputStreamReader(source, ENCODING)));
+			try
+			{
+				while (lr.next())
+				{
+					raw = lr.getRaw();
+					key = lr.getKey();
+					if (key == null && header != null && raw.trim().startsWith(HEADER_PREFIX))
+						continue;
+					else if (key == null || !changes.containsKey(key))
+						out.write(raw);
+					else if (!written.add(key))
+						throw redefined(key);
+					else if ((value = changes.get(key)) != null)
+					{
+						writeEntry(out, key, value);
+						out.write(lr.getTerminator());
+					}
+					terminated = (lr.getTerminator().length() > 0);
+					continued = (!terminated && trailingBackslashes(raw) % 2 == 1);
+				}
+			}
+			finally
+			{
+				lr.close();
+			}
+		}
+		else
+		{
+			if (comment != null)
+				writeComment(out, comment);
+			writeComment(out, new Date().toString());
+		}
+
+		for (Map.Entry<String, String> change : changes.entrySet())
+		{
+			if (change.getValue() == null || written.contains(change.getKey())) continue;
+
+			if (!terminated)
+			{
+				// an empty line ends the dangling continuation of an unterminated last line
+				out.write(LINE_SEPARATOR);
+				if (continued) out.write(LINE_SEPARATOR);
+				terminated = true;
+			}
+			writeEntry(out, change.getKey(), change.getValue());
+			out.write(LINE_SEPARATOR);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Helper method to report a key defined more than once whose value is changed. The pipelined mode transforms each
+	 * definition as it is read, before the last one, which is the one in effect, is known, so both modes reject such a file
+	 * for their results to be the same.
+	 * @param key the key
+	 * @return the exception to be thrown
+	 */
+	static IOException redefined(String key)
+	{
+		return new IOException("The key " + key + " is defined more than once, its value can not be changed in place");
+	}
+
+	/**
+	 * Helper method to count the backslashes at the end of a line.
+	 * @param line the line
+	 * @return the number of trailing backslashes
+	 */
+	static int trailingBackslashes(String line)
+	{
+		int count = 0;
+
+		for (int i = line.length() - 1; i > -1 && line.charAt(i) == '\\'; i--)
+			count++;
+		return count;
+	}
+
+	/**
+	 * Helper method to write the line recording the encryption parameters.
+	 * @param out the writer
+	 * @param header the parameters by name
+	 * @throws IOException if unable to write
+	 */
+	static void writeHeader(Writer out, Map<String, String> header) throws IOException
+	{
+		String sep = " ";
+
+		out.write(HEADER_PREFIX);
+		for (Map.Entry<String, String> param : header.entrySet())
+		{
+			out.write(sep + param.getKey() + "=" + param.getValue());
+			sep = ", ";
+		}
+		out.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Helper method to write a comment line.
+	 * @param out the writer
+	 * @param comment the comment
+	 * @throws IOException if unable to write
+	 */
+	static void writeComment(Writer out, String comment) throws IOException
+	{
+		out.write('#');
+		out.write(comment.replace("\r\n", "\n").replace('\r', '\n').replace("\n", LINE_SEPARATOR + "#"));
+		out.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Helper method to write a key/value pair escaped the same way as {@link Properties#store(java.io.OutputStream, String)}.
+	 * @param out the writer
+	 * @param key the key
+	 * @param value the value
+	 * @throws IOException if unable to write
+	 */
+	static void writeEntry(Writer out, String key, String value) throws IOException
+	{
+		StringBuilder sb = new StringBuilder(key.length() + value.length() + 16);
+
+		escape(sb, key, true);
+		sb.append('=');
+		escape(sb, value, false);
+		out.write(sb.toString());
+	}
+
+	/**
+	 * Helper method to escape a key or a value.
+	 * @param sb the buffer to which the escaped text is to be appended
+	 * @param text the text to be escaped
+	 * @param isKey true if the text is a key, in which case all the spaces are escaped
+	 */
+	private static void escape(StringBuilder sb, String text, boolean isKey)
+	{
+		char ch = 0;
+
+		for (int i = 0; i < text.length(); i++)
+		{
+			ch = text.charAt(i);
+			if (ch > 61 && ch < 127)
+			{
+				if (ch == '\\') sb.append('\\');
+				sb.append(ch);
+				continue;
+			}
+
+			switch (ch)
+			{
+				case ' ':
+					if (i == 0 || isKey) sb.append('\\');
+					sb.append(' ');
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\f':
+					sb.append("\\f");
+					break;
+				case '=':
+				case ':':
+				case '#':
+				case '!':
+					sb.append('\\').append(ch);
+					break;
+				default:
+					if (ch < 0x0020 || ch > 0x007e)
+					{
+						sb.append("\\u");
+						sb.append(HEX[(ch >> 12) & 0xF]).append(HEX[(ch >> 8) & 0xF]);
+						sb.append(HEX[(ch >> 4) & 0xF]).append(HEX[ch & 0xF]);
+					}
+					else
+						sb.append(ch);
+			}
+		}
+	}
+
+	/**
+	 * Reads a property file one logical line at a time, keeping the raw text of the line (including continuations and the
+	 * line terminator) so that it can be copied through unchanged.
+	 */
+	static final class LineReader
+	{
+		private final Reader _in;
+		private final StringBuilder _raw = new StringBuilder(128);
+		private final StringBuilder _logical = new StringBuilder(128);
+
+		private int _intPushback = -1;
+		private int _intTermStart;
+		private int _intValueStart;
+		private boolean _blnComment;
+		private String _strKey;
+
+		LineReader(Reader in)
+		{
+			_in = in;
+		}
+
+		/**
+		 * Reads the next logical line.
+		 * @return false if the end of the file has been reached
+		 * @throws IOException if unable to read
+		 */
+		boolean next() throws IOException
+		{
+			int c = 0;
+			int backslashes = 0;
+			boolean skipWs = true;
+			boolean continuing = false;
+
+			_raw.setLength(0);
+			_logical.setLength(0);
+			_blnComment = false;
+			_strKey = null;
+
+			while (true)
+			{
+				c = read();
+				if (c == -1)
+				{
+					_intTermStart = _raw.length();
+					// a trailing backslash at the end of the file is dropped
+					if ((backslashes & 1) == 1) _logical.setLength(_logical.length() - 1);
+					break;
+				}
+
+				_raw.append((char) c);
+				if (c == '\n' || c == '\r')
+				{
+					_intTermStart = _raw.length() - 1;
+					if (c == '\r')
+					{
+						c = read();
+						if (c == '\n')
+							_raw.append('\n');
+						else
+							_intPushback = c;
+					}
+
+					if (!_blnComment && (backslashes & 1) == 1)
+					{
+						_logical.setLength(_logical.length() - 1);
+						backslashes = 0;
+						skipWs = true;
+						continuing = true;
+						continue;
+					}
+					break;
+				}
+
+				if (skipWs && (c == ' ' || c == '\t' || c == '\f')) continue;
+				if (skipWs && !continuing && (c == '#' || c == '!')) _blnComment = true;
+				skipWs = false;
+
+				if (_blnComment) continue;
+
+				_logical.append((char) c);
+				backslashes = (c == '\\') ? backslashes + 1 : 0;
+			}
+
+			if (!_blnComment && (_logical.length() > 0 || continuing))
+				parseKey();
+
+			return (_raw.length() > 0);
+		}
+
+		/**
+		 * @return the raw text of the current line including the line terminator
+		 */
+		String getRaw()
+		{
+			return _raw.toString();
+		}
+
+		/**
+		 * @return the line terminator of the current line, empty for the last line of a file without a final new line
+		 */
+		String getTerminator()
+		{
+			return _raw.substring(_intTermStart);
+		}
+
+		/**
+		 * @return the key defined by the current line or <code>null</code> for comments and blank lines
+		 */
+		String getKey()
+		{
+			return _strKey;
+		}
+
+		/**
+		 * @return the decoded value of the current line
+		 * @throws IOException if the value contains a malformed escape sequence
+		 */
+		String getValue() throws IOException
+		{
+			return decode(_intValueStart, _logical.length());
+		}
+
+		void close() throws IOException
+		{
+			_in.close();
+		}
+
+		private int read() throws IOException
+		{
+			int c = _intPushback;
+
+			if (c != -1)
+			{
+				_intPushback = -1;
+				return c;
+			}
+			return _in.read();
+		}
+
+		/**
+		 * Helper method to locate the end of the key and the start of the value, same as {@link Properties#load(Reader)}.
+		 * @throws IOException if the key contains a malformed escape sequence
+		 */
+		private void parseKey() throws IOException
+		{
+			char c = 0;
+			int limit = _logical.length();
+			int keyLen = 0;
+			int valueStart = limit;
+			boolean hasSep = false;
+			boolean precedingBackslash = false;
+
+			while (keyLen < limit)
+			{
+				c = _logical.charAt(keyLen);
+				if ((c == '=' || c == ':') && !precedingBackslash)
+				{
+					valueStart = keyLen + 1;
+					hasSep = true;
+					break;
+				}
+				else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash)
+				{
+					valueStart = keyLen + 1;
+					break;
+				}
+				precedingBackslash = (c == '\\') ? !precedingBackslash : false;
+				keyLen++;
+			}
+
+			while (valueStart < limit)
+			{
+				c = _logical.charAt(valueStart);
+				if (c != ' ' && c != '\t' && c != '\f')
+				{
+					if (!hasSep && (c == '=' || c == ':'))
+						hasSep = true;
+					else
+						break;
+				}
+				valueStart++;
+			}
+
+			_intValueStart = valueStart;
+			_strKey = decode(0, keyLen);
+		}
+
+		/**
+		 * Helper method to decode the escape sequences in a part of the logical line.
+		 * @param start the start offset
+		 * @param end the end offset
+		 * @return the decoded text
+		 * @throws IOException if the text contains a malformed escape sequence
+		 */
+		private String decode(int start, int end) throws IOException
+		{
+			char c = 0;
+			int value = 0;
+			int escape = _logical.indexOf("\\", start);
+			StringBuilder sb = null;
+
+			if (escape == -1 || escape >= end)
+				return _logical.substring(start, end);
+
+			sb = new StringBuilder(end - start);
+			for (int i = start; i < end;)
+			{
+				c = _logical.charAt(i++);
+				if (c != '\\' || i == end)
+				{
+					sb.append(c);
+					continue;
+				}
+
+				c = _logical.charAt(i++);
+				if (c == 'u')
+				{
+					if (i + 4 > end)
+						throw new IOException("Malformed \\uxxxx encoding.");
+
+					value = 0;
+					for (int j = 0; j < 4; j++)
+					{
+						c = _logical.charAt(i++);
+						if (c >= '0' && c <= '9')
+							value = (value << 4) + c - '0';
+						else if (c >= 'a' && c <= 'f')
+							value = (value << 4) + 10 + c - 'a';
+						else if (c >= 'A' && c <= 'F')
+							value = (value << 4) + 10 + c - 'A';
+						else
+							throw new IOException("Malformed \\uxxxx encoding.");
+					}
+					sb.append((char) value);
+				}
+				else if (c == 't')
+					sb.append('\t');
+				else if (c == 'r')
+					sb.append('\r');
+				else if (c == 'n')
+					sb.append('\n');
+				else if (c == 'f')
+					sb.append('\f');
+				else
+					sb.append(c);
+			}
+			return sb.toString();
+		}
+	}
+}
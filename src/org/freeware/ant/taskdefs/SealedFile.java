@@ -0,0 +1,558 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SealedFile.java
+ * CREATED  : 19-Oct-2026 5:58:40 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jasypt.exceptions.EncryptionInitializationException;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+/**
+ * <p>The format of the sealed property files, whose whole content is encrypted at once instead of value by value. A single
+ * key is derived from the password with PBKDF2-HMAC-SHA256 and the text of the property file is streamed through AES-256 in
+ * CTR mode, followed by an HMAC-SHA256 of the whole file. The layout, big endian, is
+ * <pre>
+ * int    magic 'SECF'
+ * short  version
+ * short  number of parameters, followed by the name and the value of each parameter
+ * 16 bytes salt
+ * 16 bytes initial counter block
+ * 16 bytes password check, the truncated HMAC of the preceding bytes
+ * the cipher text of the property file
+ * 32 bytes HMAC of all the preceding bytes</pre>
+ * The strings of the parameters are prefixed by their unsigned short length, the parameters are the key derivation, the
+ * cipher and the iterations. The AES key and the HMAC key are the HMAC-SHA256 of distinct labels under the 256 bits derived
+ * from the password, so a file costs a single PBKDF2 block, the one calibrated for <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>.
+ * The password check tells a wrong password before anything is decrypted, the trailing HMAC is verified once the last byte
+ * has been read, so the content read is to be trusted only once the stream has reached its end. Used by the tasks and by
+ * {@link EncryptedProperties}, hence free of any ant dependency.</p>
+ * <p>Both directions stream through fixed NIO buffers, the cost of a file is that of one key derivation and of the AES and
+ * HMAC passes over its bytes whatever the number of keys.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+final class SealedFile
+{
+	/** The default PBKDF2 iterations, same as those of <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>. */
+	static final int DEFAULT_ITERATIONS = AesGcmStringEncryptor.DEFAULT_ITERATIONS;
+
+	private static final int MAGIC = 0x53454346;
+	private static final int VERSION = 1;
+	private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final String CIPHER_ALGORITHM = "AES/CTR/NoPadding";
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+	private static final String CIPHER = "AES-256-CTR-HMAC-SHA256";
+	private static final int KEY_BYTES = 32;
+	private static final int SALT_BYTES = 16;
+	private static final int IV_BYTES = 16;
+	private static final int CHECK_BYTES = 16;
+	private static final int TAG_BYTES = 32;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte[] ENCRYPTION_LABEL = {'e', 'n', 'c'};
+	private static final byte[] MAC_LABEL = {'m', 'a', 'c'};
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private SealedFile()
+	{
+	}
+
+	/**
+	 * Checks whether a file is sealed, only its first bytes are read.
+	 * @param file the file, need not exist
+	 * @return true if the file starts with the magic of a sealed file
+	 * @throws IOException if unable to read the file
+	 */
+	static boolean isSealed(File file) throws IOException
+	{
+		ByteBuffer magic = ByteBuffer.allocate(4);
+		FileChannel ch = null;
+
+		if (!file.isFile() || file.length() < 4) return false;
+
+		ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			while (magic.hasRemaining() && ch.read(magic) != -1);
+		}
+		finally
+		{
+			ch.close();
+		}
+		return (!magic.hasRemaining() && magic.getInt(0) == MAGIC);
+	}
+
+	/**
+	 * Reads the parameters of a sealed file, nothing is decrypted.
+	 * @param file the sealed file, need not exist
+	 * @return the parameters by name, empty if the file does not exist
+	 * @throws IOException if unable to read the file or if it is not a sealed file
+	 */
+	static Map<String, String> readHeader(File file) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+		FileChannel ch = null;
+
+		if (!file.exists()) return new LinkedHashMap<String, String>();
+
+		ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			while (buf.hasRemaining() && ch.read(buf) != -1);
+		}
+		finally
+		{
+			ch.close();
+		}
+		buf.flip();
+		return parseHeader(buf, file);
+	}
+
+	/**
+	 * Starts a sealed file, the header is written right away.
+	 * @param out the stream the sealed file is written to, flushed but not closed
+	 * @param password the password
+	 * @param iterations the PBKDF2 iterations
+	 * @return the stream the text of the property file is to be written to, to be finished once written
+	 * @throws IOException if unable to write
+	 * @throws EncryptionInitializationException if the algorithms are not supported by the JRE
+	 */
+	static SealingOutputStream seal(OutputStream out, String password, int iterations) throws IOException
+	{
+		byte[] salt = new byte[SALT_BYTES];
+		byte[] iv = new byte[IV_BYTES];
+		SecretKeySpec[] keys = null;
+		ByteArrayOutputStream head = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(head);
+		Cipher cipher = null;
+		Mac mac = null;
+
+		RANDOM.nextBytes(salt);
+		RANDOM.nextBytes(iv);
+		dos.writeInt(MAGIC);
+		dos.writeShort(VERSION);
+		dos.writeShort(3);
+		BinaryStore.writeString(dos, "kdf");
+		BinaryStore.writeString(dos, KDF_ALGORITHM);
+		BinaryStore.writeString(dos, "cipher");
+		BinaryStore.writeString(dos, CIPHER);
+		BinaryStore.writeString(dos, "iterations");
+		BinaryStore.writeString(dos, String.valueOf(iterations));
+		dos.write(salt);
+		dos.write(iv);
+		dos.flush();
+
+		keys = derive(password, salt, iterations);
+		try
+		{
+			cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+			cipher.init(Cipher.ENCRYPT_MODE, keys[0], new IvParameterSpec(iv));
+			mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(keys[1]);
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new EncryptionInitializationException(gse);
+		}
+
+		dos.write(passwordCheck(keys[1], head.toByteArray()));
+		dos.flush();
+		mac.update(head.toByteArray());
+		head.writeTo(out);
+		return new SealingOutputStream(out, cipher, mac);
+	}
+
+	/**
+	 * Opens a sealed file for reading, the content is decrypted as it is read.
+	 * @param file the sealed file
+	 * @param password the password
+	 * @return the stream of the text of the property file, its last read fails if the file has been tampered with
+	 * @throws IOException if unable to read the file or if it is not a sealed file
+	 * @throws EncryptionOperationNotPossibleException if the password is wrong
+	 */
+	static InputStream open(File file, String password) throws IOException
+	{
+		FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try
+		{
+			return new UnsealingInputStream(file, ch, password);
+		}
+		catch (IOException ioe)
+		{
+			ch.close();
+			throw ioe;
+		}
+		catch (RuntimeException re)
+		{
+			ch.close();
+			throw re;
+		}
+	}
+
+	/**
+	 * Helper method to parse the header, leaves the buffer positioned after the initial counter block.
+	 */
+	private static Map<String, String> parseHeader(ByteBuffer buf, File file) throws IOException
+	{
+		int count = 0;
+		Map<String, String> header = new LinkedHashMap<String, String>();
+
+		try
+		{
+			if (buf.getInt() != MAGIC)
+				throw new IOException("Not a sealed property file: " + file.getAbsolutePath());
+			if (buf.getShort() != VERSION)
+				throw new IOException("Unsupported version of the sealed property file " + file.getAbsolutePath());
+			count = buf.getShort() & 0xFFFF;
+			for (int i = 0; i < count; i++)
+				header.put(BinaryStore.readString(buf), BinaryStore.readString(buf));
+			if (!CIPHER.equals(header.get("cipher")) || !KDF_ALGORITHM.equals(header.get("kdf")))
+				throw new IOException("Unsupported cipher " + header.get("cipher") + " of " + file.getAbsolutePath());
+			buf.position(buf.position() + SALT_BYTES + IV_BYTES);
+		}
+		catch (BufferUnderflowException bue)
+		{
+			throw new IOException("Not a valid sealed property file: " + file.getAbsolutePath());
+		}
+		catch (IllegalArgumentException iae)
+		{
+			throw new IOException("Not a valid sealed property file: " + file.getAbsolutePath());
+		}
+		return header;
+	}
+
+	/**
+	 * Helper method to derive the AES key and the HMAC key from the password.
+	 */
+	private static SecretKeySpec[] derive(String password, byte[] salt, int iterations)
+	{
+		byte[] bytes = null;
+		Mac expand = null;
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BYTES * 8);
+
+		try
+		{
+			bytes = SecretKeyFactory.getInstance(KDF_ALGORITHM).generateSecret(spec).getEncoded();
+			expand = Mac.getInstance(MAC_ALGORITHM);
+			expand.init(new SecretKeySpec(bytes, MAC_ALGORITHM));
+			return new SecretKeySpec[] {new SecretKeySpec(expand.doFinal(ENCRYPTION_LABEL), "AES"),
+										new SecretKeySpec(expand.doFinal(MAC_LABEL), MAC_ALGORITHM)};
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new EncryptionInitializationException(gse);
+		}
+		finally
+		{
+			spec.clearPassword();
+			if (bytes != null) Arrays.fill(bytes, (byte) 0);
+		}
+	}
+
+	/**
+	 * Helper method to compute the password check of a header.
+	 */
+	private static byte[] passwordCheck(SecretKeySpec macKey, byte[] header)
+	{
+		Mac mac = null;
+
+		try
+		{
+			mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(macKey);
+			return Arrays.copyOf(mac.doFinal(header), CHECK_BYTES);
+		}
+		catch (GeneralSecurityException gse)
+		{
+			throw new EncryptionInitializationException(gse);
+		}
+	}
+
+	/**
+	 * The stream encrypting the text of a property file. Closing it finishes the sealed file but leaves the target stream
+	 * open.
+	 */
+	static final class SealingOutputStream extends OutputStream
+	{
+		private final OutputStream _out;
+		private final Cipher _cipher;
+		private final Mac _mac;
+		private final ByteBuffer _plain = ByteBuffer.allocate(BUFFER_SIZE);
+		private final ByteBuffer _sealed = ByteBuffer.allocate(BUFFER_SIZE);
+		private boolean _blnFinished = false;
+
+		private SealingOutputStream(OutputStream out, Cipher cipher, Mac mac)
+		{
+			_out = out;
+			_cipher = cipher;
+			_mac = mac;
+		}
+
+		/** {@inheritDoc}. */
+		public void write(int b) throws IOException
+		{
+			if (!_plain.hasRemaining()) drain();
+			_plain.put((byte) b);
+		}
+
+		/** {@inheritDoc}. */
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			int n = 0;
+
+			while (len > 0)
+			{
+				if (!_plain.hasRemaining()) drain();
+				n = Math.min(len, _plain.remaining());
+				_plain.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		/** {@inheritDoc}. */
+		public void flush() throws IOException
+		{
+			drain();
+			_out.flush();
+		}
+
+		/**
+		 * Writes the remaining cipher text and the HMAC, the target stream is flushed.
+		 * @throws IOException if unable to write
+		 */
+		void finish() throws IOException
+		{
+			if (_blnFinished) return;
+
+			drain();
+			_out.write(_mac.doFinal());
+			_out.flush();
+			_blnFinished = true;
+		}
+
+		/**
+		 * Same as {@link #finish()}, the target stream is not closed.
+		 */
+		public void close() throws IOException
+		{
+			finish();
+		}
+
+		private void drain() throws IOException
+		{
+			if (_blnFinished) throw new IOException("The sealed file is already finished");
+
+			_plain.flip();
+			_sealed.clear();
+			try
+			{
+				// a stream mode, the cipher text is as long as the plain text
+				_cipher.update(_plain, _sealed);
+			}
+			catch (GeneralSecurityException gse)
+			{
+				throw new EncryptionOperationNotPossibleException(gse);
+			}
+			_sealed.flip();
+			_mac.update(_sealed.array(), 0, _sealed.limit());
+			_out.write(_sealed.array(), 0, _sealed.limit());
+			_plain.clear();
+		}
+	}
+
+	/**
+	 * The stream decrypting a sealed file, the HMAC is verified when the end of the cipher text is reached.
+	 */
+	private static final class UnsealingInputStream extends InputStream
+	{
+		private final File _file;
+		private final FileChannel _ch;
+		private final Cipher _cipher;
+		private final Mac _mac;
+		private final ByteBuffer _in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final ByteBuffer _out = ByteBuffer.allocate(BUFFER_SIZE);
+		private long _lngRemaining;
+		private boolean _blnVerified = false;
+
+		UnsealingInputStream(File file, FileChannel ch, String password) throws IOException
+		{
+			int start = 0;
+			byte[] head = null;
+			byte[] salt = new byte[SALT_BYTES];
+			byte[] iv = new byte[IV_BYTES];
+			byte[] check = new byte[CHECK_BYTES];
+			Map<String, String> header = null;
+			SecretKeySpec[] keys = null;
+
+			_file = file;
+			_ch = ch;
+			while (_in.hasRemaining() && ch.read(_in) != -1);
+			_in.flip();
+
+			header = parseHeader(_in, file);
+			start = _in.position();
+			if (_in.remaining() < CHECK_BYTES + TAG_BYTES)
+				throw new IOException("Truncated sealed property file: " + file.getAbsolutePath());
+			_in.position(start - SALT_BYTES - IV_BYTES);
+			_in.get(salt).get(iv).get(check);
+			head = new byte[start];
+			_in.position(0);
+			_in.get(head).position(start + CHECK_BYTES);
+
+			try
+			{
+				keys = derive(password, salt, Integer.parseInt(header.get("iterations")));
+			}
+			catch (NumberFormatException nfe)
+			{
+				throw new IOException("Invalid iterations recorded in " + file.getAbsolutePath() + ": "
+										+ header.get("iterations"));
+			}
+			if (!MessageDigest.isEqual(check, passwordCheck(keys[1], head)))
+				throw new EncryptionOperationNotPossibleException("Wrong password for " + file.getAbsolutePath());
+
+			try
+			{
+				_cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+				_cipher.init(Cipher.DECRYPT_MODE, keys[0], new IvParameterSpec(iv));
+				_mac = Mac.getInstance(MAC_ALGORITHM);
+				_mac.init(keys[1]);
+			}
+			catch (GeneralSecurityException gse)
+			{
+				throw new EncryptionInitializationException(gse);
+			}
+			_mac.update(head);
+			_mac.update(check);
+			_lngRemaining = ch.size() - start - CHECK_BYTES - TAG_BYTES;
+			_out.limit(0);
+		}
+
+		/** {@inheritDoc}. */
+		public int read() throws IOException
+		{
+			return fill() ? (_out.get() & 0xFF) : -1;
+		}
+
+		/** {@inheritDoc}. */
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int n = 0;
+
+			if (len == 0) return 0;
+			if (!fill()) return -1;
+
+			n = Math.min(len, _out.remaining());
+			_out.get(b, off, n);
+			return n;
+		}
+
+		/** {@inheritDoc}. */
+		public int available()
+		{
+			return _out.remaining();
+		}
+
+		/** {@inheritDoc}. */
+		public void close() throws IOException
+		{
+			_ch.close();
+		}
+
+		/**
+		 * Helper method to decrypt the next chunk of the cipher text once the previous one has been read.
+		 * @return false at the end of the cipher text
+		 */
+		private boolean fill() throws IOException
+		{
+			int len = 0;
+			ByteBuffer chunk = null;
+
+			while (!_out.hasRemaining())
+			{
+				if (_lngRemaining == 0)
+				{
+					verify();
+					return false;
+				}
+				if (!_in.hasRemaining())
+				{
+					_in.clear();
+					if (_ch.read(_in) == -1)
+						throw new IOException("Truncated sealed property file: " + _file.getAbsolutePath());
+					_in.flip();
+				}
+
+				chunk = _in.duplicate();
+				if (chunk.remaining() > _lngRemaining)
+					chunk.limit(chunk.position() + (int) _lngRemaining);
+				len = chunk.remaining();
+				_mac.update(chunk.duplicate());
+				_out.clear();
+				try
+				{
+					_cipher.update(chunk, _out);
+				}
+				catch (GeneralSecurityException gse)
+				{
+					throw new EncryptionOperationNotPossibleException(gse);
+				}
+				_out.flip();
+				_in.position(_in.position() + len);
+				_lngRemaining -= len;
+			}
+			return true;
+		}
+
+		/**
+		 * Helper method to verify the trailing HMAC.
+		 * @throws IOException if the HMAC does not match
+		 */
+		private void verify() throws IOException
+		{
+			ByteBuffer tag = ByteBuffer.allocate(TAG_BYTES);
+			long pos = _ch.size() - TAG_BYTES;
+
+			if (_blnVerified) return;
+
+			while (tag.hasRemaining())
+			{
+				if (_ch.read(tag, pos + tag.position()) == -1)
+					throw new IOException("Truncated sealed property file: " + _file.getAbsolutePath());
+			}
+			if (!MessageDigest.isEqual(tag.array(), _mac.doFinal()))
+				throw new IOException("Integrity check failed, the sealed property file " + _file.getAbsolutePath()
+										+ " has been modified or is corrupt");
+			_blnVerified = true;
+		}
+	}
+}
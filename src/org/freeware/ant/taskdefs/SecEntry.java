@@ -7,16 +7,15 @@
  *--------------------------------------------------------------------------------------------------------------------------------*/
 package org.freeware.ant.taskdefs;
 
-import java.text.DateFormat;
 import java.text.DecimalFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.DateTimeException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.Properties;
 
 import org.apache.tools.ant.BuildException;
-import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.encryption.StringEncryptor;
 
 /**
  * Instance of this class represents nested elements of a task <code>secpropfile</code>.
@@ -29,11 +28,10 @@ public class SecEntry
 
     private int _intType = EntryType.STRING_TYPE;
     private int _intOperation = Operation.EQUALS_OPER;
-    private int _intField = Calendar.DATE;
+    private ChronoUnit _unit = ChronoUnit.DAYS;
     private String _strKey = null;
     private String _strValue = null;
     private String _strDefaultValue = null;
-    private String _strNewValue = null;
     private String _strPattern = null;
 
     /**
@@ -87,7 +85,10 @@ public class SecEntry
 
     /**
      * For int and date type only. If present, Values will
-     * be parsed and formatted accordingly.
+     * be parsed and formatted accordingly. Date patterns are
+     * those of <code>DateTimeFormatter</code>, where <code>u</code>
+     * is the year and <code>a</code> appears once, unlike
+     * <code>SimpleDateFormat</code>.
      * @param value the pattern to use.
      */
     public void setPattern(String value)
@@ -113,31 +114,80 @@ public class SecEntry
      */
     public void setUnit(Unit unit)
     {
-        _intField = unit.getCalendarField();
+        _unit = unit.getChronoUnit();
+    }
+
+    /**
+     * Returns the name of the property this entry operates on.
+     * @return the key.
+     */
+    public String getKey()
+    {
+        return _strKey;
+    }
+
+    /**
+     * Apply the nested element to the properties.
+     * @param props the properties to apply the entry on.
+     * @throws BuildException if there is an error.
+     */
+    protected void executeOn(Properties props, StringEncryptor svc, int intMode, boolean skipEmpty) throws BuildException
+    {
+        executeOn(props, svc, intMode, skipEmpty, null);
     }
 
     /**
      * Apply the nested element to the properties.
      * @param props the properties to apply the entry on.
+     * @param digests the digests of the incremental mode, <code>null</code> if not incremental.
      * @throws BuildException if there is an error.
      */
-    protected void executeOn(Properties props, StandardPBEStringEncryptor svc, int intMode, boolean skipEmpty) throws BuildException
+    protected void executeOn(Properties props, StringEncryptor svc, int intMode, boolean skipEmpty, DigestStore digests)
+        throws BuildException
+    {
+        String strValue = null;
+
+        strValue = evaluate(props.getProperty(_strKey), svc, intMode, skipEmpty, digests);
+        if (strValue == null)
+            props.remove(_strKey);
+        else
+            props.put(_strKey, strValue);
+    }
+
+    /**
+     * Computes the value to be stored for the key without modifying any properties.
+     * @see #evaluate(String, StringEncryptor, int, boolean, DigestStore)
+     */
+    protected String evaluate(String strTemp, StringEncryptor svc, int intMode, boolean skipEmpty) throws BuildException
+    {
+        return evaluate(strTemp, svc, intMode, skipEmpty, null);
+    }
+
+    /**
+     * Computes the value to be stored for the key without modifying any properties, so that the entries operating on
+     * different keys can be evaluated concurrently.
+     * @param strTemp the value currently stored for the key or <code>null</code> if the key is not defined.
+     * @param svc the encryptor to use, may be <code>null</code> if the mode is <code>NONE</code>.
+     * @param intMode the mode of operation.
+     * @param skipEmpty the flag to skip empty values.
+     * @param digests the digests of the incremental mode, <code>null</code> if not incremental.
+     * @return the value to be stored or <code>null</code> if the key is to be removed.
+     * @throws BuildException if there is an error.
+     */
+    protected String evaluate(String strTemp, StringEncryptor svc, int intMode, boolean skipEmpty, DigestStore digests)
+        throws BuildException
     {
     	String oldValue = null;
-		String strTemp = null;
+    	String newValue = null;
 
         checkParameters();
 
         if (_intOperation == Operation.DELETE_OPER)
-        {
-            props.remove(_strKey);
-            return;
-        }
+            return null;
 
         // type may be null because it wasn't set
-        strTemp = props.getProperty(_strKey);
-        if (intMode == CryptMode.OPERATION_DECRYPT && strTemp != null && strTemp.startsWith("ENC("))
-			oldValue = svc.decrypt(strTemp.substring(4, strTemp.length() - 1));
+        if (intMode == CryptMode.OPERATION_DECRYPT && isEncrypted(strTemp))
+			oldValue = decrypt(strTemp, svc);
         else if (!skipEmpty)
         	throw new BuildException("Empty values are not allowed, properety " + _strKey);
         else
@@ -146,11 +196,11 @@ public class SecEntry
         try
         {
             if (_intType == EntryType.INTEGER_TYPE)
-                executeInteger(oldValue);
+                newValue = executeInteger(oldValue);
             else if (_intType == EntryType.DATE_TYPE)
-                executeDate(oldValue);
+                newValue = executeDate(oldValue);
             else if (_intType == EntryType.STRING_TYPE)
-                executeString(oldValue);
+                newValue = executeString(oldValue);
             else
                 throw new BuildException("Unknown operation type: " + _intType);
         }
@@ -161,18 +211,105 @@ public class SecEntry
             npe.printStackTrace();
         }
 
-        if (_strNewValue == null) _strNewValue = "";
+        if (newValue == null) newValue = "";
 
         // Insert as a string by default
-        if (intMode == CryptMode.OPERATION_ENCRYPT && _strNewValue.length() > 0)
-        {
-        	strTemp = svc.encrypt(_strNewValue);
-        	props.put(_strKey, String.format("ENC(%1s)", strTemp));
-        }
+        if (intMode == CryptMode.OPERATION_ENCRYPT && newValue.length() > 0)
+        	return (digests == null) ? encrypt(newValue, svc) : digests.encrypt(_strKey, newValue, strTemp, svc);
         else if (!skipEmpty)
 			throw new BuildException("Empty values are not allowed, properety " + _strKey);
-		else
-        	props.put(_strKey, _strNewValue);
+
+        return newValue;
+    }
+
+    /**
+     * Checks whether the value is wrapped in the <code>ENC(...)</code> or in the <code>ENC2(...)</code> envelope.
+     * @param value the value to be checked, may be <code>null</code>.
+     * @return true if the value is encrypted.
+     */
+    protected static boolean isEncrypted(String value)
+    {
+        return Envelope.isEncrypted(value);
+    }
+
+    /**
+     * Strips the <code>ENC(...)</code> or the <code>ENC2(...)</code> envelope from an encrypted value.
+     * @param value the encrypted value.
+     * @return the cipher text.
+     */
+    protected static String unwrap(String value)
+    {
+        return Envelope.unwrap(value);
+    }
+
+    /**
+     * Wraps the cipher text in the envelope of the encryptor which produced it, <code>ENC2(...)</code> for the AES-GCM
+     * algorithm and <code>ENC(...)</code> for the jasypt PBE algorithms.
+     * @param cipherText the cipher text.
+     * @param svc the encryptor which produced the cipher text.
+     * @return the value to be stored.
+     */
+    protected static String wrap(String cipherText, StringEncryptor svc)
+    {
+        return Envelope.wrap(cipherText, isAesGcm(svc));
+    }
+
+    /**
+     * Encrypts a value and wraps the cipher text in the envelope of the encryptor, the AES-GCM encryptor, wrapped by the
+     * decryption cache or not, writes the envelope along with the cipher text.
+     * @param plainText the plain text.
+     * @param svc the encryptor to use.
+     * @return the value to be stored.
+     */
+    protected static String encrypt(String plainText, StringEncryptor svc)
+    {
+        if (DecryptionCache.unwrap(svc) instanceof AesGcmStringEncryptor)
+            return DecryptionCache.encryptEnvelope(svc, plainText);
+
+        return wrap(svc.encrypt(plainText), svc);
+    }
+
+    /**
+     * Decrypts a value wrapped in an envelope. The <code>ENC(...)</code> values can be decrypted by either kind of encryptor,
+     * the <code>ENC2(...)</code> values only by the AES-GCM one, which reads the cipher text in place, through the decryption
+     * cache if it is wrapped by it.
+     * @param value the encrypted value.
+     * @param svc the encryptor to use.
+     * @return the plain text.
+     * @throws BuildException if the value was encrypted with the AES-GCM algorithm and svc is a jasypt PBE encryptor.
+     */
+    protected static String decrypt(String value, StringEncryptor svc) throws BuildException
+    {
+        if (DecryptionCache.unwrap(svc) instanceof AesGcmStringEncryptor)
+            return DecryptionCache.decryptEnvelope(svc, value);
+
+        return svc.decrypt(unwrap(value, svc));
+    }
+
+    /**
+     * Strips the envelope from an encrypted value to be decrypted by the supplied encryptor.
+     * @param value the encrypted value.
+     * @param svc the encryptor to use.
+     * @return the cipher text.
+     * @throws BuildException if the value was encrypted with the AES-GCM algorithm and svc is a jasypt PBE encryptor.
+     */
+    protected static String unwrap(String value, StringEncryptor svc) throws BuildException
+    {
+        if (Envelope.isEnc2(value) && !isAesGcm(svc))
+            throw new BuildException("ENC2 values can only be decrypted with the algorithm PBKDF2WITHHMACSHA256ANDAES_GCM");
+
+        return unwrap(value);
+    }
+
+    /**
+     * Checks whether the encryptor uses the AES-GCM algorithm, in process or through the key agent.
+     * @param svc the encryptor.
+     * @return true for the AES-GCM algorithm.
+     */
+    private static boolean isAesGcm(StringEncryptor svc)
+    {
+        svc = DecryptionCache.unwrap(svc);
+        return (svc instanceof AesGcmStringEncryptor || (svc instanceof AgentEncryptor && ((AgentEncryptor) svc).isAesGcm()));
     }
 
     /**
@@ -180,37 +317,25 @@ public class SecEntry
      *
      * @param oldValue the current value read from the property file or <code>null</code> if the <code>key</code> was
      * not contained in the property file.
+     * @return the new value.
      */
-    private void executeDate(String oldValue) throws BuildException
+    private String executeDate(String oldValue) throws BuildException
     {
     	int offset = 0;
     	String curVal = null;
-    	Calendar cal = null;
-    	DateFormat fmt = null;
-
-        cal = Calendar.getInstance();
-
-        if (_strPattern == null) _strPattern = "yyyy/MM/dd HH:mm";
+    	ZonedDateTime date = null;
+    	DateTimeFormatter fmt = null;
 
-        fmt = new SimpleDateFormat(_strPattern);
+        fmt = Formats.dateFormat(_strPattern);
 
         curVal = getCurrentValue(oldValue);
         if (curVal == null) curVal = DEFAULT_DATE_VALUE;
 
-
-        if ("now".equals(curVal))
-        	cal.setTime(new Date());
-        else
-        {
-            try
-        	{
-            	cal.setTime(fmt.parse(curVal));
-            }
-            catch (ParseException pe)
-            {
-                // swallow
-            }
-        }
+        if (!"now".equals(curVal))
+            date = Formats.parseDate(fmt, curVal);
+        // a value not matching the pattern is replaced by the current time
+        if (date == null)
+            date = ZonedDateTime.now();
 
         if (_intOperation != Operation.EQUALS_OPER)
         {
@@ -224,10 +349,17 @@ public class SecEntry
             {
                 throw new BuildException("Value not an integer on " + _strKey);
             }
-            cal.add(_intField, offset);
+            date = date.plus(offset, _unit);
         }
 
-        _strNewValue = fmt.format(cal.getTime());
+        try
+        {
+            return fmt.format(date);
+        }
+        catch (DateTimeException dte)
+        {
+            throw new BuildException("Unable to format " + _strKey + " with the pattern " + _strPattern, dte);
+        }
     }
 
 
@@ -236,31 +368,24 @@ public class SecEntry
      *
      * @param oldValue the current value read from the property file or <code>null</code> if the <code>key</code> was
      * not contained in the property file.
+     * @return the new value.
      */
-    private void executeInteger(String oldValue) throws BuildException
+    private String executeInteger(String oldValue) throws BuildException
     {
         int currentValue = DEFAULT_INT_VALUE;
         int newV  = DEFAULT_INT_VALUE;
         int opValue = 1;
         String curval = null;
+        Number parsed = null;
         DecimalFormat fmt = null;
 
-        fmt = (_strPattern != null) ? new DecimalFormat(_strPattern) : new DecimalFormat();
-        try
-        {
-            curval = getCurrentValue(oldValue);
-            if (curval != null)
-                currentValue = fmt.parse(curval).intValue();
-            else
-                currentValue = 0;
-        }
-        catch (NumberFormatException nfe)
-        {
-            // swallow
-        }
-        catch (ParseException pe)
+        fmt = Formats.numberFormat(_strPattern);
+
+        curval = getCurrentValue(oldValue);
+        if (curval != null)
         {
-            // swallow
+            parsed = Formats.parseNumber(fmt, curval);
+            if (parsed != null) currentValue = parsed.intValue();
         }
 
         if (_intOperation == Operation.EQUALS_OPER)
@@ -269,18 +394,8 @@ public class SecEntry
         {
             if (_strValue != null)
             {
-                try
-                {
-                    opValue = fmt.parse(_strValue).intValue();
-                }
-                catch (NumberFormatException nfe)
-                {
-                    // swallow
-                }
-                catch (ParseException pe)
-                {
-                    // swallow
-                }
+                parsed = Formats.parseNumber(fmt, _strValue);
+                if (parsed != null) opValue = parsed.intValue();
             }
 
             if (_intOperation == Operation.INCREMENT_OPER)
@@ -289,7 +404,7 @@ public class SecEntry
                 newV = currentValue - opValue;
         }
 
-        _strNewValue = fmt.format(newV);
+        return fmt.format(newV);
     }
 
     /**
@@ -297,8 +412,9 @@ public class SecEntry
      *
      * @param oldValue the current value read from the property file or <code>null</code> if the <code>key</code> was
      * not contained in the property file.
+     * @return the new value.
      */
-    private void executeString(String oldValue) throws BuildException
+    private String executeString(String oldValue) throws BuildException
     {
         String newV  = DEFAULT_STRING_VALUE;
         String curVal = null;
@@ -311,7 +427,7 @@ public class SecEntry
         else if (_intOperation == Operation.INCREMENT_OPER)
             newV = curVal + _strValue;
 
-        _strNewValue = newV;
+        return newV;
     }
 
     /**
@@ -0,0 +1,257 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecEntrySet.java
+ * CREATED  : 18-Oct-2026 2:05:37 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.EnumeratedAttribute;
+import org.jasypt.encryption.StringEncryptor;
+
+/**
+ * <p>Instance of this class represents the nested <code>secentryset</code> element of the task <code>secpropfile</code>. It
+ * selects the keys of the property file by glob or regular expression patterns and encrypts or decrypts the values of all
+ * the selected keys according to the mode of the task, without having to declare a <code>secentry</code> for each key.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secpropfile file="${basedir}/config/app.properties" mode="ENCRYPT" password="XFb3T4Zy" threads="4"&gt;
+ *     &lt;secentryset includes="*.password,*.secret" excludes="test.*"/&gt;
+ *     &lt;secentryset syntax="regex"&gt;
+ *         &lt;include name="db\.[a-z]+\.credentials"/&gt;
+ *     &lt;/secentryset&gt;
+ * &lt;/secpropfile&gt;</pre>
+ * Values which are already encrypted are left untouched in <code>ENCRYPT</code> mode, as are the plain text values in
+ * <code>DECRYPT</code> mode. When no include pattern is specified all the keys are selected.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SecEntrySet
+{
+	private boolean _blnRegex = false;
+	private List<String> _includes = new ArrayList<String>();
+	private List<String> _excludes = new ArrayList<String>();
+
+	private Pattern[] _incPatterns;
+	private Pattern[] _excPatterns;
+
+	/**
+	 * Enumerated attribute with the values "glob" and "regex".
+	 */
+	public static class Syntax extends EnumeratedAttribute
+	{
+	    /** {@inheritDoc}. */
+	    public String[] getValues()
+	    {
+	        return new String[] {"glob", "regex"};
+	    }
+	}
+
+	/**
+	 * Instance of this class represents the nested <code>include</code> and <code>exclude</code> elements.
+	 */
+	public class NameEntry
+	{
+		private final List<String> _target;
+
+		private NameEntry(List<String> target)
+		{
+			_target = target;
+		}
+
+		/**
+		 * The pattern to be matched against the keys.
+		 * @param name the pattern
+		 */
+		public void setName(String name)
+		{
+			_target.add(name);
+		}
+	}
+
+	/**
+	 * The syntax of the patterns, <code>glob</code> (default) where <code>*</code> matches any sequence of characters and
+	 * <code>?</code> matches a single character, or <code>regex</code> for java regular expressions.
+	 * @param syntax the pattern syntax
+	 */
+	public void setSyntax(Syntax syntax)
+	{
+		_blnRegex = "regex".equals(syntax.getValue());
+	}
+
+	/**
+	 * Comma or space separated list of patterns of the keys to be selected.
+	 * @param includes the include patterns
+	 */
+	public void setIncludes(String includes)
+	{
+		tokenize(includes, _includes);
+	}
+
+	/**
+	 * Comma or space separated list of patterns of the keys to be left out.
+	 * @param excludes the exclude patterns
+	 */
+	public void setExcludes(String excludes)
+	{
+		tokenize(excludes, _excludes);
+	}
+
+	/**
+	 * The nested include element.
+	 * @return an include element to be configured
+	 */
+	public NameEntry createInclude()
+	{
+		return new NameEntry(_includes);
+	}
+
+	/**
+	 * The nested exclude element.
+	 * @return an exclude element to be configured
+	 */
+	public NameEntry createExclude()
+	{
+		return new NameEntry(_excludes);
+	}
+
+	/**
+	 * Checks whether the key is selected by this set.
+	 * @param key the key to be checked
+	 * @return true if the key matches one of the include patterns and none of the exclude patterns
+	 * @throws BuildException if one of the patterns is invalid
+	 */
+	protected boolean matches(String key) throws BuildException
+	{
+		boolean included = false;
+
+		if (_incPatterns == null) compile();
+
+		included = (_incPatterns.length == 0);
+		for (int i = 0; !included && i < _incPatterns.length; i++)
+			included = _incPatterns[i].matcher(key).matches();
+
+		for (int i = 0; included && i < _excPatterns.length; i++)
+			included = !_excPatterns[i].matcher(key).matches();
+
+		return included;
+	}
+
+	/**
+	 * Returns an entry which applies this set to the supplied key, so that the selected keys can be evaluated along with the
+	 * explicitly declared entries.
+	 * @param key the selected key
+	 * @return the entry for the key
+	 */
+	protected SecEntry toEntry(String key)
+	{
+		SelectedEntry entry = new SelectedEntry();
+		entry.setKey(key);
+		return entry;
+	}
+
+	/**
+	 * Compiles the patterns, done before the set is shared by several threads.
+	 * @throws BuildException if one of the patterns is invalid
+	 */
+	protected void compile() throws BuildException
+	{
+		_excPatterns = toPatterns(_excludes);
+		_incPatterns = toPatterns(_includes);
+	}
+
+	/**
+	 * Helper method to compile a list of patterns.
+	 * @param patterns the patterns in the configured syntax
+	 * @return the compiled patterns
+	 * @throws BuildException if one of the patterns is invalid
+	 */
+	private Pattern[] toPatterns(List<String> patterns) throws BuildException
+	{
+		Pattern[] ret = new Pattern[patterns.size()];
+
+		for (int i = 0; i < ret.length; i++)
+		{
+			try
+			{
+				ret[i] = Pattern.compile(_blnRegex ? patterns.get(i) : globToRegex(patterns.get(i)));
+			}
+			catch (PatternSyntaxException pse)
+			{
+				throw new BuildException("Invalid key pattern: " + patterns.get(i), pse);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Helper method to convert a glob pattern to an equivalent regular expression.
+	 * @param glob the glob pattern
+	 * @return the regular expression
+	 */
+	private static String globToRegex(String glob)
+	{
+		char ch = 0;
+		StringBuilder sb = new StringBuilder(glob.length() + 8);
+
+		for (int i = 0; i < glob.length(); i++)
+		{
+			ch = glob.charAt(i);
+			if (ch == '*')
+				sb.append(".*");
+			else if (ch == '?')
+				sb.append('.');
+			else if ("\\.[]{}()+-^$|".indexOf(ch) > -1)
+				sb.append('\\').append(ch);
+			else
+				sb.append(ch);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Helper method to split a comma or space separated list of patterns.
+	 * @param value the list of patterns
+	 * @param target the list to which the patterns are to be added
+	 */
+	private static void tokenize(String value, List<String> target)
+	{
+		StringTokenizer tok = null;
+
+		if (value == null) return;
+
+		tok = new StringTokenizer(value, ", ", false);
+		while (tok.hasMoreTokens())
+			target.add(tok.nextToken());
+	}
+
+	/**
+	 * The entry evaluated for each of the selected keys. The value is encrypted or decrypted as is, already encrypted values
+	 * are not encrypted again and plain text values are not decrypted.
+	 */
+	private static class SelectedEntry extends SecEntry
+	{
+		/** {@inheritDoc}. */
+	    protected String evaluate(String strTemp, StringEncryptor svc, int intMode, boolean skipEmpty, DigestStore digests)
+	    	throws BuildException
+	    {
+	    	// the key was removed by an earlier entry
+	    	if (strTemp == null || strTemp.length() == 0) return strTemp;
+
+	    	if (intMode == CryptMode.OPERATION_ENCRYPT && !isEncrypted(strTemp))
+	    		return (digests == null) ? encrypt(strTemp, svc) : digests.encrypt(getKey(), strTemp, strTemp, svc);
+	    	else if (intMode == CryptMode.OPERATION_DECRYPT && isEncrypted(strTemp))
+	    		return decrypt(strTemp, svc);
+
+	    	return strTemp;
+	    }
+	}
+}
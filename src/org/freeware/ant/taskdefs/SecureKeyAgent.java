@@ -0,0 +1,218 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecureKeyAgent.java
+ * CREATED  : 19-Oct-2026 1:08:33 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.EnumeratedAttribute;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+
+/**
+ * <p>A task starting, stopping or querying the local {@link KeyAgent}, which keeps the encryptors initialized across the
+ * build JVMs. The tasks started with <code>agent="true"</code> use the agent while it is running.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secagent action="start" idleTimeout="1800"/&gt;
+ * &lt;secpropfile file="${basedir}/config/secprops.properties" mode="ENCRYPT" password="${env.SECRET}" agent="true"&gt;
+ *     ...
+ * &lt;/secpropfile&gt;
+ * &lt;secagent action="status" property="agent.running"/&gt;</pre>
+ * The started agent outlives the build, it stops when it has been idle for <code>idleTimeout</code> seconds or when
+ * stopped. Its output goes to <code>agent.log</code> in the agent directory.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SecureKeyAgent extends Task
+{
+	private static final long START_TIMEOUT = 10000L;
+
+	private String _strAction = "start";
+	private int _intIdleTimeout = KeyAgent.DEFAULT_IDLE_TIMEOUT;
+	private File _dir = KeyAgent.defaultDirectory();
+	private String _strProperty;
+
+	/**
+	 * Enumerated attribute with the values "start", "stop" and "status".
+	 */
+	public static class Action extends EnumeratedAttribute
+	{
+	    /** {@inheritDoc}. */
+	    public String[] getValues()
+	    {
+	        return new String[] {"start", "stop", "status"};
+	    }
+	}
+
+	/**
+	 * The action, <code>start</code> (default) to start an agent unless one is running, <code>stop</code> or
+	 * <code>status</code>.
+	 * @param action the action
+	 */
+	public void setAction(Action action)
+	{
+		_strAction = action.getValue();
+	}
+
+	/**
+	 * The seconds of inactivity after which a started agent stops, default is 900.
+	 * @param seconds the idle timeout
+	 */
+	public void setIdleTimeout(int seconds)
+	{
+		_intIdleTimeout = seconds;
+	}
+
+	/**
+	 * The agent directory, defaults to <code>~/.secagent</code>. The tasks using the agent look it up in the directory named
+	 * by the system property <code>org.freeware.secagent.dir</code> or else in the default one.
+	 * @param dir the agent directory
+	 */
+	public void setDir(File dir)
+	{
+		_dir = dir;
+	}
+
+	/**
+	 * A property set to <code>true</code> if the agent is running once the action is done.
+	 * @param property the name of the property
+	 */
+	public void setProperty(String property)
+	{
+		_strProperty = property;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.tools.ant.Task#execute()
+	 */
+	public void execute() throws BuildException
+	{
+		boolean running = KeyAgent.isRunning(_dir);
+
+		if ("stop".equals(_strAction))
+		{
+			if (running && KeyAgent.stop(_dir))
+				log("Stopped the key agent of " + _dir.getAbsolutePath());
+			running = false;
+		}
+		else if ("start".equals(_strAction))
+		{
+			if (running)
+				log("The key agent of " + _dir.getAbsolutePath() + " is already running", Project.MSG_VERBOSE);
+			else
+			{
+				start();
+				running = true;
+			}
+		}
+		else
+			log("The key agent of " + _dir.getAbsolutePath() + " is " + (running ? "running" : "not running"));
+
+		if (_strProperty != null && running)
+			getProject().setNewProperty(_strProperty, "true");
+	}
+
+	/**
+	 * Helper method to spawn the agent JVM and to wait until it accepts connections.
+	 * @throws BuildException if the agent can not be started
+	 */
+	private void start() throws BuildException
+	{
+		long deadline = 0;
+		List<String> command = new ArrayList<String>();
+		ProcessBuilder pb = null;
+		Process process = null;
+
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(classpath());
+		command.add(KeyAgent.class.getName());
+		command.add("start");
+		command.add("-idle");
+		command.add(String.valueOf(_intIdleTimeout));
+		command.add("-dir");
+		command.add(_dir.getAbsolutePath());
+
+		_dir.mkdirs();
+		pb = new ProcessBuilder(command);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(_dir, "agent.log")));
+		try
+		{
+			process = pb.start();
+			process.getOutputStream().close();
+		}
+		catch (IOException ioe)
+		{
+			throw new BuildException("Unable to start the key agent", ioe, getLocation());
+		}
+
+		deadline = System.currentTimeMillis() + START_TIMEOUT;
+		while (!KeyAgent.isRunning(_dir))
+		{
+			if (!process.isAlive() || System.currentTimeMillis() > deadline)
+				throw new BuildException("The key agent did not start, see " + new File(_dir, "agent.log"), getLocation());
+			try
+			{
+				Thread.sleep(50);
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				throw new BuildException(ie, getLocation());
+			}
+		}
+		log("Started the key agent of " + _dir.getAbsolutePath() + ", idle timeout " + _intIdleTimeout + "s");
+	}
+
+	/**
+	 * Helper method to build the class path of the agent JVM from the locations of these tasks, jasypt and ant.
+	 * @return the class path
+	 * @throws BuildException if a location is not a local file
+	 */
+	private String classpath() throws BuildException
+	{
+		Set<String> entries = new LinkedHashSet<String>();
+		StringBuilder sb = new StringBuilder();
+
+		for (Class<?> cls : new Class<?>[] {KeyAgent.class, StandardPBEStringEncryptor.class, BuildException.class})
+		{
+			CodeSource cs = cls.getProtectionDomain().getCodeSource();
+			if (cs == null || cs.getLocation() == null)
+				throw new BuildException("Unable to locate " + cls.getName(), getLocation());
+			try
+			{
+				entries.add(new File(cs.getLocation().toURI()).getAbsolutePath());
+			}
+			catch (URISyntaxException use)
+			{
+				throw new BuildException("Unable to locate " + cls.getName(), use, getLocation());
+			}
+			catch (IllegalArgumentException iae)
+			{
+				throw new BuildException("Unable to locate " + cls.getName(), iae, getLocation());
+			}
+		}
+
+		for (String entry : entries)
+		{
+			if (sb.length() > 0) sb.append(File.pathSeparatorChar);
+			sb.append(entry);
+		}
+		return sb.toString();
+	}
+}
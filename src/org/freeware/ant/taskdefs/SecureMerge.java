@@ -0,0 +1,218 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecureMerge.java
+ * CREATED  : 19-Oct-2026 9:26:08 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.ResourceCollection;
+
+/**
+ * <p>Merges layered property files, e.g. those of a base, a region and a tenant, into a single property file in one pass.
+ * The layers are read in order, the values of a layer overriding those of the layers before it, the entries are applied to
+ * the merged values and the result is encrypted and written once, without intermediate files.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secmerge file="${build.dir}/config/app.properties" mode="ENCRYPT" password="${env.SECRET}"&gt;
+ *     &lt;filelist dir="${basedir}/config" files="base.properties,region-eu.properties,tenant-a.properties"/&gt;
+ *     &lt;secentryset includes="*.password"/&gt;
+ * &lt;/secmerge&gt;</pre>
+ * <p>With <code>todir</code> and a nested <code>overlays</code> file set, every overlay is merged on top of the layers into
+ * its own file of the same relative name in <code>todir</code>, the overlays being merged concurrently:</p>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secmerge todir="${build.dir}/tenants" mode="ENCRYPT" password="${env.SECRET}" fileThreads="4"&gt;
+ *     &lt;filelist dir="${basedir}/config" files="base.properties,region-eu.properties"/&gt;
+ *     &lt;overlays dir="${basedir}/config/tenants" includes="*.properties"/&gt;
+ *     &lt;secentryset includes="*.password"/&gt;
+ * &lt;/secmerge&gt;</pre>
+ * <p>The attributes and the nested entries are those of <code>secpropfile</code>, the layers are encrypted or decrypted
+ * with its parameters and sealed layers are unsealed with the password. The merged file is always written anew, in the
+ * <code>properties</code> format, the keys in the order in which the layers first define them. The <code>REKEY</code> mode,
+ * the incremental and pipelined modes and the other formats do not apply.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SecureMerge extends SecurePropertyFile
+{
+	private File _filProps;
+	private File _filToDir;
+
+	private Map<File, List<File>> _sources;
+
+	private Vector<ResourceCollection> layers = new Vector<ResourceCollection>();
+	private Vector<FileSet> overlays = new Vector<FileSet>();
+
+	/**
+	 * The merged property file, required unless <code>todir</code> is set.
+	 * @param file the merged property file
+	 */
+	public void setFile(File file)
+	{
+		_filProps = file;
+		super.setFile(file);
+	}
+
+	/**
+	 * The directory the merged overlays are written to, required along with a nested <code>overlays</code> file set.
+	 * @param dir the directory of the merged files
+	 */
+	public void setToDir(File dir)
+	{
+		_filToDir = dir;
+	}
+
+	/**
+	 * Adds layers, in the order of the collection, e.g. a nested <code>filelist</code>, the layers of each collection following
+	 * those of the collections before it.
+	 * @param rc the resource collection of the layers
+	 */
+	public void add(ResourceCollection rc)
+	{
+		layers.addElement(rc);
+	}
+
+	/**
+	 * The overlays nested element, each overlay being merged on top of the layers into its own file.
+	 * @return the file set of the overlays to be configured
+	 */
+	public FileSet createOverlays()
+	{
+		FileSet fs = new FileSet();
+		overlays.addElement(fs);
+		return fs;
+	}
+
+	/**
+	 * Not supported, the merged values are encrypted again as a whole.
+	 * @param strMode the mode
+	 * @throws BuildException for the <code>REKEY</code> mode
+	 */
+	public void setMode(String strMode)
+	{
+		if (CryptMode.toMode(strMode) == CryptMode.OPERATION_REKEY)
+			throw new BuildException("secmerge does not support the REKEY mode", getLocation());
+		super.setMode(strMode);
+	}
+
+	/**
+	 * Not supported, a merged file is always written in the <code>properties</code> format.
+	 * @param format the format
+	 * @throws BuildException for the formats other than <code>properties</code>
+	 */
+	public void setFormat(Format format)
+	{
+		if (!"properties".equals(format.getValue()))
+			throw new BuildException("secmerge writes the properties format only", getLocation());
+		super.setFormat(format);
+	}
+
+	/**
+	 * Not supported, a merged file is always written anew.
+	 * @param incremental the flag to enable the incremental mode
+	 * @throws BuildException always
+	 */
+	public void setIncremental(boolean incremental)
+	{
+		throw new BuildException("secmerge does not support the incremental mode", getLocation());
+	}
+
+	/**
+	 * Not supported, the layers are merged in memory.
+	 * @param pipeline the flag to enable the pipelined mode
+	 * @throws BuildException always
+	 */
+	public void setPipeline(boolean pipeline)
+	{
+		throw new BuildException("secmerge does not support the pipelined mode", getLocation());
+	}
+
+	/**
+	 * Not supported along with the incremental mode.
+	 * @param file the digest file
+	 * @throws BuildException always
+	 */
+	public void setDigestFile(File file)
+	{
+		throw new BuildException("secmerge does not support the incremental mode", getLocation());
+	}
+
+	/**
+	 * Helper method to check the merged files and the mode.
+	 * @throws BuildException if neither or both of file and todir are set, if the overlays are missing or misplaced or if the
+	 * password is not supplied for the mode
+	 */
+	void checkParameters() throws BuildException
+	{
+		if ((_filProps == null) == (_filToDir == null))
+			throw new BuildException("Either file or todir must be set", getLocation());
+		if (_filToDir != null && overlays.isEmpty())
+			throw new BuildException("todir requires nested overlays", getLocation());
+		if (_filProps != null && !overlays.isEmpty())
+			throw new BuildException("Nested overlays require todir instead of file", getLocation());
+		if (layers.isEmpty() && overlays.isEmpty())
+			throw new BuildException("No layers to merge", getLocation());
+
+		checkOptions();
+	}
+
+	/**
+	 * Helper method to collect the merged files, the file or one file in todir per overlay, along with their layers.
+	 * @return the merged files
+	 * @throws BuildException if a layer is not a file system resource or if an overlay would be overwritten
+	 */
+	List<File> collectFiles() throws BuildException
+	{
+		File target = null;
+		List<File> sources = null;
+		List<File> base = new ArrayList<File>();
+		DirectoryScanner ds = null;
+
+		for (ResourceCollection rc : layers)
+			addFiles(rc, base);
+
+		_sources = new LinkedHashMap<File, List<File>>();
+		if (_filProps != null)
+			_sources.put(_filProps, base);
+
+		for (FileSet fs : overlays)
+		{
+			ds = fs.getDirectoryScanner(getProject());
+			for (String name : ds.getIncludedFiles())
+			{
+				target = new File(_filToDir, name);
+				sources = new ArrayList<File>(base);
+				sources.add(new File(ds.getBasedir(), name));
+				if (_sources.put(target, sources) != null)
+					throw new BuildException("More than one overlay is merged into " + target.getAbsolutePath(), getLocation());
+			}
+		}
+
+		for (Map.Entry<File, List<File>> merge : _sources.entrySet())
+		{
+			if (merge.getValue().contains(merge.getKey()))
+				throw new BuildException("The merged file " + merge.getKey().getAbsolutePath() + " is also one of its layers",
+											getLocation());
+		}
+		return new ArrayList<File>(_sources.keySet());
+	}
+
+	/**
+	 * @return the layers merged into the file, followed by its overlay
+	 */
+	List<File> getSources(File file)
+	{
+		return _sources.get(file);
+	}
+}
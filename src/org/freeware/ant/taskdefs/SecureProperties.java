@@ -0,0 +1,440 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecureProperties.java
+ * CREATED  : 18-Oct-2026 10:21:05 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.EnumeratedAttribute;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+/**
+ * <p>A task loading a property file written by <code>secpropfile</code> into project properties, decrypting all the
+ * <code>ENC(...)</code> and <code>ENC2(...)</code> values with a single encryptor.
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secproperties file="${basedir}/config/secprops.properties" password="${env.SECRET}" prefix="app."
+ *     regex="db\..*" threads="4"/&gt;</pre>
+ * In the default <code>eager</code> load mode the values are decrypted concurrently on <code>threads</code> worker threads
+ * before they are set. In the <code>lazy</code> load mode the encrypted values are set as they are and decrypted only when
+ * they are referenced, see <code>secevaluator</code>, by an evaluator covering the properties set by this load only, so
+ * files encrypted with different passwords can be loaded lazily side by side. The encryption parameters recorded in the file are used unless
+ * overridden by the attributes.
+ * </p>
+ * <p>A file sealed by <code>secpropfile format="sealed"</code> is decrypted as a whole in a single streaming pass, the
+ * properties are set only once the integrity of the whole file has been verified.</p>
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SecureProperties extends Task
+{
+	private int _intAlgorithm = CryptAlgorithm.toAlgorithm("PBEWITHMD5ANDDES");
+	private boolean _blnAlgorithmSet = false;
+	private int _intIterations = EncryptorCache.DEFAULT_ITERATIONS;
+	private String _strSaltGenerator;
+	private int _intThreads = Runtime.getRuntime().availableProcessors();
+	private boolean _blnLazy = false;
+	private boolean _blnAgent = false;
+
+	private File _filProps;
+	private String _strPassword;
+	private String _strPrefix;
+	private String _strRegex;
+
+	/**
+	 * Enumerated attribute with the values "eager" and "lazy".
+	 */
+	public static class LoadMode extends EnumeratedAttribute
+	{
+	    /** {@inheritDoc}. */
+	    public String[] getValues()
+	    {
+	        return new String[] {"eager", "lazy"};
+	    }
+	}
+
+	/**
+	 * The property file to be loaded; required.
+	 * @param file the property file
+	 */
+	public void setFile(File file)
+	{
+		_filProps = file;
+	}
+
+	/**
+	 * The password the values were encrypted with; required.
+	 * @param password the password
+	 */
+	public final void setPassword(String password)
+	{
+		_strPassword = password;
+	}
+
+	/**
+	 * The encryption algorithm of the values, defaults to the algorithm recorded in the file or else to
+	 * '<code>PBEWITHMD5ANDDES</code>'.
+	 * @param algorithm the algorithm to set
+	 */
+	public final void setAlgorithm(CryptAlgorithm algorithm)
+	{
+		_intAlgorithm = CryptAlgorithm.toAlgorithm(algorithm.getValue());
+		_blnAlgorithmSet = true;
+	}
+
+	/**
+	 * The key obtention iterations, defaults to the iterations recorded in the file or else to the default of the algorithm.
+	 * @param iterations the key obtention iterations
+	 */
+	public final void setIterations(int iterations)
+	{
+		_intIterations = iterations;
+	}
+
+	/**
+	 * The salt generator, defaults to the generator recorded in the file or else to <code>random</code>.
+	 * @param saltGenerator the salt generator
+	 */
+	public final void setSaltGenerator(String saltGenerator)
+	{
+		_strSaltGenerator = saltGenerator;
+	}
+
+	/**
+	 * The prefix prepended to the names of the properties, same as the <code>prefix</code> of ant's <code>property</code>
+	 * task. A "." is appended to the prefix if not specified.
+	 * @param prefix the prefix
+	 */
+	public void setPrefix(String prefix)
+	{
+		_strPrefix = prefix;
+		if (!_strPrefix.endsWith("."))
+			_strPrefix += ".";
+	}
+
+	/**
+	 * A regular expression the keys of the file must match to be loaded, by default all the keys are loaded.
+	 * @param regex the regular expression
+	 */
+	public void setRegex(String regex)
+	{
+		_strRegex = regex;
+	}
+
+	/**
+	 * The number of worker threads decrypting the values in <code>eager</code> load mode, defaults to the number of available
+	 * processors.
+	 * @param threads the number of worker threads
+	 */
+	public void setThreads(int threads)
+	{
+		_intThreads = threads;
+	}
+
+	/**
+	 * Whether to send the decryption to the key agent when it is running, default is false. The values are then sent in
+	 * batches, see <code>secagent</code>.
+	 * @param agent the flag to use the key agent
+	 */
+	public void setAgent(boolean agent)
+	{
+		_blnAgent = agent;
+	}
+
+	/**
+	 * The load mode, <code>eager</code> (default) to decrypt all the values up front or <code>lazy</code> to decrypt the
+	 * values when they are referenced.
+	 * @param mode the load mode
+	 */
+	public void setLoad(LoadMode mode)
+	{
+		_blnLazy = "lazy".equals(mode.getValue());
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.tools.ant.Task#execute()
+	 */
+	public void execute() throws BuildException
+	{
+		int algorithm = _intAlgorithm;
+		int iterations = _intIterations;
+		String saltGenerator = _strSaltGenerator;
+		Map<String, String> recorded = null;
+		Properties props = new Properties();
+		List<String> keys = new ArrayList<String>();
+		List<String> values = null;
+		List<String> encrypted = new ArrayList<String>();
+		PropertyHelper ph = null;
+
+		if (_filProps == null)
+			throw new BuildException("file attribute must be specified", getLocation());
+		if (_strPassword == null)
+			throw new BuildException("You must specify password for decryption!", getLocation());
+		if (!_filProps.exists())
+			throw new BuildException("Property file not found: " + _filProps.getAbsolutePath(), getLocation());
+
+		try
+		{
+			if (SealedFile.isSealed(_filProps))
+			{
+				recorded = new LinkedHashMap<String, String>();
+				PropertiesEditor.scan(SealedFile.open(_filProps, _strPassword), createFilter(), props, recorded);
+			}
+			else
+			{
+				recorded = PropertiesEditor.readHeader(_filProps);
+				PropertiesEditor.scan(_filProps, createFilter(), props);
+			}
+		}
+		catch (IOException ioe)
+		{
+			throw new BuildException(ioe, getLocation());
+		}
+		catch (EncryptionOperationNotPossibleException eonpe)
+		{
+			throw new BuildException("Unable to decrypt " + _filProps.getAbsolutePath() + ", check the password",
+										getLocation());
+		}
+
+		if (!_blnAlgorithmSet && recorded.containsKey("algorithm"))
+			algorithm = CryptAlgorithm.toAlgorithm(recorded.get("algorithm"));
+		if (iterations == EncryptorCache.DEFAULT_ITERATIONS && recorded.containsKey("iterations"))
+			iterations = parseIterations(recorded.get("iterations"));
+		if (saltGenerator == null)
+			saltGenerator = recorded.get("saltGenerator");
+
+		keys.addAll(props.stringPropertyNames());
+		values = new ArrayList<String>(keys.size());
+		for (String key : keys)
+			values.add(props.getProperty(key));
+
+		if (_blnLazy)
+		{
+			// the evaluator of this load covers only the encrypted properties it sets
+			for (int i = 0; i < keys.size(); i++)
+			{
+				if (SecEntry.isEncrypted(values.get(i)))
+					encrypted.add((_strPrefix == null) ? keys.get(i) : _strPrefix + keys.get(i));
+			}
+			if (!encrypted.isEmpty())
+				SecurePropertyEvaluator.install(getProject(), encrypted, algorithm, _strPassword, iterations, saltGenerator);
+		}
+		else
+			decryptAll(values, algorithm, iterations, saltGenerator);
+
+		ph = PropertyHelper.getPropertyHelper(getProject());
+		for (int i = 0; i < keys.size(); i++)
+			ph.setProperty((_strPrefix == null) ? keys.get(i) : _strPrefix + keys.get(i), values.get(i), true);
+
+		log("Loaded " + keys.size() + " properties from " + _filProps.getAbsolutePath(), Project.MSG_VERBOSE);
+	}
+
+	/**
+	 * Helper method to decrypt the encrypted values in place. The values are split in contiguous slices, one per worker
+	 * thread, so that the cost of a task per value is not paid.
+	 * @param values the values
+	 * @param algorithm the algorithm id
+	 * @param iterations the key obtention iterations
+	 * @param saltGenerator the salt generator
+	 * @throws BuildException if a value can not be decrypted
+	 */
+	private void decryptAll(final List<String> values, int algorithm, int iterations, String saltGenerator)
+		throws BuildException
+	{
+		int count = 0;
+		int workers = 0;
+		int slice = 0;
+		StringEncryptor svc = null;
+		ExecutorService pool = null;
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+
+		for (String value : values)
+		{
+			if (SecEntry.isEncrypted(value)) count++;
+		}
+		if (count == 0) return;
+
+		workers = Math.max(1, Math.min(_intThreads, count));
+		svc = EncryptorCache.getInstance(getProject()).getEncryptor(algorithm, _strPassword, iterations, saltGenerator,
+																	workers, _blnAgent);
+		if (DecryptionCache.unwrap(svc) instanceof AgentEncryptor)
+		{
+			decryptBatch(values, svc);
+			return;
+		}
+		if (workers == 1)
+		{
+			decryptSlice(values, 0, values.size(), svc);
+			return;
+		}
+
+		slice = (values.size() + workers - 1) / workers;
+		pool = Executors.newFixedThreadPool(workers);
+		try
+		{
+			for (int start = 0; start < values.size(); start += slice)
+			{
+				final int from = start;
+				final int to = Math.min(values.size(), start + slice);
+				final StringEncryptor encryptor = svc;
+
+				results.add(pool.submit(new Callable<Void>()
+				{
+					public Void call() throws Exception
+					{
+						decryptSlice(values, from, to, encryptor);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results)
+				result.get();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			throw new BuildException(ie, getLocation());
+		}
+		catch (ExecutionException ee)
+		{
+			if (ee.getCause() instanceof BuildException)
+				throw (BuildException) ee.getCause();
+			throw new BuildException(ee.getCause(), getLocation());
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Helper method to decrypt the encrypted values in place with a single round trip to the key agent.
+	 * @param values the values
+	 * @param svc the encryptor of the agent
+	 * @throws BuildException if a value can not be decrypted
+	 */
+	private void decryptBatch(List<String> values, StringEncryptor svc) throws BuildException
+	{
+		String[] cipherTexts = null;
+		String[] plainTexts = null;
+		List<Integer> indexes = new ArrayList<Integer>();
+
+		for (int i = 0; i < values.size(); i++)
+		{
+			if (SecEntry.isEncrypted(values.get(i))) indexes.add(i);
+		}
+
+		cipherTexts = new String[indexes.size()];
+		for (int i = 0; i < cipherTexts.length; i++)
+			cipherTexts[i] = SecEntry.unwrap(values.get(indexes.get(i)), svc);
+
+		try
+		{
+			plainTexts = DecryptionCache.decryptAll(svc, cipherTexts);
+		}
+		catch (EncryptionOperationNotPossibleException eonpe)
+		{
+			throw new BuildException("Unable to decrypt the values of " + _filProps.getAbsolutePath(), eonpe, getLocation());
+		}
+
+		for (int i = 0; i < plainTexts.length; i++)
+			values.set(indexes.get(i), plainTexts[i]);
+	}
+
+	/**
+	 * Helper method to decrypt a slice of the values, the slices do not overlap so the list is written without locking.
+	 * @param values the values
+	 * @param from the start of the slice
+	 * @param to the end of the slice, exclusive
+	 * @param svc the encryptor
+	 * @throws BuildException if a value can not be decrypted
+	 */
+	private void decryptSlice(List<String> values, int from, int to, StringEncryptor svc) throws BuildException
+	{
+		String value = null;
+
+		for (int i = from; i < to; i++)
+		{
+			value = values.get(i);
+			if (!SecEntry.isEncrypted(value)) continue;
+
+			try
+			{
+				values.set(i, SecEntry.decrypt(value, svc));
+			}
+			catch (EncryptionOperationNotPossibleException eonpe)
+			{
+				throw new BuildException("Unable to decrypt the value number " + (i + 1) + " of "
+											+ _filProps.getAbsolutePath(), eonpe, getLocation());
+			}
+		}
+	}
+
+	/**
+	 * Helper method to create the filter selecting the keys to be loaded.
+	 * @return the key filter
+	 * @throws BuildException if the regular expression is invalid
+	 */
+	private PropertiesEditor.KeyFilter createFilter() throws BuildException
+	{
+		final Pattern pattern;
+
+		try
+		{
+			pattern = (_strRegex == null) ? null : Pattern.compile(_strRegex);
+		}
+		catch (PatternSyntaxException pse)
+		{
+			throw new BuildException("Invalid regex: " + _strRegex, pse, getLocation());
+		}
+
+		return new PropertiesEditor.KeyFilter()
+		{
+			public boolean accept(String key)
+			{
+				return (pattern == null || pattern.matcher(key).matches());
+			}
+		};
+	}
+
+	/**
+	 * Helper method to parse the iterations recorded in the file.
+	 * @param value the recorded value
+	 * @return the iterations
+	 * @throws BuildException if the value is not a number
+	 */
+	private int parseIterations(String value) throws BuildException
+	{
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new BuildException("Invalid iterations recorded in " + _filProps.getAbsolutePath() + ": " + value,
+										getLocation());
+		}
+	}
+}
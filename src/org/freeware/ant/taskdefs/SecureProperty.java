@@ -10,8 +10,7 @@ package org.freeware.ant.taskdefs;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.Task;
-import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
-import org.jasypt.encryption.pbe.config.EnvironmentStringPBEConfig;
+import org.jasypt.encryption.pbe.PBEStringEncryptor;
 
 /**
  * <p>A task similar to ant's built in <code>property</code> task with additional encryption support.</p>
@@ -23,6 +22,10 @@ public class SecureProperty extends Task
 	private int _intMode = CryptMode.toMode("ENCRYPT");
 	private int _intAlgorithm = CryptAlgorithm.toAlgorithm("PBEWITHMD5ANDDES");
 
+	private int _intIterations = EncryptorCache.DEFAULT_ITERATIONS;
+	private String _strSaltGenerator;
+	private boolean _blnAgent = false;
+
 	private String _strName;
 	private String _strValue;
 	private String _strPassword;
@@ -51,6 +54,8 @@ public class SecureProperty extends Task
 	 *     <li>PBEWITHMD5ANDTRIPLEDES</li>
 	 *     <li>PBEWITHSHA1ANDDESEDE</li>
 	 *     <li>PBEWITHSHA1ANDRC2_40</li>
+	 *     <li>PBKDF2WITHHMACSHA256ANDAES_GCM - the key is derived once and each value is encrypted with AES-GCM, values are
+	 *     stored in the <code>ENC2(...)</code> envelope while <code>ENC(...)</code> values remain readable</li>
 	 * </ul>
 	 * @param algorithm the algorithm to set
 	 */
@@ -59,6 +64,34 @@ public class SecureProperty extends Task
 		_intAlgorithm = CryptAlgorithm.toAlgorithm(algorithm.getValue());
 	}
 
+	/**
+	 * Sets the key obtention iterations, defaults to the default of the algorithm.
+	 * @param iterations the key obtention iterations
+	 */
+	public final void setIterations(int iterations)
+	{
+		_intIterations = iterations;
+	}
+
+	/**
+	 * Sets the salt generator, <code>random</code> (default), <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>.
+	 * @param saltGenerator the salt generator
+	 */
+	public final void setSaltGenerator(String saltGenerator)
+	{
+		_strSaltGenerator = saltGenerator;
+	}
+
+	/**
+	 * Whether to send the work to the key agent when it is running, default is false. See <code>secagent</code>.
+	 * @param agent the flag to use the key agent
+	 */
+	public final void setAgent(boolean agent)
+	{
+		_blnAgent = agent;
+	}
+
 	/**
 	 * Sets the password to be used for encryption.
 	 * @param password the password for encryption
@@ -89,25 +122,22 @@ public class SecureProperty extends Task
 	{
 		String strRet = null;
 		PropertyHelper ph = null;
-    	StandardPBEStringEncryptor svc = null;
-    	EnvironmentStringPBEConfig cfg = null;
+    	PBEStringEncryptor svc = null;
 
 		try
 		{
 			if (null == _strName || null == _strValue)
 				throw new BuildException("You must specify the name and  value attributes!");
 
+			if (_intMode == CryptMode.OPERATION_REKEY)
+				throw new BuildException("The REKEY mode is supported by secpropfile only!");
+
 			if (_intMode != CryptMode.OPERATION_NONE && null == _strPassword)
 				throw new BuildException("You must specify password for encryption or decryption!");
 
 			if (_intMode != CryptMode.OPERATION_NONE)
-			{
-				svc = new StandardPBEStringEncryptor();
-	    		cfg = new EnvironmentStringPBEConfig();
-	    		cfg.setAlgorithm(CryptAlgorithm.toValue(_intAlgorithm));
-	    		cfg.setPassword(_strPassword);
-	    		svc.setConfig(cfg);
-			}
+				svc = EncryptorCache.getInstance(getProject()).getEncryptor(_intAlgorithm, _strPassword, _intIterations,
+																			_strSaltGenerator, 1, _blnAgent);
 
 			if (_intMode == CryptMode.OPERATION_ENCRYPT)
 				strRet = svc.encrypt(_strValue);
@@ -0,0 +1,195 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecurePropertyEvaluator.java
+ * CREATED  : 18-Oct-2026 9:48:52 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.apache.tools.ant.Task;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+
+/**
+ * <p>A task installing a property evaluator which decrypts the property values wrapped in the <code>ENC(...)</code> or the
+ * <code>ENC2(...)</code> envelope when they are referenced, e.g. as <code>${db.password}</code>. Values are decrypted only on
+ * their first reference and the plain text is remembered for the rest of the build, so loading a large encrypted file costs
+ * only the decryption of the values actually used.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secevaluator password="${env.SECRET}"/&gt;
+ * &lt;property file="${basedir}/config/secprops.properties"/&gt;
+ * &lt;echo message="Connecting as ${DB_USER}" /&gt;</pre>
+ * The encryption parameters recorded in a file by <code>secpropfile</code> are not read, the <code>algorithm</code>,
+ * <code>iterations</code> and <code>saltGenerator</code> attributes must match them. A value the evaluator can not decrypt,
+ * e.g. one encrypted with another password, is left to the evaluators installed before it and, failing them, stays
+ * encrypted, so several evaluators with different passwords may be installed side by side.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SecurePropertyEvaluator extends Task
+{
+	private int _intAlgorithm = CryptAlgorithm.toAlgorithm("PBEWITHMD5ANDDES");
+	private int _intIterations = EncryptorCache.DEFAULT_ITERATIONS;
+	private String _strSaltGenerator;
+	private String _strPassword;
+
+	/**
+	 * Sets the encryption algorithm of the values, default is '<code>PBEWITHMD5ANDDES</code>'.
+	 * @param algorithm the algorithm to set
+	 */
+	public final void setAlgorithm(CryptAlgorithm algorithm)
+	{
+		_intAlgorithm = CryptAlgorithm.toAlgorithm(algorithm.getValue());
+	}
+
+	/**
+	 * Sets the key obtention iterations, defaults to the default of the algorithm.
+	 * @param iterations the key obtention iterations
+	 */
+	public final void setIterations(int iterations)
+	{
+		_intIterations = iterations;
+	}
+
+	/**
+	 * Sets the salt generator, <code>random</code> (default), <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>.
+	 * @param saltGenerator the salt generator
+	 */
+	public final void setSaltGenerator(String saltGenerator)
+	{
+		_strSaltGenerator = saltGenerator;
+	}
+
+	/**
+	 * Sets the password to be used for decryption; required.
+	 * @param password the password
+	 */
+	public final void setPassword(String password)
+	{
+		_strPassword = password;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.tools.ant.Task#execute()
+	 */
+	public void execute() throws BuildException
+	{
+		if (null == _strPassword)
+			throw new BuildException("You must specify password for decryption!", getLocation());
+
+		install(getProject(), null, _intAlgorithm, _strPassword, _intIterations, _strSaltGenerator);
+		log("Installed the evaluator of encrypted properties", Project.MSG_VERBOSE);
+	}
+
+	/**
+	 * Installs an evaluator decrypting the encrypted property values of the project on their first reference.
+	 * @param project the project
+	 * @param keys the names of the properties the evaluator decrypts, <code>null</code> for all the properties
+	 * @param algorithm the algorithm id
+	 * @param password the password
+	 * @param iterations the key obtention iterations
+	 * @param saltGenerator the salt generator, may be <code>null</code>
+	 */
+	static void install(Project project, Collection<String> keys, int algorithm, String password, int iterations,
+						String saltGenerator)
+	{
+		PropertyHelper.getPropertyHelper(project).add(new Evaluator(project, keys, algorithm, password, iterations,
+																	saltGenerator));
+	}
+
+	/**
+	 * The evaluator decrypting the encrypted values. The encryptor is obtained only when the first encrypted value is
+	 * referenced, the plain texts are cached by cipher text. A value which can not be decrypted is not claimed, so that the
+	 * next evaluator gets to decrypt it.
+	 */
+	private static final class Evaluator implements PropertyHelper.PropertyEvaluator
+	{
+		private final Project _project;
+		private final Set<String> _keys;
+		private final int _intAlgorithm;
+		private final String _strPassword;
+		private final int _intIterations;
+		private final String _strSaltGenerator;
+		private final ConcurrentMap<String, String> _plainTexts = new ConcurrentHashMap<String, String>();
+		// the cipher texts which could not be decrypted, so that they are not tried again on every reference
+		private final Set<String> _failed = ConcurrentHashMap.<String>newKeySet();
+		// set while the raw value is looked up, so that the lookup does not come back to this evaluator
+		private final ThreadLocal<Boolean> _resolving = new ThreadLocal<Boolean>();
+
+		private volatile StringEncryptor _svc;
+
+		Evaluator(Project project, Collection<String> keys, int algorithm, String password, int iterations,
+					String saltGenerator)
+		{
+			_project = project;
+			_keys = (keys == null) ? null : new HashSet<String>(keys);
+			_intAlgorithm = algorithm;
+			_strPassword = password;
+			_intIterations = iterations;
+			_strSaltGenerator = saltGenerator;
+		}
+
+		/** {@inheritDoc}. */
+		public Object evaluate(String property, PropertyHelper propertyHelper)
+		{
+			Object raw = null;
+			String value = null;
+			String plainText = null;
+
+			if (_resolving.get() != null || (_keys != null && !_keys.contains(property))) return null;
+
+			_resolving.set(Boolean.TRUE);
+			try
+			{
+				raw = propertyHelper.getProperty(property);
+			}
+			finally
+			{
+				_resolving.remove();
+			}
+
+			if (!(raw instanceof String) || !SecEntry.isEncrypted((String) raw)) return null;
+
+			value = (String) raw;
+			plainText = _plainTexts.get(value);
+			if (plainText == null)
+			{
+				if (_failed.contains(value)) return null;
+				try
+				{
+					plainText = SecEntry.decrypt(value, getEncryptor());
+				}
+				catch (EncryptionOperationNotPossibleException eonpe)
+				{
+					_failed.add(value);
+					_project.log("Unable to decrypt the property " + property + ", leaving it to the other evaluators",
+									Project.MSG_VERBOSE);
+					return null;
+				}
+				_plainTexts.putIfAbsent(value, plainText);
+				_project.log("Decrypted the property " + property, Project.MSG_DEBUG);
+			}
+			return plainText;
+		}
+
+		private StringEncryptor getEncryptor()
+		{
+			if (_svc == null)
+				_svc = EncryptorCache.getInstance(_project).getEncryptor(_intAlgorithm, _strPassword, _intIterations,
+																			_strSaltGenerator, 1);
+			return _svc;
+		}
+	}
+}
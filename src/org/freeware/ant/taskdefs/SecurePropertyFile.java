@@ -7,22 +7,41 @@
  *--------------------------------------------------------------------------------------------------------------------------------*/
 package org.freeware.ant.taskdefs;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
 import org.apache.tools.ant.Task;
-import org.apache.tools.ant.util.FileUtils;
-import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
-import org.jasypt.encryption.pbe.config.EnvironmentStringPBEConfig;
+import org.apache.tools.ant.taskdefs.condition.Os;
+import org.apache.tools.ant.types.EnumeratedAttribute;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.types.resources.FileProvider;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 
 /**
  * <p>A task similar to ant's built in <code>propertyfile</code> task with additional encryption.
@@ -33,25 +52,107 @@ import org.jasypt.encryption.pbe.config.EnvironmentStringPBEConfig;
  *     &lt;secentry key="LOGIN_ATTEMPTS" value="${login.attempts}" operation="=" type="int"/&gt;
  *     &lt;secentry key="EXPIRES_ON" value="12" default="now" operation="+" type="date" unit="month" pattern="yyyyMMdd"/&gt;
  * &lt;/secpropfile&gt;</pre>
+ * Large files can be processed on several worker threads by setting the <code>threads</code> attribute. Instead of a single
+ * <code>file</code>, nested file sets may be used to apply the same entries to many property files, which are then
+ * processed concurrently. With <code>calibrate="true"</code> the key obtention iterations are chosen to fit the
+ * <code>targetLatency</code> on the current machine and recorded in the file, along with the algorithm and the salt
+ * generator, so that later runs use the same parameters.
  * </p>
+ * <p>In <code>REKEY</code> mode every encrypted value of the files is decrypted with the current parameters and encrypted
+ * again with the <code>newPassword</code>, and optionally the <code>newAlgorithm</code>, in a single pass, so the plain
+ * text never reaches the disk:</p>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secpropfile mode="REKEY" password="${env.OLD_SECRET}" newPassword="${env.SECRET}" threads="4"&gt;
+ *     &lt;fileset dir="${basedir}/config" includes="**&#47;*.properties"/&gt;
+ * &lt;/secpropfile&gt;</pre>
+ * <p>With <code>format="store"</code> the file is an indexed binary store instead, see {@link EncryptedStore}, which is
+ * rewritten as a whole. The existing property files are converted by <code>secstore</code>.</p>
+ * <p>With <code>format="sealed"</code> the whole file is encrypted at once, see {@link SealedFile}, instead of value by value,
+ * which suits the files made mostly of secrets. The entries are applied to the plain values, which are then sealed along
+ * with the rest of the file in a single key derivation and stream cipher pass. The file is sealed in <code>ENCRYPT</code>
+ * mode, written back as a plain property file in <code>DECRYPT</code> mode and sealed again with the
+ * <code>newPassword</code> in <code>REKEY</code> mode. Sealed files are loaded by <code>secproperties</code> and
+ * {@link EncryptedProperties}.</p>
+ * <p>With <code>pipeline="true"</code> a property file is read, transformed and written in overlapping stages instead of one
+ * after the other, see {@link PipelinedEditor}, so the encryption of large generated files keeps both the processors and
+ * the disk busy while the memory used stays bounded.</p>
  * @author Prasad P. Khandekar
  * @version $Id$
  */
 public class SecurePropertyFile extends Task
 {
-	private int _intAlgorithm = CryptAlgorithm.toAlgorithm("PBEWITHMD5ANDDES");
+	// files from this size on are memory mapped when read
+	private static final long MAP_THRESHOLD = 4L * 1024 * 1024;
+	private static final int DEFAULT_LATENCY = 100;
+	private static final String DEFAULT_ALGORITHM = EncryptorFactory.DEFAULT_ALGORITHM;
+
+	private int _intAlgorithm = CryptAlgorithm.toAlgorithm(DEFAULT_ALGORITHM);
 	private int _intMode = CryptMode.OPERATION_NONE;
+	private int _intThreads = 1;
 	private boolean _blnSkipEmpty = false;
+	private boolean _blnIncremental = false;
+	private boolean _blnSync = true;
+	private boolean _blnAgent = false;
+	private boolean _blnStore = false;
+	private boolean _blnSealed = false;
+	private boolean _blnPipeline = false;
 
 	private File _filProps;
+	private File _filDigests;
 	private String _strPassword;
 	private String _strComment;
 
-	private Properties _props;
+	private int _intFileThreads = Runtime.getRuntime().availableProcessors();
+	private boolean _blnFailFast = false;
+
+	private boolean _blnAlgorithmSet = false;
+	private int _intIterations = EncryptorCache.DEFAULT_ITERATIONS;
+	private String _strSaltGenerator;
+	private boolean _blnCalibrate = false;
+	private int _intLatency = DEFAULT_LATENCY;
+	private int _intCalibrated = 0;
+	private int _intPoolSize = 1;
+
+	private String _strNewPassword;
+	private int _intNewAlgorithm;
+	private boolean _blnNewAlgorithmSet = false;
+	private int _intNewIterations = EncryptorCache.DEFAULT_ITERATIONS;
+
+	private String _strStatsPrefix;
+	private File _filStatsReport;
+	private ExecutionStats _stats;
+
 	private Vector<SecEntry> entries = new Vector<SecEntry>();
+	private Vector<SecEntrySet> entrySets = new Vector<SecEntrySet>();
+	private Vector<ResourceCollection> resources = new Vector<ResourceCollection>();
+
+	/**
+	 * Enumerated attribute with the values "properties", "store" and "sealed".
+	 */
+	public static class Format extends EnumeratedAttribute
+	{
+	    /** {@inheritDoc}. */
+	    public String[] getValues()
+	    {
+	        return new String[] {"properties", "store", "sealed"};
+	    }
+	}
 
 	/**
-	 * optional header comment for the file
+	 * The format of the file, <code>properties</code> (default), <code>store</code> for the indexed binary store read by
+	 * {@link EncryptedStore} or <code>sealed</code> for a property file encrypted as a whole. A store records the encryption
+	 * parameters, holds the cipher texts as bytes and is rewritten as a whole, the <code>comment</code> does not apply. A
+	 * sealed file records its iterations, the <code>algorithm</code> and the <code>saltGenerator</code> do not apply to it.
+	 * @param format the format
+	 */
+	public void setFormat(Format format)
+	{
+		_blnStore = "store".equals(format.getValue());
+		_blnSealed = "sealed".equals(format.getValue());
+	}
+
+	/**
+	 * optional header comment for the file, written when the file is created
 	 * @param strVal the comment to set
 	 */
 	public final void setComment(String strVal)
@@ -60,12 +161,59 @@ public class SecurePropertyFile extends Task
 	}
 
 	/**
-	 * The encryption algorithm to be used, default is '<code>PBEWITHMD5ANDDES</code>'
+	 * The encryption algorithm to be used, default is '<code>PBEWITHMD5ANDDES</code>'. With
+	 * '<code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>' the key is derived once per run and values are stored in the
+	 * <code>ENC2(...)</code> envelope, existing <code>ENC(...)</code> values can still be decrypted.
 	 * @param algorithm the algorithm to set
 	 */
 	public final void setAlgorithm(CryptAlgorithm algorithm)
 	{
 		_intAlgorithm = CryptAlgorithm.toAlgorithm(algorithm.getValue());
+		_blnAlgorithmSet = true;
+	}
+
+	/**
+	 * The key obtention iterations, defaults to the iterations recorded in the file or else to the default of the algorithm,
+	 * 1000 for the PBE algorithms and 310000 for <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>. Values encrypted with other
+	 * iterations can no longer be decrypted once the iterations of a file are changed.
+	 * @param iterations the key obtention iterations
+	 */
+	public void setIterations(int iterations)
+	{
+		_intIterations = iterations;
+	}
+
+	/**
+	 * The salt generator, <code>random</code> (default), <code>zero</code> or the name of a class implementing
+	 * <code>org.jasypt.salt.SaltGenerator</code>. Defaults to the generator recorded in the file.
+	 * @param saltGenerator the salt generator
+	 */
+	public void setSaltGenerator(String saltGenerator)
+	{
+		_strSaltGenerator = saltGenerator;
+	}
+
+	/**
+	 * Enables the calibration of the iterations, applies to the <code>ENCRYPT</code> mode of files which do not record their
+	 * parameters yet and when no <code>iterations</code> are specified. The algorithm is measured on the current machine
+	 * and the highest iteration count within the <code>targetLatency</code> is chosen. The parameters used are recorded in
+	 * the first line of the file, so that later runs, including the decryption, use the same parameters.
+	 * @param calibrate the flag to calibrate the iterations
+	 */
+	public void setCalibrate(boolean calibrate)
+	{
+		_blnCalibrate = calibrate;
+	}
+
+	/**
+	 * The latency budget of the calibration in milliseconds, default is 100. It applies to the encryption of a single value
+	 * for the PBE algorithms, which derive a key for every value, and to the single key derivation of
+	 * <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code>.
+	 * @param millis the latency budget
+	 */
+	public void setTargetLatency(int millis)
+	{
+		_intLatency = millis;
 	}
 
 	/**
@@ -77,8 +225,38 @@ public class SecurePropertyFile extends Task
 		_strPassword = password;
 	}
 
+	/**
+	 * The password the values are encrypted with in <code>REKEY</code> mode, required in that mode.
+	 * @param password the new password
+	 */
+	public final void setNewPassword(String password)
+	{
+		_strNewPassword = password;
+	}
+
+	/**
+	 * The algorithm the values are encrypted with in <code>REKEY</code> mode, defaults to the current algorithm.
+	 * @param algorithm the new algorithm
+	 */
+	public final void setNewAlgorithm(CryptAlgorithm algorithm)
+	{
+		_intNewAlgorithm = CryptAlgorithm.toAlgorithm(algorithm.getValue());
+		_blnNewAlgorithmSet = true;
+	}
+
+	/**
+	 * The key obtention iterations the values are encrypted with in <code>REKEY</code> mode. Defaults to the current
+	 * iterations if the algorithm is not changed, or else to the calibrated iterations with <code>calibrate="true"</code> or
+	 * to the default of the new algorithm.
+	 * @param iterations the new key obtention iterations
+	 */
+	public void setNewIterations(int iterations)
+	{
+		_intNewIterations = iterations;
+	}
+
     /**
-     * Location of the property file to be edited; required.
+     * Location of the property file to be edited; required unless nested resource collections are used.
      * @param file the property file.
      */
     public void setFile(File file)
@@ -92,6 +270,7 @@ public class SecurePropertyFile extends Task
      *     <li>NONE - store as is</li>
      *     <li>ENCRYPT - Encrypt property values</li>
      *     <li>DECRYPT - Decrypt property values</li>
+     *     <li>REKEY - Encrypt all the encrypted values again with the new password or algorithm</li>
      * </ul>
      * The default mode is NONE
      * @param strMode
@@ -110,15 +289,165 @@ public class SecurePropertyFile extends Task
 		_blnSkipEmpty = skip;
 	}
 
+	/**
+	 * The number of worker threads used to encrypt or decrypt the entries, default is 1. When more than one thread is used,
+	 * the entries operating on different keys are evaluated concurrently while the entries operating on the same key are
+	 * still applied in the order in which they are declared.
+	 * @param threads the number of worker threads
+	 */
+	public void setThreads(int threads)
+	{
+		_intThreads = threads;
+	}
+
+	/**
+	 * Whether the written files are flushed to the storage device before they replace the originals, default is true. May be
+	 * turned off on scratch disks where durability does not matter.
+	 * @param sync the flag to flush the written files
+	 */
+	public void setFsync(boolean sync)
+	{
+		_blnSync = sync;
+	}
+
+	/**
+	 * Whether to send the encryption and decryption to the key agent when it is running, default is false. The agent keeps
+	 * the encryptors initialized across builds, see <code>secagent</code>.
+	 * @param agent the flag to use the key agent
+	 */
+	public void setAgent(boolean agent)
+	{
+		_blnAgent = agent;
+	}
+
+	/**
+	 * Enables the incremental mode, applies to the <code>ENCRYPT</code> mode only. In incremental mode a keyed digest of each
+	 * encrypted value is kept in a sidecar file, the values whose plain text has not changed since the last run are not
+	 * encrypted again and the file is not rewritten at all if none of the values has changed. A change of the algorithm, of
+	 * the iterations or of the salt generator encrypts every value again.
+	 * @param incremental the flag to enable the incremental mode
+	 */
+	public void setIncremental(boolean incremental)
+	{
+		_blnIncremental = incremental;
+	}
+
+	/**
+	 * Enables the pipelined mode, default is false. In pipelined mode the file is parsed in chunks on a reader thread, the
+	 * values of each chunk are evaluated on the <code>threads</code> worker threads and the chunks are written in order as
+	 * they complete, the stages exchanging the chunks through a bounded queue. The file is thus never loaded as a whole and
+	 * the elapsed time tends to that of the slowest stage. Can not be used along with the <code>incremental</code> mode or
+	 * the <code>store</code> and <code>sealed</code> formats. As in the default mode, a key whose value is changed must be
+	 * defined only once in the file.
+	 * @param pipeline the flag to enable the pipelined mode
+	 */
+	public void setPipeline(boolean pipeline)
+	{
+		_blnPipeline = pipeline;
+	}
+
+	/**
+	 * The sidecar file holding the digests of the incremental mode, defaults to the property file name suffixed with
+	 * <code>.digest</code>. Can not be used along with nested resource collections.
+	 * @param file the digest file
+	 */
+	public void setDigestFile(File file)
+	{
+		_filDigests = file;
+	}
+
+	/**
+	 * The maximum number of property files processed concurrently when nested resource collections are used, defaults to the
+	 * number of available processors.
+	 * @param threads the number of files processed concurrently
+	 */
+	public void setFileThreads(int threads)
+	{
+		_intFileThreads = threads;
+	}
+
+	/**
+	 * Whether to stop processing the remaining files as soon as one of the files fails, default is false in which case all
+	 * the files are processed, each failure is reported and the build fails at the end.
+	 * @param failFast the flag to stop at the first failure
+	 */
+	public void setFailFast(boolean failFast)
+	{
+		_blnFailFast = failFast;
+	}
+
+	/**
+	 * The prefix of the project properties the statistics of the execution are published to, by default they are only
+	 * logged in verbose mode. The properties are <code>prefix.files</code>, <code>prefix.entries</code>,
+	 * <code>prefix.unchanged</code>, <code>prefix.cryptoOps</code>, <code>prefix.cryptoOpsPerSecond</code>,
+	 * <code>prefix.bytesRead</code>, <code>prefix.bytesWritten</code> and the wall time in milliseconds of each phase,
+	 * <code>prefix.setup.ms</code>, <code>prefix.read.ms</code>, <code>prefix.crypto.ms</code> and
+	 * <code>prefix.write.ms</code>. The counts of the decryption cache of the build so far, see {@link EncryptorCache}, are
+	 * published as <code>prefix.decryptCache.hits</code>, <code>prefix.decryptCache.misses</code>,
+	 * <code>prefix.decryptCache.evictions</code> and <code>prefix.decryptCache.size</code>.
+	 * @param prefix the prefix of the statistics properties
+	 */
+	public void setStatsPrefix(String prefix)
+	{
+		_strStatsPrefix = prefix;
+	}
+
+	/**
+	 * A file the statistics of the execution, the totals and those of every property file, are written to as JSON.
+	 * @param report the report file
+	 */
+	public void setStatsReport(File report)
+	{
+		_filStatsReport = report;
+	}
+
+	/**
+	 * Adds a collection of property files, such as a nested <code>fileset</code>, to which the same entries are applied.
+	 * @param rc the resource collection
+	 */
+	public void add(ResourceCollection rc)
+	{
+		resources.addElement(rc);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.apache.tools.ant.Task#execute()
 	 */
 	public void execute() throws BuildException
 	{
+		List<File> files = null;
+		int workers = 1;
+
         checkParameters();
-        readFile();
-        executeOperation();
-        writeFile();
+        files = collectFiles();
+        if (files.isEmpty())
+        {
+        	log("No property files to process", Project.MSG_VERBOSE);
+        	return;
+        }
+
+        // the patterns are compiled up front as the sets are shared by the files processed concurrently
+        for (SecEntrySet set : entrySets)
+        	set.compile();
+
+        if (files.size() > 1)
+        	workers = Math.max(1, Math.min(_intFileThreads, files.size()));
+
+        // the files processed concurrently share the encryptors, which are pooled accordingly
+        _intPoolSize = Math.max(1, _intThreads) * workers;
+
+        _stats = new ExecutionStats();
+        try
+        {
+	    	if (files.size() == 1)
+	    		new FileJob(files.get(0), _filDigests).run();
+	    	else
+	    		executeFiles(files, workers);
+        }
+        finally
+        {
+        	reportStats();
+        }
 	}
 
     /**
@@ -133,43 +462,222 @@ public class SecurePropertyFile extends Task
     }
 
     /**
-     * Helper method to take actions on individual entries.
-     * @throws BuildException if unable to perform the specified operation (+,-,=,del)
+     * The entry set nested element, selects the keys to be encrypted or decrypted by patterns.
+     * @return an entry set nested element to be configured.
+     */
+    public SecEntrySet createSecEntrySet()
+    {
+        SecEntrySet s = new SecEntrySet();
+        entrySets.addElement(s);
+        return s;
+    }
+
+    /**
+     * Helper method to process several property files on a bounded pool of worker threads sharing the encryptors. Each
+     * failure is reported against its file, the build fails once all the files are processed or, in fail fast mode, as
+     * soon as the first failure is seen.
+     * @param files the property files
+     * @param workers the number of files to be processed concurrently
+     * @throws BuildException if any of the files could not be processed
+     */
+    private void executeFiles(List<File> files, int workers) throws BuildException
+    {
+    	int failed = 0;
+    	BuildException first = null;
+    	ExecutorService pool = null;
+    	CompletionService<File> ecs = null;
+    	Map<Future<File>, File> pending = new HashMap<Future<File>, File>();
+
+    	log("Processing " + files.size() + " property files on " + workers + " thread(s)", Project.MSG_VERBOSE);
+    	pool = Executors.newFixedThreadPool(workers);
+    	ecs = new ExecutorCompletionService<File>(pool);
+    	try
+    	{
+    		for (final File file : files)
+    		{
+    			pending.put(ecs.submit(new Callable<File>()
+    			{
+					public File call() throws Exception
+					{
+						new FileJob(file, null).run();
+						return file;
+					}
+    			}), file);
+    		}
+
+    		while (!pending.isEmpty())
+    		{
+    			Future<File> done = ecs.take();
+    			File file = pending.remove(done);
+    			try
+    			{
+    				done.get();
+    			}
+    			catch (ExecutionException ee)
+    			{
+    				failed++;
+    				log(file.getAbsolutePath() + ": " + ee.getCause(), Project.MSG_ERR);
+    				if (first == null)
+    					first = (ee.getCause() instanceof BuildException) ? (BuildException) ee.getCause()
+    						: new BuildException(ee.getCause(), getLocation());
+    				if (_blnFailFast) break;
+    			}
+    		}
+    	}
+    	catch (InterruptedException ie)
+    	{
+    		Thread.currentThread().interrupt();
+    		throw new BuildException(ie, getLocation());
+    	}
+    	finally
+    	{
+    		pool.shutdownNow();
+    	}
+
+    	if (first != null)
+    		throw new BuildException(failed + " of " + files.size() + " property file(s) failed, first failure: "
+    									+ first.getMessage(), first, getLocation());
+    }
+
+    /**
+     * Helper method to log the statistics of the execution and to publish them as properties and as a report as requested.
+     * A report which can not be written is not a reason to fail the build, it is only warned about.
      */
-    private void executeOperation() throws BuildException
+    private void reportStats()
     {
-    	SecEntry entry = null;
-    	StandardPBEStringEncryptor svc = null;
-    	EnvironmentStringPBEConfig cfg = null;
+    	DecryptionCache cache = EncryptorCache.getInstance(getProject()).getDecryptionCache();
 
-    	if (_intMode != CryptMode.OPERATION_NONE)
+    	log("Statistics: " + _stats.summary(), Project.MSG_VERBOSE);
+    	if (cache != null)
+    		log("Decryption cache: " + cache.summary(), Project.MSG_VERBOSE);
+
+    	if (_strStatsPrefix != null)
     	{
-    		svc = new StandardPBEStringEncryptor();
-    		cfg = new EnvironmentStringPBEConfig();
-    		cfg.setAlgorithm(CryptAlgorithm.toValue(_intAlgorithm));
-    		cfg.setPassword(_strPassword);
-    		svc.setConfig(cfg);
+    		_stats.publish(PropertyHelper.getPropertyHelper(getProject()), _strStatsPrefix);
+    		if (cache != null)
+    			cache.publish(PropertyHelper.getPropertyHelper(getProject()), _strStatsPrefix);
     	}
 
-        for (Enumeration<SecEntry> e = entries.elements(); e.hasMoreElements();)
-        {
-            entry = (SecEntry) e.nextElement();
-            entry.executeOn(_props, svc, _intMode, _blnSkipEmpty);
-        }
-        svc = null;
+    	if (_filStatsReport != null)
+    	{
+    		try
+    		{
+    			_stats.writeReport(_filStatsReport);
+    		}
+    		catch (IOException ioe)
+    		{
+    			log("Unable to write the statistics report " + _filStatsReport.getAbsolutePath() + ": " + ioe.getMessage(),
+    				Project.MSG_WARN);
+    		}
+    	}
+    }
+
+    /**
+     * Helper method to collect the property files to be processed.
+     * @return the property files
+     * @throws BuildException if a nested resource is not a file system resource
+     */
+    List<File> collectFiles() throws BuildException
+    {
+    	List<File> files = new ArrayList<File>();
+
+    	if (_filProps != null)
+    		files.add(_filProps);
+
+    	for (ResourceCollection rc : resources)
+    		addFiles(rc, files);
+    	return files;
+    }
+
+    /**
+     * Helper method to add the files of a resource collection in the order of the collection.
+     * @param rc the resource collection
+     * @param files the list to which the files are to be added
+     * @throws BuildException if a resource is not a file system resource
+     */
+    void addFiles(ResourceCollection rc, List<File> files) throws BuildException
+    {
+    	FileProvider fp = null;
+
+		for (Iterator<?> it = rc.iterator(); it.hasNext();)
+		{
+			Resource r = (Resource) it.next();
+			fp = r.as(FileProvider.class);
+			if (fp == null)
+				throw new BuildException("Only file system resources are supported, not " + r.toLongString(), getLocation());
+			files.add(fp.getFile());
+		}
+    }
+
+    /**
+     * The files merged into a property file, in the order in which they override each other, see {@link SecureMerge}.
+     * @param file the property file to be written
+     * @return the files to be merged, <code>null</code> if the property file is edited in place
+     */
+    List<File> getSources(File file)
+    {
+    	return null;
+    }
+
+    /**
+     * Helper method to calibrate the iterations, done once for all the files of the execution.
+     * @param algorithm the algorithm id
+     * @param saltGenerator the salt generator
+     * @return the calibrated iterations
+     */
+    private synchronized int getCalibratedIterations(int algorithm, String saltGenerator)
+    {
+    	if (_intCalibrated == 0)
+    	{
+    		_intCalibrated = IterationCalibrator.calibrate(algorithm, _strPassword, saltGenerator, _intLatency);
+    		log("Calibrated " + _intCalibrated + " iterations of " + CryptAlgorithm.toValue(algorithm) + " for "
+    			+ _intLatency + "ms");
+    	}
+    	return _intCalibrated;
     }
 
     /**
      * Helper method to validate the arguments supplied to this instance of task
      * @throws BuildException if properties file reference is not supplied or password not supplied for encrypt or decrypt operation
      */
-    private void checkParameters() throws BuildException
+    void checkParameters() throws BuildException
     {
-        if (!checkParam(_filProps))
+        if (!checkParam(_filProps) && resources.isEmpty())
             throw new BuildException("file token must not be null.", getLocation());
 
+        checkOptions();
+    }
+
+    /**
+     * Helper method to check the combination of the mode, the format and the options.
+     * @throws BuildException if the password is not supplied for the mode or if the options do not apply together
+     */
+    void checkOptions() throws BuildException
+    {
         if (_intMode != CryptMode.OPERATION_NONE && _strPassword == null)
         	throw new BuildException("Password must be supplied in encryption or decryption mode", getLocation());
+
+        if (_filDigests != null && !resources.isEmpty())
+        	throw new BuildException("digestFile can not be used with nested resource collections", getLocation());
+
+        if (_blnSealed && _intMode == CryptMode.OPERATION_NONE)
+        	throw new BuildException("A sealed file requires the ENCRYPT, DECRYPT or REKEY mode", getLocation());
+        if (_blnSealed && _blnIncremental)
+        	throw new BuildException("incremental can not be used with sealed files, which are encrypted as a whole",
+        								getLocation());
+        if (_blnPipeline && (_blnStore || _blnSealed))
+        	throw new BuildException("pipeline applies to the properties format only", getLocation());
+        if (_blnPipeline && _blnIncremental)
+        	throw new BuildException("pipeline can not be used along with incremental", getLocation());
+
+        if (_intMode == CryptMode.OPERATION_REKEY)
+        {
+        	if (_strNewPassword == null)
+        		throw new BuildException("newPassword must be supplied in REKEY mode", getLocation());
+        	if (!entries.isEmpty() || !entrySets.isEmpty())
+        		throw new BuildException("Entries can not be used in REKEY mode, all the encrypted values are re-encrypted",
+        									getLocation());
+        }
     }
 
     /**
@@ -183,104 +691,1012 @@ public class SecurePropertyFile extends Task
     }
 
     /**
-     * Helper method to write the properties file
-     * @throws BuildException if unable to write the file
+     * Holds the state of a single property file being processed, so that several files can be processed concurrently with
+     * the same entries.
      */
-    private void writeFile() throws BuildException
+    private final class FileJob
     {
-    	OutputStream os = null;
-    	ByteArrayOutputStream baos = null;
+    	private final File _filProps;
+    	private final List<File> _sources;
+    	private File _filDigests;
 
-        // Write to RAM first, as an OOME could otherwise produce a truncated file:
-        try
-        {
-        	baos = new ByteArrayOutputStream();
-            _props.store(baos, _strComment);
-        }
-        catch (IOException x)
-        {
-        	// should not happen
-            throw new BuildException(x, getLocation());
-        }
+    	private Properties _props;
+    	private Map<String, String> _original;
+    	private DigestStore _digests;
 
-        try
-        {
-            os = new FileOutputStream(_filProps);
-            try
-            {
-                try
-                {
-                    os.write(baos.toByteArray());
-                }
-                finally
-                {
-                    os.close();
-                }
-            }
-            catch (IOException x)
-            {
-            	// possibly corrupt
-                FileUtils.getFileUtils().tryHardToDelete(_filProps);
-                throw x;
-            }
-        }
-        catch (IOException x)
-        {
-        	// opening, writing, or closing
-            throw new BuildException(x, getLocation());
-        }
-    }
+    	private int _intAlgo;
+    	private int _intIter;
+    	private String _strSaltGen;
+    	private Map<String, String> _header;
+    	private Map<String, String> _recorded;
+    	private Map<String, String> _storeValues;
+    	private ExecutionStats.FileStats _fileStats;
 
-    /**
-     * Helper method to load the properties file
-     * @throws BuildException if unable to read the properties file.
-     */
-    private void readFile() throws BuildException
-    {
-    	FileInputStream fis = null;
-    	FileOutputStream out = null;
-    	BufferedInputStream bis = null;
+    	private int _intNewAlgo;
+    	private int _intNewIter;
 
-        try
-        {
-        	_props = new Properties();
-            if (_filProps.exists())
-            {
-                log("Updating property file: " + _filProps.getAbsolutePath());
-                try
-                {
-                    fis = new FileInputStream(_filProps);
-                    bis = new BufferedInputStream(fis);
-                    _props.load(bis);
-                }
-                finally
-                {
-                    if (fis != null)
-                    {
-                        fis.close();
-                    }
-                }
-            }
-            else
-            {
-                log("Creating new property file: " + _filProps.getAbsolutePath());
-                try
-                {
-                    out = new FileOutputStream(_filProps.getAbsolutePath());
-                    out.flush();
-                }
-                finally
-                {
-                    if (out != null)
-                    {
-                        out.close();
-                    }
-                }
-            }
-        }
-        catch (IOException ioe)
-        {
-            throw new BuildException(ioe.toString());
-        }
+    	// the mode the entries are evaluated in, NONE for a sealed file whose values are kept plain
+    	private int _intEntryMode;
+    	private boolean _blnWasSealed;
+    	private int _intSealIter;
+
+    	FileJob(File file, File digests)
+    	{
+    		_filProps = file;
+    		_filDigests = digests;
+    		_sources = getSources(file);
+    	}
+
+    	/**
+    	 * Reads, edits and writes the property file.
+    	 * @throws BuildException if unable to process the file
+    	 */
+    	void run() throws BuildException
+    	{
+    		StringEncryptor svc = null;
+    		StringEncryptor newSvc = null;
+
+    		_fileStats = _stats.start(_filProps);
+    		try
+    		{
+    			_fileStats.begin(ExecutionStats.PHASE_SETUP);
+	    		resolveParameters();
+	    		_intEntryMode = _blnSealed ? CryptMode.OPERATION_NONE : _intMode;
+		    	if (_intEntryMode != CryptMode.OPERATION_NONE)
+		    		svc = EncryptorCache.getInstance(getProject()).getEncryptor(_intAlgo, _strPassword, _intIter, _strSaltGen,
+		    																	_intPoolSize, _blnAgent);
+		    	if (_intEntryMode == CryptMode.OPERATION_REKEY)
+		    		newSvc = EncryptorCache.getInstance(getProject()).getEncryptor(_intNewAlgo, _strNewPassword, _intNewIter,
+		    																		_strSaltGen, _intPoolSize, _blnAgent);
+		        if (_blnIncremental && _intMode == CryptMode.OPERATION_ENCRYPT)
+		        	loadDigests();
+
+		        if (_blnPipeline)
+		        {
+		        	// the stages overlap, their time is accounted as a whole to the crypto phase
+		        	_fileStats.begin(ExecutionStats.PHASE_CRYPTO);
+		        	executePipelined(svc, newSvc);
+		        	return;
+		        }
+
+		        _fileStats.begin(ExecutionStats.PHASE_READ);
+		        readFile();
+
+		        _fileStats.begin(ExecutionStats.PHASE_CRYPTO);
+		        if (_intEntryMode == CryptMode.OPERATION_REKEY)
+		        	_fileStats.addEntries(executeRekey(svc, newSvc));
+		        else
+		        	_fileStats.addEntries(executeOperation(svc));
+		        countChanges();
+
+		        _fileStats.begin(ExecutionStats.PHASE_WRITE);
+		        writeFile();
+		        if (_digests != null)
+		        	storeDigests();
+    		}
+    		finally
+    		{
+    			_fileStats.end();
+    		}
+    	}
+
+	    /**
+	     * Helper method to count the values left unchanged by the entries and the values encrypted or decrypted.
+	     */
+	    private void countChanges()
+	    {
+	    	int unchanged = 0;
+	    	int cryptoOps = 0;
+	    	String strValue = null;
+	    	Set<String> keys = new HashSet<String>(_original.keySet());
+
+	    	keys.addAll(_props.stringPropertyNames());
+	    	for (String key : keys)
+	    	{
+	    		strValue = _props.getProperty(key);
+	    		if (strValue != null && strValue.equals(_original.get(key)))
+	    			unchanged++;
+	    		else if (_intEntryMode == CryptMode.OPERATION_ENCRYPT && SecEntry.isEncrypted(strValue))
+	    			cryptoOps++;
+	    		else if (_intEntryMode == CryptMode.OPERATION_DECRYPT && SecEntry.isEncrypted(_original.get(key)))
+	    			cryptoOps++;
+	    		else if (_intEntryMode == CryptMode.OPERATION_REKEY)
+	    			cryptoOps += 2;
+	    	}
+	    	_fileStats.addUnchanged(unchanged);
+	    	_fileStats.addCryptoOps(cryptoOps);
+	    }
+
+	    /**
+	     * Helper method to determine the encryption parameters of the file. The attributes of the task take precedence over
+	     * the parameters recorded in the file, the iterations are calibrated for a file which records none. In
+	     * <code>ENCRYPT</code> mode the parameters are recorded in the file when they are not the defaults or have changed, in
+	     * <code>REKEY</code> mode the new parameters are.
+	     * @throws BuildException if unable to read the file
+	     */
+	    private void resolveParameters() throws BuildException
+	    {
+	    	String strValue = null;
+	    	Map<String, String> recorded = null;
+	    	Map<String, String> current = new LinkedHashMap<String, String>();
+
+	    	if (_blnSealed)
+	    	{
+	    		resolveSealedParameters();
+	    		return;
+	    	}
+
+	    	try
+	    	{
+	    		// a merged file is written anew, whatever it records is replaced
+	    		if (_sources != null)
+	    			recorded = new HashMap<String, String>();
+	    		else
+	    			recorded = _blnStore ? BinaryStore.readHeader(_filProps) : PropertiesEditor.readHeader(_filProps);
+	    	}
+	    	catch (IOException ioe)
+	    	{
+	    		throw new BuildException(ioe, getLocation());
+	    	}
+
+	    	_recorded = recorded;
+	    	_intAlgo = _intAlgorithm;
+	    	_intIter = _intIterations;
+	    	_strSaltGen = _strSaltGenerator;
+
+	    	if (!_blnAlgorithmSet && recorded.containsKey("algorithm"))
+	    		_intAlgo = CryptAlgorithm.toAlgorithm(recorded.get("algorithm"));
+	    	else if (_intMode != CryptMode.OPERATION_REKEY)
+	    		checkLegacyValues(recorded);
+	    	if (_strSaltGen == null)
+	    		_strSaltGen = recorded.get("saltGenerator");
+
+	    	strValue = recorded.get("iterations");
+	    	if (strValue != null)
+	    	{
+	    		if (_intIter == EncryptorCache.DEFAULT_ITERATIONS)
+	    		{
+	    			try
+	    			{
+	    				_intIter = Integer.parseInt(strValue);
+	    			}
+	    			catch (NumberFormatException nfe)
+	    			{
+	    				throw new BuildException("Invalid iterations recorded in " + _filProps.getAbsolutePath() + ": "
+	    											+ strValue, getLocation());
+	    			}
+	    		}
+	    		else if (!strValue.equals(String.valueOf(_intIter)))
+	    			log("Iterations " + _intIter + " differ from the " + strValue + " recorded in " + _filProps.getName()
+	    				+ ", values encrypted earlier can no longer be decrypted", Project.MSG_WARN);
+	    	}
+	    	else if (_blnCalibrate && _intMode == CryptMode.OPERATION_ENCRYPT && _intIter == EncryptorCache.DEFAULT_ITERATIONS)
+	    		_intIter = getCalibratedIterations(_intAlgo, _strSaltGen);
+
+	    	if (_intMode == CryptMode.OPERATION_REKEY)
+	    	{
+	    		_intNewAlgo = _blnNewAlgorithmSet ? _intNewAlgorithm : _intAlgo;
+	    		if (_intNewIterations != EncryptorCache.DEFAULT_ITERATIONS)
+	    			_intNewIter = _intNewIterations;
+	    		else if (_intNewAlgo == _intAlgo)
+	    			_intNewIter = _intIter;
+	    		else if (_blnCalibrate)
+	    			_intNewIter = getCalibratedIterations(_intNewAlgo, _strSaltGen);
+	    		else
+	    			_intNewIter = EncryptorCache.DEFAULT_ITERATIONS;
+
+	    		current.put("algorithm", CryptAlgorithm.toValue(_intNewAlgo));
+	    		if (_intNewIter != EncryptorCache.DEFAULT_ITERATIONS)
+	    			current.put("iterations", String.valueOf(_intNewIter));
+	    	}
+	    	else if (_intMode == CryptMode.OPERATION_ENCRYPT)
+	    	{
+	    		current.put("algorithm", CryptAlgorithm.toValue(_intAlgo));
+	    		if (_intIter != EncryptorCache.DEFAULT_ITERATIONS)
+	    			current.put("iterations", String.valueOf(_intIter));
+	    	}
+	    	else
+	    		return;
+
+	    	if (_strSaltGen != null)
+	    		current.put("saltGenerator", _strSaltGen);
+
+	    	// a changed or non default algorithm is always recorded, later runs would otherwise assume the default one
+	    	if ((!recorded.isEmpty() || current.size() > 1 || !DEFAULT_ALGORITHM.equals(current.get("algorithm"))
+	    			|| (_intMode == CryptMode.OPERATION_REKEY && _intNewAlgo != _intAlgo))
+	    		&& !current.equals(recorded))
+	    		_header = current;
+	    }
+
+	    /**
+	     * Helper method to reject the switch of a file to the AES-GCM algorithm in place of a rekey when its values can not be
+	     * decrypted by it, i.e. when the file records a PBE algorithm other than the default one or PBE iterations or salt
+	     * generator, the AES-GCM encryptor reading the <code>ENC(...)</code> values with the defaults only.
+	     * @param recorded the parameters recorded in the file
+	     * @throws BuildException if the values of the file would become unreadable
+	     */
+	    private void checkLegacyValues(Map<String, String> recorded) throws BuildException
+	    {
+	    	String strValue = recorded.get("algorithm");
+
+	    	if (!CryptAlgorithm.isAesGcm(_intAlgo) || strValue == null
+	    		|| CryptAlgorithm.isAesGcm(CryptAlgorithm.toAlgorithm(strValue)))
+	    		return;
+	    	if (DEFAULT_ALGORITHM.equals(strValue) && !recorded.containsKey("iterations") && !recorded.containsKey("saltGenerator"))
+	    		return;
+
+	    	throw new BuildException(_filProps.getAbsolutePath() + " records the encryption parameters " + recorded
+	    								+ ", its ENC(...) values can not be decrypted with "
+	    								+ CryptAlgorithm.toValue(_intAlgo) + ", use the REKEY mode with newAlgorithm=\""
+	    								+ CryptAlgorithm.toValue(_intAlgo) + "\" instead", getLocation());
+	    }
+
+	    /**
+	     * Helper method to determine the iterations of a sealed file. The file is unsealed with the iterations it records and
+	     * sealed with the <code>iterations</code> of the task, else with the recorded ones, else with the calibrated or the
+	     * default ones. In <code>REKEY</code> mode the <code>newIterations</code> take precedence.
+	     * @throws BuildException if unable to read the file or if a file to be rekeyed is not sealed
+	     */
+	    private void resolveSealedParameters() throws BuildException
+	    {
+	    	String strValue = null;
+
+	    	try
+	    	{
+	    		_blnWasSealed = SealedFile.isSealed(_filProps);
+	    		if (_blnWasSealed)
+	    			strValue = SealedFile.readHeader(_filProps).get("iterations");
+	    	}
+	    	catch (IOException ioe)
+	    	{
+	    		throw new BuildException(ioe, getLocation());
+	    	}
+
+	    	if (_intMode == CryptMode.OPERATION_REKEY && _filProps.exists() && !_blnWasSealed)
+	    		throw new BuildException("Not a sealed property file: " + _filProps.getAbsolutePath(), getLocation());
+
+	    	_intIter = EncryptorCache.DEFAULT_ITERATIONS;
+	    	if (strValue != null)
+	    	{
+	    		try
+	    		{
+	    			_intIter = Integer.parseInt(strValue);
+	    		}
+	    		catch (NumberFormatException nfe)
+	    		{
+	    			throw new BuildException("Invalid iterations recorded in " + _filProps.getAbsolutePath() + ": "
+	    										+ strValue, getLocation());
+	    		}
+	    	}
+
+	    	if (_intMode == CryptMode.OPERATION_REKEY && _intNewIterations != EncryptorCache.DEFAULT_ITERATIONS)
+	    		_intSealIter = _intNewIterations;
+	    	else if (_intIterations != EncryptorCache.DEFAULT_ITERATIONS)
+	    		_intSealIter = _intIterations;
+	    	else if (_intIter != EncryptorCache.DEFAULT_ITERATIONS)
+	    		_intSealIter = _intIter;
+	    	else if (_blnCalibrate)
+	    		_intSealIter = getCalibratedIterations(CryptAlgorithm.toAlgorithm(EncryptorFactory.AES_GCM), null);
+	    	else
+	    		_intSealIter = SealedFile.DEFAULT_ITERATIONS;
+	    }
+
+	    /**
+	     * Helper method to check whether the sealed form of the file changes, in which case the file is rewritten even if none
+	     * of its values has changed.
+	     * @return true if the file is to be sealed, sealed again or unsealed
+	     */
+	    private boolean isResealed()
+	    {
+	    	if (!_blnSealed) return false;
+	    	if (_intMode == CryptMode.OPERATION_DECRYPT) return _blnWasSealed;
+
+	    	return (!_blnWasSealed || _intMode == CryptMode.OPERATION_REKEY || _intSealIter != _intIter);
+	    }
+
+	    /**
+	     * Helper method to take actions on individual entries. The keys selected by the entry sets are processed after the
+	     * explicitly declared entries.
+	     * @param svc the encryptor to use
+	     * @return the number of entries evaluated
+	     * @throws BuildException if unable to perform the specified operation (+,-,=,del)
+	     */
+	    private int executeOperation(StringEncryptor svc) throws BuildException
+	    {
+	    	SecEntry entry = null;
+	    	List<SecEntry> selected = selectEntries();
+	    	int count = entries.size() + selected.size();
+
+	    	if (_intThreads > 1 && count > 1)
+	    	{
+	    		selected.addAll(0, entries);
+	    		executeParallel(selected, svc);
+	    	}
+	    	else
+	    	{
+		        for (Enumeration<SecEntry> e = entries.elements(); e.hasMoreElements();)
+		        {
+		            entry = e.nextElement();
+		            entry.executeOn(_props, svc, _intEntryMode, _blnSkipEmpty, _digests);
+		        }
+		        for (SecEntry sel : selected)
+		        	sel.executeOn(_props, svc, _intEntryMode, _blnSkipEmpty, _digests);
+	    	}
+	    	return count;
+	    }
+
+	    /**
+	     * Helper method to decrypt every encrypted value with the current encryptor and to encrypt it again with the new one.
+	     * The values are processed in contiguous slices on the worker threads and the results are applied to the properties
+	     * on the calling thread, the plain texts are never kept beyond the evaluation of their value.
+	     * @param svc the current encryptor
+	     * @param newSvc the new encryptor
+	     * @return the number of values encrypted again
+	     * @throws BuildException if a value can not be decrypted
+	     */
+	    private int executeRekey(final StringEncryptor svc, final StringEncryptor newSvc) throws BuildException
+	    {
+	    	int workers = 0;
+	    	int slice = 0;
+	    	final List<String> keys = new ArrayList<String>(_props.stringPropertyNames());
+	    	final String[] values = new String[keys.size()];
+	    	ExecutorService pool = null;
+	    	List<Future<?>> results = new ArrayList<Future<?>>();
+
+	    	workers = Math.max(1, Math.min(_intThreads, keys.size()));
+	    	if (workers == 1)
+	    		rekeySlice(keys, values, 0, keys.size(), svc, newSvc);
+	    	else
+	    	{
+		    	slice = (keys.size() + workers - 1) / workers;
+		    	pool = Executors.newFixedThreadPool(workers);
+		    	try
+		    	{
+		    		for (int start = 0; start < keys.size(); start += slice)
+		    		{
+		    			final int from = start;
+		    			final int to = Math.min(keys.size(), start + slice);
+
+		    			results.add(pool.submit(new Callable<Void>()
+		    			{
+							public Void call() throws Exception
+							{
+								rekeySlice(keys, values, from, to, svc, newSvc);
+								return null;
+							}
+		    			}));
+		    		}
+		    		for (Future<?> result : results)
+		    			result.get();
+		    	}
+		    	catch (InterruptedException ie)
+		    	{
+		    		Thread.currentThread().interrupt();
+		    		throw new BuildException(ie, getLocation());
+		    	}
+		    	catch (ExecutionException ee)
+		    	{
+		    		if (ee.getCause() instanceof BuildException)
+		    			throw (BuildException) ee.getCause();
+		    		throw new BuildException(ee.getCause(), getLocation());
+		    	}
+		    	finally
+		    	{
+		    		pool.shutdownNow();
+		    	}
+	    	}
+
+	    	for (int i = 0; i < keys.size(); i++)
+	    		_props.put(keys.get(i), values[i]);
+	    	log("Re-encrypted " + keys.size() + " value(s) of " + _filProps.getName(), Project.MSG_VERBOSE);
+	    	return keys.size();
+	    }
+
+	    /**
+	     * Helper method to re-encrypt a slice of the values.
+	     * @throws BuildException if a value can not be decrypted
+	     */
+	    private void rekeySlice(List<String> keys, String[] values, int from, int to, StringEncryptor svc,
+	    						StringEncryptor newSvc) throws BuildException
+	    {
+	    	for (int i = from; i < to; i++)
+	    		values[i] = rekeyValue(keys.get(i), _props.getProperty(keys.get(i)), svc, newSvc);
+	    }
+
+	    /**
+	     * Helper method to re-encrypt a single value.
+	     * @throws BuildException if the value can not be decrypted
+	     */
+	    private String rekeyValue(String key, String value, StringEncryptor svc, StringEncryptor newSvc) throws BuildException
+	    {
+	    	try
+	    	{
+	    		return SecEntry.encrypt(SecEntry.decrypt(value, svc), newSvc);
+	    	}
+	    	catch (EncryptionOperationNotPossibleException eonpe)
+	    	{
+	    		throw new BuildException("Unable to decrypt " + key + " of " + _filProps.getAbsolutePath()
+	    									+ ", check the password and the algorithm", getLocation());
+	    	}
+	    }
+
+	    /**
+	     * Helper method to read, evaluate and write the file in overlapping stages. The explicitly declared entries of a key
+	     * are evaluated in declaration order, followed by the entry of the first set matching the key. The file is streamed
+	     * to a temporary file, which replaces the original only if some value has changed.
+	     * @param svc the current encryptor
+	     * @param newSvc the new encryptor in <code>REKEY</code> mode
+	     * @throws BuildException if unable to evaluate an entry, to read or to write the file
+	     */
+	    private void executePipelined(final StringEncryptor svc, final StringEncryptor newSvc) throws BuildException
+	    {
+	    	int changed = 0;
+	    	AtomicFileOutput afo = null;
+	    	PipelinedEditor.ValueTransform transform = null;
+	    	final AtomicInteger evaluated = new AtomicInteger(entries.size());
+	    	final AtomicInteger unchanged = new AtomicInteger();
+	    	final AtomicInteger cryptoOps = new AtomicInteger();
+	    	final Map<String, List<SecEntry>> chains = new LinkedHashMap<String, List<SecEntry>>();
+
+	        if (!_filProps.exists() && _intMode == CryptMode.OPERATION_REKEY)
+	        	throw new BuildException("Property file not found: " + _filProps.getAbsolutePath(), getLocation());
+
+	        log((_filProps.exists() ? "Updating" : "Creating new") + " property file: " + _filProps.getAbsolutePath());
+	        _fileStats.addBytesRead(_filProps.length());
+	    	for (SecEntry entry : entries)
+	    	{
+	    		List<SecEntry> chain = chains.get(entry.getKey());
+	    		if (chain == null)
+	    		{
+	    			chain = new ArrayList<SecEntry>();
+	    			chains.put(entry.getKey(), chain);
+	    		}
+	    		chain.add(entry);
+	    	}
+
+	    	transform = new PipelinedEditor.ValueTransform()
+	    	{
+				public boolean accept(String key)
+				{
+					if (_intEntryMode == CryptMode.OPERATION_REKEY || chains.containsKey(key)) return true;
+
+					for (SecEntrySet set : entrySets)
+					{
+						if (set.matches(key)) return true;
+					}
+					return false;
+				}
+
+				public String transform(String key, String value) throws Exception
+				{
+					String result = value;
+					List<SecEntry> chain = chains.get(key);
+
+					if (_intEntryMode == CryptMode.OPERATION_REKEY)
+					{
+						if (!SecEntry.isEncrypted(value)) return value;
+
+						evaluated.incrementAndGet();
+						cryptoOps.addAndGet(2);
+						return rekeyValue(key, value, svc, newSvc);
+					}
+
+					if (chain != null)
+					{
+						for (SecEntry entry : chain)
+							result = entry.evaluate(result, svc, _intEntryMode, _blnSkipEmpty, null);
+					}
+					// as in the sequential mode, the sets select the keys defined in the file only
+					for (int i = 0; value != null && i < entrySets.size(); i++)
+					{
+						if (entrySets.get(i).matches(key))
+						{
+							evaluated.incrementAndGet();
+							result = entrySets.get(i).toEntry(key).evaluate(result, svc, _intEntryMode, _blnSkipEmpty, null);
+							break;
+						}
+					}
+
+					if (result != null && result.equals(value))
+						unchanged.incrementAndGet();
+					else if (_intEntryMode == CryptMode.OPERATION_ENCRYPT && SecEntry.isEncrypted(result))
+						cryptoOps.incrementAndGet();
+					else if (_intEntryMode == CryptMode.OPERATION_DECRYPT && SecEntry.isEncrypted(value))
+						cryptoOps.incrementAndGet();
+					return result;
+				}
+	    	};
+
+	        try
+	        {
+	        	afo = new AtomicFileOutput(_filProps, _blnSync);
+	        	try
+	        	{
+	        		changed = PipelinedEditor.rewrite(_filProps, afo.getStream(), transform, chains.keySet(), _strComment,
+	        											_header, _intThreads);
+	        		if (changed > 0 || _header != null || !_filProps.exists())
+	        		{
+	        			afo.commit();
+	        			_fileStats.addBytesWritten(_filProps.length());
+	        		}
+	        		else
+	        			log("No changes, property file left as is: " + _filProps.getAbsolutePath(), Project.MSG_VERBOSE);
+	        	}
+	        	finally
+	        	{
+	        		afo.close();
+	        	}
+	        }
+	        catch (BuildException be)
+	        {
+	        	throw be;
+	        }
+	        catch (InterruptedException ie)
+	        {
+	        	Thread.currentThread().interrupt();
+	        	throw new BuildException(ie, getLocation());
+	        }
+	        catch (Exception e)
+	        {
+	        	// reading, evaluating, writing or renaming, the original file is left as is
+	        	throw new BuildException(e, getLocation());
+	        }
+
+	        _fileStats.addEntries(evaluated.get());
+	        _fileStats.addUnchanged(unchanged.get());
+	        _fileStats.addCryptoOps(cryptoOps.get());
+	        if (_intEntryMode == CryptMode.OPERATION_REKEY)
+	        	log("Re-encrypted " + (cryptoOps.get() / 2) + " value(s) of " + _filProps.getName(), Project.MSG_VERBOSE);
+	    }
+
+	    /**
+	     * Helper method to select the keys matched by the entry sets in a single scan of the loaded properties. A key matched
+	     * by more than one set is selected only once.
+	     * @return the entries for the selected keys
+	     * @throws BuildException if one of the patterns is invalid
+	     */
+	    private List<SecEntry> selectEntries() throws BuildException
+	    {
+	    	String key = null;
+	    	List<SecEntry> selected = new ArrayList<SecEntry>();
+
+	    	if (entrySets.isEmpty()) return selected;
+
+	    	for (Object obj : _props.keySet())
+	    	{
+	    		key = (String) obj;
+	    		for (SecEntrySet set : entrySets)
+	    		{
+	    			if (set.matches(key))
+	    			{
+	    				selected.add(set.toEntry(key));
+	    				break;
+	    			}
+	    		}
+	    	}
+	    	log("Selected " + selected.size() + " key(s) by pattern", Project.MSG_VERBOSE);
+	    	return selected;
+	    }
+
+	    /**
+	     * Helper method to evaluate the entries on a pool of worker threads. The entries are grouped by key, each group is
+	     * evaluated in declaration order by a single worker against the value loaded from the file and the results are
+	     * applied to the properties on the calling thread in the order in which the keys first appear, so the outcome is the
+	     * same as that of the sequential execution.
+	     * @param all the entries to be evaluated
+	     * @param svc the encryptor to use
+	     * @throws BuildException if unable to perform the specified operation (+,-,=,del)
+	     */
+	    private void executeParallel(List<SecEntry> all, final StringEncryptor svc) throws BuildException
+	    {
+	    	final DigestStore digests = _digests;
+	    	String strValue = null;
+	    	ExecutorService pool = null;
+	    	Map<String, List<SecEntry>> chains = null;
+	    	List<String> keys = null;
+	    	List<Future<String>> results = null;
+
+	    	chains = new LinkedHashMap<String, List<SecEntry>>();
+	    	for (SecEntry entry : all)
+	    	{
+	    		List<SecEntry> chain = chains.get(entry.getKey());
+	    		if (chain == null)
+	    		{
+	    			chain = new ArrayList<SecEntry>();
+	    			chains.put(entry.getKey(), chain);
+	    		}
+	    		chain.add(entry);
+	    	}
+
+	    	keys = new ArrayList<String>(chains.size());
+	    	results = new ArrayList<Future<String>>(chains.size());
+	    	pool = Executors.newFixedThreadPool(Math.min(_intThreads, chains.size()));
+	    	try
+	    	{
+		    	for (Map.Entry<String, List<SecEntry>> chain : chains.entrySet())
+		    	{
+		    		final String initial = (chain.getKey() == null) ? null : _props.getProperty(chain.getKey());
+		    		final List<SecEntry> chainEntries = chain.getValue();
+
+		    		keys.add(chain.getKey());
+		    		results.add(pool.submit(new Callable<String>()
+		    		{
+						public String call() throws Exception
+						{
+							String value = initial;
+							for (SecEntry entry : chainEntries)
+								value = entry.evaluate(value, svc, _intEntryMode, _blnSkipEmpty, digests);
+							return value;
+						}
+		    		}));
+		    	}
+
+		    	for (int i = 0; i < results.size(); i++)
+		    	{
+		    		strValue = results.get(i).get();
+		    		if (strValue == null)
+		    			_props.remove(keys.get(i));
+		    		else
+		    			_props.put(keys.get(i), strValue);
+		    	}
+	    	}
+	    	catch (InterruptedException ie)
+	    	{
+	    		Thread.currentThread().interrupt();
+	    		throw new BuildException(ie, getLocation());
+	    	}
+	    	catch (ExecutionException ee)
+	    	{
+	    		if (ee.getCause() instanceof BuildException)
+	    			throw (BuildException) ee.getCause();
+	    		throw new BuildException(ee.getCause(), getLocation());
+	    	}
+	    	finally
+	    	{
+	    		pool.shutdownNow();
+	    	}
+	    }
+
+	    /**
+	     * Helper method to write the properties file. Only the lines defining the keys whose values have changed are
+	     * rewritten, the rest of the file is copied through as is. The file is streamed to a temporary file in the same
+	     * directory, which then atomically replaces the original, so a failure never leaves a missing or truncated file behind.
+	     * @throws BuildException if unable to write the file
+	     */
+	    private void writeFile() throws BuildException
+	    {
+	    	String strValue = null;
+	    	AtomicFileOutput afo = null;
+	    	Map<String, String> changes = new LinkedHashMap<String, String>();
+
+	    	// every value of a merged file is written, in the order of the sources
+	    	for (Map.Entry<String, String> original : _original.entrySet())
+	    	{
+	    		strValue = _props.getProperty(original.getKey());
+	    		if (_sources != null || !original.getValue().equals(strValue))
+	    			changes.put(original.getKey(), strValue);
+	    	}
+	    	for (SecEntry entry : entries)
+	    	{
+	    		strValue = _props.getProperty(entry.getKey());
+	    		if (strValue != null && !_original.containsKey(entry.getKey()))
+	    			changes.put(entry.getKey(), strValue);
+	    	}
+
+	    	if (_digests != null)
+	    	{
+	    		for (Map.Entry<String, String> change : changes.entrySet())
+	    		{
+	    			if (change.getValue() == null) _digests.remove(change.getKey());
+	    		}
+	    	}
+
+	    	if (changes.isEmpty() && _header == null && _filProps.exists() && !isResealed() && _sources == null)
+	    	{
+	    		log("No changes, property file left as is: " + _filProps.getAbsolutePath(), Project.MSG_VERBOSE);
+	    		return;
+	    	}
+
+	        try
+	        {
+	        	if (_sources != null && _filProps.getParentFile() != null)
+	        		_filProps.getParentFile().mkdirs();
+	        	afo = new AtomicFileOutput(_filProps, _blnSync);
+	        	try
+	        	{
+	        		if (_blnStore)
+	        			writeStore(afo, changes);
+	        		else if (_blnSealed)
+	        			writeSealed(afo, changes);
+	        		else if (_sources != null)
+	        			PropertiesEditor.rewrite((InputStream) null, afo.getStream(), changes, _strComment, _header);
+	        		else
+	        			PropertiesEditor.rewrite(_filProps, afo.getStream(), changes, _strComment, _header);
+	        		afo.commit();
+	        		_fileStats.addBytesWritten(_filProps.length());
+	        	}
+	        	finally
+	        	{
+	        		afo.close();
+	        	}
+	        }
+	        catch (IOException x)
+	        {
+	        	// opening, writing, or renaming, the original file is left as is
+	            throw new BuildException(x, getLocation());
+	        }
+	    }
+
+	    /**
+	     * Helper method to write the whole store with the changes applied, the parameters are always recorded in a store.
+	     * @param afo the output replacing the store
+	     * @param changes the changed values by key, <code>null</code> for the removed keys
+	     * @throws IOException if unable to write the store
+	     */
+	    private void writeStore(AtomicFileOutput afo, Map<String, String> changes) throws IOException
+	    {
+	    	Map<String, String> header = new LinkedHashMap<String, String>((_header != null) ? _header : _recorded);
+
+	    	if (!header.containsKey("algorithm"))
+	    		header.put("algorithm", CryptAlgorithm.toValue((_intMode == CryptMode.OPERATION_REKEY) ? _intNewAlgo : _intAlgo));
+	    	for (Map.Entry<String, String> change : changes.entrySet())
+	    	{
+	    		if (change.getValue() == null)
+	    			_storeValues.remove(change.getKey());
+	    		else
+	    			_storeValues.put(change.getKey(), change.getValue());
+	    	}
+	    	BinaryStore.write(afo.getStream(), header, _storeValues);
+	    }
+
+	    /**
+	     * Helper method to write the whole sealed file with the changes applied, streaming the content of the file through the
+	     * decryption and the encryption. The file is written plain in <code>DECRYPT</code> mode.
+	     * @param afo the output replacing the file
+	     * @param changes the changed values by key, <code>null</code> for the removed keys
+	     * @throws IOException if unable to read or to write the file, or if the file has been tampered with
+	     */
+	    private void writeSealed(AtomicFileOutput afo, Map<String, String> changes) throws IOException
+	    {
+	    	InputStream source = null;
+	    	SealedFile.SealingOutputStream out = null;
+
+	    	if (_blnWasSealed)
+	    		source = openSealed(_filProps);
+	    	else if (_filProps.exists())
+	    		source = new FileInputStream(_filProps);
+
+	    	if (_intMode == CryptMode.OPERATION_DECRYPT)
+	    	{
+	    		PropertiesEditor.rewrite(source, afo.getStream(), changes, _strComment, null);
+	    		return;
+	    	}
+
+	    	out = SealedFile.seal(afo.getStream(), (_intMode == CryptMode.OPERATION_REKEY) ? _strNewPassword : _strPassword,
+	    							_intSealIter);
+	    	PropertiesEditor.rewrite(source, out, changes, _strComment, null);
+	    	out.finish();
+	    	_fileStats.addCryptoOps(1);
+	    	log("Sealed " + _filProps.getName() + " with " + _intSealIter + " iterations", Project.MSG_VERBOSE);
+	    }
+
+	    /**
+	     * Helper method to open the sealed file for reading, each pass over the file counts as a decryption.
+	     * @return the decrypted content of the file
+	     * @throws IOException if unable to read the file
+	     * @throws BuildException if the password is wrong
+	     */
+	    private InputStream openSealed(File file) throws IOException
+	    {
+	    	InputStream source = null;
+
+	    	try
+	    	{
+	    		source = SealedFile.open(file, _strPassword);
+	    	}
+	    	catch (EncryptionOperationNotPossibleException eonpe)
+	    	{
+	    		throw new BuildException("Unable to decrypt " + file.getAbsolutePath() + ", check the password",
+	    									getLocation());
+	    	}
+	    	_fileStats.addCryptoOps(1);
+	    	return source;
+	    }
+
+	    /**
+	     * Helper method to load the digests of the incremental mode.
+	     * @throws BuildException if unable to read the digest file
+	     */
+	    private void loadDigests() throws BuildException
+	    {
+	    	if (_filDigests == null)
+	    		_filDigests = new File(_filProps.getPath() + ".digest");
+
+	    	_digests = new DigestStore(CryptAlgorithm.toValue(_intAlgo), _intIter, _strSaltGen, _strPassword);
+	    	try
+	    	{
+	    		_digests.load(_filDigests);
+	    	}
+	    	catch (IOException ioe)
+	    	{
+	    		throw new BuildException(ioe, getLocation());
+	    	}
+	    }
+
+	    /**
+	     * Helper method to report the outcome of the incremental mode and to save the digests if they have changed.
+	     * @throws BuildException if unable to write the digest file
+	     */
+	    private void storeDigests() throws BuildException
+	    {
+	    	log("Incremental: " + _digests.getSkipped() + " key(s) unchanged, " + _digests.getEncrypted()
+	    		+ " key(s) re-encrypted (" + _filProps.getName() + ")");
+	    	if (!_digests.isModified()) return;
+
+	    	try
+	    	{
+	    		_digests.store(_filDigests, _blnSync);
+	    	}
+	    	catch (IOException ioe)
+	    	{
+	    		throw new BuildException(ioe, getLocation());
+	    	}
+	    }
+
+	    /**
+	     * Helper method to load the properties file. Only the values of the keys referred by the entries or selected by the
+	     * entry sets are loaded, in <code>REKEY</code> mode those of the encrypted values. Large files are memory mapped and
+	     * indexed, so that only the required values are decoded. A store is read as a whole, as it is rewritten as a whole. A
+	     * sealed file is decrypted as it is scanned.
+	     * @throws BuildException if unable to read the properties file.
+	     */
+	    private void readFile() throws BuildException
+	    {
+	    	String strValue = null;
+	    	MappedProperties mapped = null;
+	    	PropertiesEditor.KeyFilter filter = null;
+	    	final Set<String> keys = new HashSet<String>();
+
+	    	_props = new Properties();
+	    	_original = new HashMap<String, String>();
+	    	_storeValues = new LinkedHashMap<String, String>();
+	    	if (_sources != null)
+	    	{
+	    		mergeSources();
+	    		return;
+	    	}
+	        if (!_filProps.exists() && _intMode == CryptMode.OPERATION_REKEY)
+	        	throw new BuildException("Property file not found: " + _filProps.getAbsolutePath(), getLocation());
+	        if (!_filProps.exists())
+	        {
+	        	log("Creating new property file: " + _filProps.getAbsolutePath());
+	        	return;
+	        }
+
+	        log("Updating property file: " + _filProps.getAbsolutePath());
+	        _fileStats.addBytesRead(_filProps.length());
+	        for (SecEntry entry : entries)
+	        	keys.add(entry.getKey());
+
+	        filter = new PropertiesEditor.KeyFilter()
+	        {
+				public boolean accept(String key)
+				{
+					if (_intEntryMode == CryptMode.OPERATION_REKEY || keys.contains(key)) return true;
+
+					for (SecEntrySet set : entrySets)
+					{
+						if (set.matches(key)) return true;
+					}
+					return false;
+				}
+	        };
+
+	        try
+	        {
+	        	// a mapped file can not be replaced on windows until the mapping has been garbage collected
+	        	if (_blnStore)
+	        		readStore(filter);
+	        	else if (_blnWasSealed)
+	        	{
+	        		// a file rewritten as is is verified while it is streamed again, before it is replaced
+	        		if (!keys.isEmpty() || !entrySets.isEmpty() || !isResealed())
+	        			PropertiesEditor.scan(openSealed(_filProps), filter, _props);
+	        	}
+	        	else if (_filProps.length() < MAP_THRESHOLD || Os.isFamily(Os.FAMILY_WINDOWS))
+	        		PropertiesEditor.scan(_filProps, filter, _props);
+	        	else
+	        	{
+	        		mapped = MappedProperties.load(_filProps);
+	        		log("Indexed " + mapped.size() + " key(s) of " + _filProps.getName(), Project.MSG_VERBOSE);
+	        		if (!entrySets.isEmpty() || _intEntryMode == CryptMode.OPERATION_REKEY)
+	        			mapped.select(filter, _props);
+	        		else
+	        		{
+	        			for (String key : keys)
+	        			{
+	        				strValue = mapped.getProperty(key);
+	        				if (strValue != null) _props.put(key, strValue);
+	        			}
+	        		}
+	        	}
+	        }
+	        catch (IOException ioe)
+	        {
+	            throw new BuildException(ioe.toString());
+	        }
+
+	        for (String key : _props.stringPropertyNames())
+	        {
+	        	strValue = _props.getProperty(key);
+	        	if (_intEntryMode == CryptMode.OPERATION_REKEY && !SecEntry.isEncrypted(strValue))
+	        		_props.remove(key);
+	        	else
+	        		_original.put(key, strValue);
+	        }
+	    }
+
+	    /**
+	     * Helper method to merge the source files in a single pass, the values of a file overriding those of the files before
+	     * it. The keys keep the position of their first definition, the merged values are all written to the property file.
+	     * Sealed sources are unsealed with the password.
+	     * @throws BuildException if a source does not exist or can not be read
+	     */
+	    private void mergeSources() throws BuildException
+	    {
+	    	Map<String, String> merged = new LinkedHashMap<String, String>();
+	    	PropertiesEditor.KeyFilter all = new PropertiesEditor.KeyFilter()
+	    	{
+				public boolean accept(String key)
+				{
+					return true;
+				}
+	    	};
+
+	    	log("Merging " + _sources.size() + " file(s) into " + _filProps.getAbsolutePath());
+	    	try
+	    	{
+	    		for (File source : _sources)
+	    		{
+	    			if (!source.isFile())
+	    				throw new BuildException("Property file not found: " + source.getAbsolutePath(), getLocation());
+
+	    			_fileStats.addBytesRead(source.length());
+	    			if (SealedFile.isSealed(source))
+	    				PropertiesEditor.scan(openSealed(source), all, merged, null);
+	    			else
+	    				PropertiesEditor.scan(new FileInputStream(source), all, merged, null);
+	    		}
+	    	}
+	    	catch (IOException ioe)
+	    	{
+	    		throw new BuildException(ioe.toString());
+	    	}
+
+	    	_props.putAll(merged);
+	    	_original = merged;
+	    	log("Merged " + merged.size() + " key(s) into " + _filProps.getName(), Project.MSG_VERBOSE);
+	    }
+
+	    /**
+	     * Helper method to read all the values of a store, those of the keys accepted by the filter are loaded as well.
+	     * @param filter the filter selecting the keys to be loaded
+	     * @throws IOException if unable to read the store
+	     */
+	    private void readStore(PropertiesEditor.KeyFilter filter) throws IOException
+	    {
+	    	String key = null;
+	    	String value = null;
+	    	BinaryStore store = BinaryStore.open(_filProps, !Os.isFamily(Os.FAMILY_WINDOWS));
+
+	    	for (int i = 0; i < store.size(); i++)
+	    	{
+	    		key = store.getKey(i);
+	    		value = store.getValue(i);
+	    		_storeValues.put(key, value);
+	    		if (filter.accept(key)) _props.put(key, value);
+	    	}
+	    	log("Read " + store.size() + " key(s) of the store " + _filProps.getName(), Project.MSG_VERBOSE);
+	    }
     }
 }
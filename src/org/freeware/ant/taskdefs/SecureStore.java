@@ -0,0 +1,181 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecureStore.java
+ * CREATED  : 19-Oct-2026 4:31:08 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.EnumeratedAttribute;
+
+/**
+ * <p>A task converting a property file written by <code>secpropfile</code> to an indexed binary store, read by
+ * {@link EncryptedStore}, and back.</p>
+ * <h3>Sample Usage</h3>
+ * <pre style="padding:2px;margin:0px;border:1px dotted #0A246A;background-color:white;font-family:Consolas,monospace;">
+ * &lt;secstore file="${basedir}/config/secprops.properties" store="${dist}/secprops.sst"/&gt;
+ * &lt;secstore file="${basedir}/config/secprops.properties" store="${dist}/secprops.sst" to="properties"/&gt;</pre>
+ * The encrypted values are copied as they are, no password is needed and nothing is decrypted. The encryption parameters
+ * recorded in the property file are recorded in the store, the algorithm defaulting to
+ * <code>PBKDF2WITHHMACSHA256ANDAES_GCM</code> for files with <code>ENC2(...)</code> values and to
+ * <code>PBEWITHMD5ANDDES</code> otherwise. The comments of a property file are not kept in the store. Converted back, the
+ * values of the store are set in the property file, which is created if need be, its other keys and its comments are kept.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SecureStore extends Task
+{
+	private File _filProps;
+	private File _filStore;
+	private boolean _blnToStore = true;
+	private boolean _blnSync = true;
+
+	/**
+	 * Enumerated attribute with the values "store" and "properties".
+	 */
+	public static class Target extends EnumeratedAttribute
+	{
+	    /** {@inheritDoc}. */
+	    public String[] getValues()
+	    {
+	        return new String[] {"store", "properties"};
+	    }
+	}
+
+	/**
+	 * The property file, required.
+	 * @param file the property file
+	 */
+	public void setFile(File file)
+	{
+		_filProps = file;
+	}
+
+	/**
+	 * The binary store, required.
+	 * @param store the store
+	 */
+	public void setStore(File store)
+	{
+		_filStore = store;
+	}
+
+	/**
+	 * The format converted to, <code>store</code> (default) to convert the property file to a store or
+	 * <code>properties</code> to convert the store to a property file.
+	 * @param target the format converted to
+	 */
+	public void setTo(Target target)
+	{
+		_blnToStore = "store".equals(target.getValue());
+	}
+
+	/**
+	 * Whether the written file is flushed to the storage device before it replaces the original, default is true.
+	 * @param sync the flag to flush the written file
+	 */
+	public void setFsync(boolean sync)
+	{
+		_blnSync = sync;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.tools.ant.Task#execute()
+	 */
+	public void execute() throws BuildException
+	{
+		File source = _blnToStore ? _filProps : _filStore;
+		File target = _blnToStore ? _filStore : _filProps;
+		AtomicFileOutput afo = null;
+		int count = 0;
+
+		if (_filProps == null || _filStore == null)
+			throw new BuildException("file and store must be supplied", getLocation());
+		if (!source.exists())
+			throw new BuildException("File not found: " + source.getAbsolutePath(), getLocation());
+
+		try
+		{
+			afo = new AtomicFileOutput(target, _blnSync);
+			try
+			{
+				count = _blnToStore ? toStore(afo) : toProperties(afo);
+				afo.commit();
+			}
+			finally
+			{
+				afo.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			throw new BuildException(ioe, getLocation());
+		}
+		log("Converted " + count + " key(s) of " + source.getAbsolutePath() + " to " + target.getAbsolutePath());
+	}
+
+	/**
+	 * Helper method to write the store from the property file.
+	 * @param afo the output replacing the store
+	 * @return the number of keys converted
+	 * @throws IOException if unable to read the property file or to write the store
+	 */
+	private int toStore(AtomicFileOutput afo) throws IOException
+	{
+		String value = null;
+		Properties props = new Properties();
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		Map<String, String> header = PropertiesEditor.readHeader(_filProps);
+
+		PropertiesEditor.scan(_filProps, new PropertiesEditor.KeyFilter()
+		{
+			public boolean accept(String key)
+			{
+				return true;
+			}
+		}, props);
+
+		for (String key : props.stringPropertyNames())
+		{
+			value = props.getProperty(key);
+			// without a header the envelope tells the algorithm
+			if (!header.containsKey("algorithm") && Envelope.isEncrypted(value) && Envelope.isEnc2(value))
+				header.put("algorithm", EncryptorFactory.AES_GCM);
+			values.put(key, value);
+		}
+		if (!header.containsKey("algorithm"))
+			header.put("algorithm", EncryptorFactory.DEFAULT_ALGORITHM);
+
+		BinaryStore.write(afo.getStream(), header, values);
+		return values.size();
+	}
+
+	/**
+	 * Helper method to set the values of the store in the property file.
+	 * @param afo the output replacing the property file
+	 * @return the number of keys converted
+	 * @throws IOException if unable to read the store or to write the property file
+	 */
+	private int toProperties(AtomicFileOutput afo) throws IOException
+	{
+		BinaryStore store = BinaryStore.open(_filStore, true);
+		Map<String, String> values = new LinkedHashMap<String, String>(store.size() * 4 / 3 + 1);
+
+		for (int i = 0; i < store.size(); i++)
+			values.put(store.getKey(i), store.getValue(i));
+		log("Read " + store.size() + " key(s) of the store " + _filStore.getName(), Project.MSG_VERBOSE);
+
+		PropertiesEditor.rewrite(_filProps, afo.getStream(), values, null, store.getHeader());
+		return values.size();
+	}
+}
@@ -7,9 +7,8 @@
  *--------------------------------------------------------------------------------------------------------------------------------*/
 package org.freeware.ant.taskdefs;
 
+import java.time.temporal.ChronoUnit;
 import java.util.Calendar;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.apache.tools.ant.types.EnumeratedAttribute;
 
@@ -31,19 +30,15 @@ public class Unit extends EnumeratedAttribute
 
     private static final String[] UNITS = {MILLISECOND, SECOND, MINUTE, HOUR, DAY, WEEK, MONTH, YEAR };
 
-    private Map<String, Integer> calendarFields = new HashMap<String, Integer>();
+    // indexed like UNITS
+    private static final int[] CALENDAR_FIELDS = {Calendar.MILLISECOND, Calendar.SECOND, Calendar.MINUTE,
+        Calendar.HOUR_OF_DAY, Calendar.DATE, Calendar.WEEK_OF_YEAR, Calendar.MONTH, Calendar.YEAR };
+    private static final ChronoUnit[] CHRONO_UNITS = {ChronoUnit.MILLIS, ChronoUnit.SECONDS, ChronoUnit.MINUTES,
+        ChronoUnit.HOURS, ChronoUnit.DAYS, ChronoUnit.WEEKS, ChronoUnit.MONTHS, ChronoUnit.YEARS };
 
     /** no arg constructor */
     public Unit()
     {
-        calendarFields.put(MILLISECOND, new Integer(Calendar.MILLISECOND));
-        calendarFields.put(SECOND, new Integer(Calendar.SECOND));
-        calendarFields.put(MINUTE, new Integer(Calendar.MINUTE));
-        calendarFields.put(HOUR, new Integer(Calendar.HOUR_OF_DAY));
-        calendarFields.put(DAY, new Integer(Calendar.DATE));
-        calendarFields.put(WEEK, new Integer(Calendar.WEEK_OF_YEAR));
-        calendarFields.put(MONTH, new Integer(Calendar.MONTH));
-        calendarFields.put(YEAR, new Integer(Calendar.YEAR));
     }
 
     /**
@@ -52,9 +47,16 @@ public class Unit extends EnumeratedAttribute
      */
     public int getCalendarField()
     {
-        String key = getValue().toLowerCase();
-        Integer i = (Integer) calendarFields.get(key);
-        return i.intValue();
+        return CALENDAR_FIELDS[getIndex()];
+    }
+
+    /**
+     * Convert the value to the unit of the <code>java.time</code> date arithmetic.
+     * @return the chrono unit.
+     */
+    public ChronoUnit getChronoUnit()
+    {
+        return CHRONO_UNITS[getIndex()];
     }
 
     /** {@inheritDoc}. */
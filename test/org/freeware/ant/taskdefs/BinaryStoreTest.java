@@ -0,0 +1,248 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : BinaryStoreTest.java
+ * CREATED  : 19-Oct-2026 11:04:52 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the reader of the indexed binary stores, the <code>SECS</code> format of {@link BinaryStore}.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class BinaryStoreTest
+{
+	private static final int ITERATIONS = 1000;
+
+	// magic, version, number of parameters and number of keys of a store without parameters
+	private static final int INDEX = 12;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		Map<String, String> header = new LinkedHashMap<String, String>();
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		String secret = encrypt("secret", "password");
+		File file = null;
+		BinaryStore store = null;
+
+		header.put("algorithm", EncryptorFactory.AES_GCM);
+		header.put("iterations", String.valueOf(ITERATIONS));
+		values.put("db.user", "scott");
+		values.put("db.password", secret);
+		values.put("\u00e9t\u00e9", "\u00e9t\u00e9");
+		values.put("empty", "");
+		file = write("round.store", header, values);
+
+		for (boolean map : new boolean[] {true, false})
+		{
+			store = BinaryStore.open(file, map);
+			assertEquals(header, store.getHeader());
+			assertEquals(values.size(), store.size());
+			for (Map.Entry<String, String> entry : values.entrySet())
+			{
+				assertEquals(entry.getKey(), store.getKey(store.find(entry.getKey())));
+				assertEquals(entry.getValue(), store.getValue(store.find(entry.getKey())));
+			}
+			assertEquals(-1, store.find("db"));
+			assertEquals(-1, store.find("db.passwords"));
+		}
+		assertEquals(header, BinaryStore.readHeader(file));
+		assertEquals("secret", open(file, "password").getProperty("db.password"));
+		assertEquals("scott", open(file, "password").getProperty("db.user"));
+	}
+
+	@Test
+	public void testWrongPassword() throws IOException
+	{
+		Map<String, String> header = new LinkedHashMap<String, String>();
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		EncryptedStore store = null;
+
+		header.put("algorithm", EncryptorFactory.AES_GCM);
+		header.put("iterations", String.valueOf(ITERATIONS));
+		values.put("db.user", "scott");
+		values.put("db.password", encrypt("secret", "password"));
+		store = open(write("wrong.store", header, values), "wrong");
+
+		assertEquals("scott", store.getProperty("db.user"));
+		try
+		{
+			store.getProperty("db.password");
+			fail("Decrypted with the wrong password");
+		}
+		catch (EncryptionOperationNotPossibleException eonpe)
+		{
+			assertTrue(eonpe.getMessage(), eonpe.getMessage().startsWith("Unable to decrypt db.password"));
+		}
+	}
+
+	@Test
+	public void testKeyOffsetOutOfBounds() throws IOException
+	{
+		File file = write("bounds.store", new LinkedHashMap<String, String>(), threeValues());
+
+		corrupt(file, INDEX + 8, Integer.MAX_VALUE - 8);
+		assertInvalid(file);
+	}
+
+	@Test
+	public void testKeyOffsetsOutOfOrder() throws IOException
+	{
+		File file = write("order.store", new LinkedHashMap<String, String>(), threeValues());
+
+		// the second key starting before the first one
+		corrupt(file, INDEX + 8, INDEX + 4 * 8 - 1);
+		assertInvalid(file);
+	}
+
+	@Test
+	public void testValueOffsetOutOfBounds() throws IOException
+	{
+		File file = write("value.store", new LinkedHashMap<String, String>(), threeValues());
+
+		corrupt(file, INDEX + 3 * 8 + 4, (int) file.length() + 1);
+		assertInvalid(file);
+	}
+
+	@Test
+	public void testEmptyValue() throws IOException
+	{
+		File file = write("short.store", new LinkedHashMap<String, String>(), threeValues());
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		// the second value starting where the first one does, leaving the first one without its type byte
+		corrupt(file, INDEX + 8 + 4, ByteBuffer.wrap(bytes).getInt(INDEX + 4));
+		assertInvalid(file);
+	}
+
+	@Test
+	public void testCorruptPartLength() throws IOException
+	{
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		File file = null;
+
+		values.put("k", encrypt("secret", "password"));
+		file = write("part.store", new LinkedHashMap<String, String>(), values);
+
+		// the length of the salt, after the index of two slots, the key, the type and the number of parts
+		corrupt(file, INDEX + 2 * 8 + 1 + 2, -1);
+		try
+		{
+			open(file, "password").getProperty("k");
+			fail("Read the corrupted value");
+		}
+		catch (UncheckedIOException uioe)
+		{
+			assertTrue(uioe.getMessage(), uioe.getMessage().contains("Corrupt value of the key k"));
+		}
+	}
+
+	@Test
+	public void testEmptyStore() throws IOException
+	{
+		File file = write("empty.store", new LinkedHashMap<String, String>(), new LinkedHashMap<String, String>());
+		BinaryStore store = BinaryStore.open(file, true);
+
+		assertEquals(0, store.size());
+		assertEquals(-1, store.find("db.user"));
+		assertEquals(0, open(file, "password").stringPropertyNames().size());
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException
+	{
+		File file = folder.newFile("zero.store");
+
+		assertInvalid(file);
+		try
+		{
+			BinaryStore.readHeader(file);
+			fail("Read the header of an empty file");
+		}
+		catch (IOException ioe)
+		{
+			assertTrue(ioe.getMessage(), ioe.getMessage().startsWith("Not a valid store"));
+		}
+	}
+
+	private void assertInvalid(File file)
+	{
+		for (boolean map : new boolean[] {true, false})
+		{
+			try
+			{
+				BinaryStore.open(file, map);
+				fail("Opened the invalid store " + file.getName());
+			}
+			catch (IOException ioe)
+			{
+				assertTrue(ioe.getMessage(), ioe.getMessage().startsWith("Not a valid store"));
+			}
+		}
+	}
+
+	private File write(String name, Map<String, String> header, Map<String, String> values) throws IOException
+	{
+		File file = folder.newFile(name);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		BinaryStore.write(out, header, values);
+		Files.write(file.toPath(), out.toByteArray());
+		return file;
+	}
+
+	private static void corrupt(File file, int offset, int value) throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		ByteBuffer.wrap(bytes).putInt(offset, value);
+		Files.write(file.toPath(), bytes);
+	}
+
+	private static EncryptedStore open(File file, String password) throws IOException
+	{
+		EncryptedStore store = new EncryptedStore(password);
+
+		store.open(file);
+		return store;
+	}
+
+	private static Map<String, String> threeValues()
+	{
+		Map<String, String> values = new LinkedHashMap<String, String>();
+
+		values.put("a", "one");
+		values.put("b", "two");
+		values.put("c", "three");
+		return values;
+	}
+
+	private static String encrypt(String value, String password)
+	{
+		return new AesGcmStringEncryptor(password, ITERATIONS, null).encryptEnvelope(value);
+	}
+}
@@ -0,0 +1,222 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : PipelinedEditorTest.java
+ * CREATED  : 19-Oct-2026 12:52:08 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that {@link PipelinedEditor} writes the same output as {@link PropertiesEditor} for the same changes.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class PipelinedEditorTest
+{
+	private static final int[] THREADS = {1, 4};
+	private static final List<String> APPENDED = Arrays.asList("new.one", "new.two", "s.0");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSameOutputAsEditor() throws Exception
+	{
+		StringBuilder sb = new StringBuilder("# generated\r\n\r\n");
+
+		// several chunks of lines, with continuations, CRLF terminators, removed keys and an unterminated last line
+		for (int i = 0; i < 3000; i++)
+		{
+			if (i % 7 == 0)
+				sb.append("s.").append(i).append(" = secret \\\n    ").append(i).append('\n');
+			else if (i % 11 == 0)
+				sb.append("r.").append(i).append("=removed\r\n");
+			else if (i % 13 == 0)
+				sb.append("! comment ").append(i).append('\n');
+			else
+				sb.append("k.").append(i).append(':').append("plain ").append(i).append('\n');
+		}
+		sb.append("s.last=dangling\\");
+
+		assertSameOutput(write("many.properties", sb.toString()), new Transform(null));
+	}
+
+	@Test
+	public void testUnterminatedLastLine() throws Exception
+	{
+		assertSameOutput(write("unterminated.properties", "k.1=one\ns.2=two"), new Transform(null));
+		assertSameOutput(write("plain.properties", "k.1=one\nk.2=two"), new Transform(null));
+	}
+
+	@Test
+	public void testDuplicateUnchangedKeys() throws Exception
+	{
+		assertSameOutput(write("duplicate.properties", "k.1=one\ns.2=two\nk.1=three\n"), new Transform(null));
+	}
+
+	@Test
+	public void testDuplicateChangedKeysRejected() throws Exception
+	{
+		String[] texts = {"s.1=one\nk.2=two\ns.1=three\n", "s.1=ONE\nk.2=two\ns.1=three\n"};
+		String expected = PropertiesEditor.redefined("s.1").getMessage();
+
+		// changed in both its definitions, then in its last one only
+		for (int i = 0; i < texts.length; i++)
+		{
+			File file = write("changed" + i + ".properties", texts[i]);
+
+			try
+			{
+				rewrite(file, new Transform(null));
+				fail("Changed a key defined twice");
+			}
+			catch (IOException ioe)
+			{
+				assertEquals(expected, ioe.getMessage());
+			}
+			for (int threads : THREADS)
+			{
+				try
+				{
+					pipeline(file, new Transform(null), threads);
+					fail("Changed a key defined twice");
+				}
+				catch (IOException ioe)
+				{
+					assertEquals(expected, ioe.getMessage());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFailingTransform() throws Exception
+	{
+		StringBuilder sb = new StringBuilder();
+		IllegalStateException failure = new IllegalStateException("failed");
+
+		for (int i = 0; i < 2000; i++)
+			sb.append("s.").append(i).append("=value ").append(i).append('\n');
+
+		for (int threads : THREADS)
+		{
+			try
+			{
+				pipeline(write("failing" + threads + ".properties", sb.toString()), new Transform(failure), threads);
+				fail("The failure of the transform was not reported");
+			}
+			catch (IllegalStateException ise)
+			{
+				assertSame(failure, ise);
+			}
+		}
+	}
+
+	private void assertSameOutput(File file, Transform transform) throws Exception
+	{
+		String expected = rewrite(file, transform);
+
+		for (int threads : THREADS)
+			assertEquals("threads=" + threads, expected, pipeline(file, transform, threads));
+	}
+
+	/**
+	 * Helper method to rewrite a file through the editor, the changes being those of the transform applied to the values
+	 * in effect.
+	 */
+	private static String rewrite(File file, Transform transform) throws Exception
+	{
+		String value = null;
+		Properties props = new Properties();
+		Map<String, String> changes = new LinkedHashMap<String, String>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = Files.newInputStream(file.toPath());
+
+		try
+		{
+			props.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		for (String key : props.stringPropertyNames())
+		{
+			if (!transform.accept(key)) continue;
+
+			value = transform.transform(key, props.getProperty(key));
+			if (!props.getProperty(key).equals(value)) changes.put(key, value);
+		}
+		for (String key : APPENDED)
+		{
+			if (!props.containsKey(key) && transform.accept(key)) changes.put(key, transform.transform(key, null));
+		}
+
+		PropertiesEditor.rewrite(file, out, changes, null, null);
+		return out.toString(PropertiesEditor.ENCODING);
+	}
+
+	private static String pipeline(File file, Transform transform, int threads) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		PipelinedEditor.rewrite(file, out, transform, APPENDED, null, null, threads);
+		return out.toString(PropertiesEditor.ENCODING);
+	}
+
+	private File write(String name, String content) throws IOException
+	{
+		File file = folder.newFile(name);
+
+		Files.write(file.toPath(), content.getBytes(PropertiesEditor.ENCODING));
+		return file;
+	}
+
+	/**
+	 * Upper cases the values of the <code>s.</code> keys, removes the <code>r.</code> keys and adds the <code>new.</code>
+	 * keys, or fails with the supplied exception.
+	 */
+	private static final class Transform implements PipelinedEditor.ValueTransform
+	{
+		private final RuntimeException _failure;
+
+		Transform(RuntimeException failure)
+		{
+			_failure = failure;
+		}
+
+		public boolean accept(String key)
+		{
+			return key.startsWith("s.") || key.startsWith("r.") || key.startsWith("new.");
+		}
+
+		public String transform(String key, String value)
+		{
+			if (_failure != null && key.equals("s.1500")) throw _failure;
+			if (key.startsWith("r.")) return null;
+			if (value == null) return key.startsWith("new.") ? "added " + key : null;
+			return value.toUpperCase();
+		}
+	}
+}
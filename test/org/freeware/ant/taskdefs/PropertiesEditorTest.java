@@ -0,0 +1,177 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : PropertiesEditorTest.java
+ * CREATED  : 19-Oct-2026 12:18:45 pm
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * Tests of the round trip of a property file through {@link PropertiesEditor}, only the lines of the changed keys are to
+ * differ from the source.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class PropertiesEditorTest
+{
+	private static final String LS = PropertiesEditor.LINE_SEPARATOR;
+
+	@Test
+	public void testCommentsAndOrderKept() throws IOException
+	{
+		String source = "# a comment\n! another comment\n\nz=last\n  a = first\nm:middle\n";
+
+		assertEquals("# a comment\n! another comment\n\nz=last\na=changed\nm:middle\n",
+						rewrite(source, changes("a", "changed")));
+		assertEquals(source, rewrite(source, new LinkedHashMap<String, String>()));
+	}
+
+	@Test
+	public void testContinuationLines() throws IOException
+	{
+		String source = "a=one \\\n    two\nb=three\\\\\nc=four\n";
+
+		assertEquals("a=changed\nb=three\\\\\nc=four\n", rewrite(source, changes("a", "changed")));
+		assertEquals("a=one \\\n    two\nb=changed\nc=four\n", rewrite(source, changes("b", "changed")));
+		assertEquals("b=three\\\\\nc=four\n", rewrite(source, changes("a", null)));
+		assertEquals("one two", load(source).getProperty("a"));
+	}
+
+	@Test
+	public void testCrLfTerminators() throws IOException
+	{
+		String source = "# comment\r\na=one\r\nb=two\r\n";
+
+		assertEquals("# comment\r\na=changed\r\nb=two\r\n", rewrite(source, changes("a", "changed")));
+		assertEquals("# comment\r\na=one\r\nb=two\r\nc=new" + LS, rewrite(source, changes("c", "new")));
+	}
+
+	@Test
+	public void testUnterminatedLastLine() throws IOException
+	{
+		String output = null;
+
+		assertEquals("a=one\nb=changed", rewrite("a=one\nb=two", changes("b", "changed")));
+		assertEquals("a=one\nb=two" + LS + "c=new" + LS, rewrite("a=one\nb=two", changes("c", "new")));
+
+		// the dangling continuation of the last line must not swallow the appended key
+		output = rewrite("a=one\nb=two\\", changes("c", "new"));
+		assertEquals("two", load(output).getProperty("b"));
+		assertEquals("new", load(output).getProperty("c"));
+	}
+
+	@Test
+	public void testEscapedKeys() throws IOException
+	{
+		String source = "a\\ b\\:c\\=d=one\n\\u00e9t\\u00e9=two\n\\#not\\ a\\ comment=three\n";
+		Map<String, String> changes = new LinkedHashMap<String, String>();
+		Properties props = null;
+
+		changes.put("a b:c=d", "1");
+		changes.put("\u00e9t\u00e9", "2");
+		changes.put("#not a comment", "3");
+		props = load(rewrite(source, changes));
+
+		assertEquals(load(source).stringPropertyNames(), props.stringPropertyNames());
+		assertEquals("1", props.getProperty("a b:c=d"));
+		assertEquals("2", props.getProperty("\u00e9t\u00e9"));
+		assertEquals("3", props.getProperty("#not a comment"));
+		assertEquals(store("a b:c=d", "1") + store("\u00e9t\u00e9", "2") + store("#not a comment", "3"),
+						rewrite(source, changes).replace(LS, "\n"));
+	}
+
+	@Test
+	public void testDuplicateKeys() throws IOException
+	{
+		String source = "a=one\nb=two\na=three\n";
+
+		// the unchanged definitions are copied through, the last one wins as with Properties
+		assertEquals("a=one\nb=changed\na=three\n", rewrite(source, changes("b", "changed")));
+		assertEquals("three", load(source).getProperty("a"));
+
+		// a changed key defined more than once is rejected, as by the pipelined mode
+		try
+		{
+			rewrite(source, changes("a", "changed"));
+			fail("Changed a key defined twice");
+		}
+		catch (IOException ioe)
+		{
+			assertEquals(PropertiesEditor.redefined("a").getMessage(), ioe.getMessage());
+		}
+	}
+
+	@Test
+	public void testChangedEntriesMatchPropertiesStore() throws IOException
+	{
+		String[][] entries = {{"plain", "value"}, {" leading", "  spaces"}, {"tab\tkey", "tab\tvalue"},
+							  {"lines", "one\ntwo\r\nthree"}, {"marks", "#!=:"}, {"back\\slash", "c:\\dir\\"},
+							  {"unicode", "\u00e9t\u00e9 \u20ac"}, {"empty", ""}, {"form", "\f"}};
+		String source = "# comment\n";
+
+		for (String[] entry : entries)
+			source += entry[0].replaceAll("[^a-z]", "_") + "=old\n";
+
+		for (String[] entry : entries)
+			assertEquals(entry[0], store(entry[0], entry[1]), rewrite("", changes(entry[0], entry[1])).replace(LS, "\n"));
+
+		for (String[] entry : entries)
+			assertEquals(entry[1], load(rewrite(source, changes(entry[0], entry[1]))).getProperty(entry[0]));
+	}
+
+	private static Map<String, String> changes(String key, String value)
+	{
+		Map<String, String> changes = new LinkedHashMap<String, String>();
+
+		changes.put(key, value);
+		return changes;
+	}
+
+	private static String rewrite(String source, Map<String, String> changes) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		PropertiesEditor.rewrite(new ByteArrayInputStream(source.getBytes(PropertiesEditor.ENCODING)), out, changes, null,
+									null);
+		return out.toString(PropertiesEditor.ENCODING);
+	}
+
+	private static Properties load(String text) throws IOException
+	{
+		Properties props = new Properties();
+
+		props.load(new ByteArrayInputStream(text.getBytes(PropertiesEditor.ENCODING)));
+		return props;
+	}
+
+	/**
+	 * @return the line written by Properties.store for the entry, without its date comment
+	 */
+	private static String store(String key, String value) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Properties props = new Properties();
+
+		props.setProperty(key, value);
+		props.store(out, null);
+		for (String line : out.toString(PropertiesEditor.ENCODING).split(LS))
+		{
+			if (!line.startsWith("#")) sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+}
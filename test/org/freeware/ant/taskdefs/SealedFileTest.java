@@ -0,0 +1,205 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SealedFileTest.java
+ * CREATED  : 19-Oct-2026 11:37:26 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the reader of the sealed property files, the <code>SECF</code> format of {@link SealedFile}.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SealedFileTest
+{
+	private static final int ITERATIONS = 1000;
+	private static final String TEXT = "db.user=scott\ndb.password=secret\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		File file = seal("round.sealed", TEXT, "password");
+		EncryptedProperties props = new EncryptedProperties("password");
+
+		assertTrue(SealedFile.isSealed(file));
+		assertEquals(String.valueOf(ITERATIONS), SealedFile.readHeader(file).get("iterations"));
+		assertEquals(TEXT, unseal(file, "password"));
+
+		props.load(file);
+		assertEquals("scott", props.getProperty("db.user"));
+		assertEquals("secret", props.getProperty("db.password"));
+	}
+
+	@Test
+	public void testRoundTripOfSeveralBuffers() throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		String text = null;
+
+		for (int i = 0; sb.length() < 200 * 1024; i++)
+			sb.append("key.").append(i).append("=value of the key ").append(i).append('\n');
+		text = sb.toString();
+
+		assertEquals(text, unseal(seal("large.sealed", text, "password"), "password"));
+	}
+
+	@Test
+	public void testWrongPassword() throws IOException
+	{
+		File file = seal("wrong.sealed", TEXT, "password");
+
+		try
+		{
+			SealedFile.open(file, "wrong").close();
+			fail("Opened with the wrong password");
+		}
+		catch (EncryptionOperationNotPossibleException eonpe)
+		{
+			assertTrue(eonpe.getMessage(), eonpe.getMessage().startsWith("Wrong password for"));
+		}
+	}
+
+	@Test
+	public void testCorruptedMac() throws IOException
+	{
+		File file = seal("mac.sealed", TEXT, "password");
+
+		corrupt(file, (int) file.length() - 1);
+		assertCorrupt(file, "Integrity check failed");
+	}
+
+	@Test
+	public void testCorruptedCipherText() throws IOException
+	{
+		File file = seal("cipher.sealed", TEXT, "password");
+
+		// the last byte of the cipher text, before the 32 bytes of the HMAC
+		corrupt(file, (int) file.length() - 33);
+		assertCorrupt(file, "Integrity check failed");
+	}
+
+	@Test
+	public void testTruncated() throws IOException
+	{
+		File file = seal("truncated.sealed", TEXT, "password");
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		// the password check survives, the HMAC does not
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - TEXT.length() - 32));
+		assertCorrupt(file, "Truncated");
+	}
+
+	@Test
+	public void testEmptyContent() throws IOException
+	{
+		File file = seal("empty.sealed", "", "password");
+		EncryptedProperties props = new EncryptedProperties("password");
+
+		assertTrue(SealedFile.isSealed(file));
+		assertEquals("", unseal(file, "password"));
+		props.load(file);
+		assertEquals(0, props.size());
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException
+	{
+		File file = folder.newFile("zero.sealed");
+
+		assertFalse(SealedFile.isSealed(file));
+		try
+		{
+			SealedFile.open(file, "password").close();
+			fail("Opened an empty file");
+		}
+		catch (IOException ioe)
+		{
+			assertTrue(ioe.getMessage(), ioe.getMessage().startsWith("Not a valid sealed property file"));
+		}
+		try
+		{
+			SealedFile.readHeader(file);
+			fail("Read the header of an empty file");
+		}
+		catch (IOException ioe)
+		{
+			assertTrue(ioe.getMessage(), ioe.getMessage().startsWith("Not a valid sealed property file"));
+		}
+	}
+
+	private void assertCorrupt(File file, String message)
+	{
+		try
+		{
+			unseal(file, "password");
+			fail("Read the corrupted file " + file.getName());
+		}
+		catch (IOException ioe)
+		{
+			assertTrue(ioe.getMessage(), ioe.getMessage().startsWith(message));
+		}
+	}
+
+	private File seal(String name, String text, String password) throws IOException
+	{
+		File file = folder.newFile(name);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream sealed = SealedFile.seal(out, password, ITERATIONS);
+
+		sealed.write(text.getBytes(StandardCharsets.ISO_8859_1));
+		sealed.close();
+		Files.write(file.toPath(), out.toByteArray());
+		return file;
+	}
+
+	private static String unseal(File file, String password) throws IOException
+	{
+		byte[] buf = new byte[4096];
+		int n = 0;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = SealedFile.open(file, password);
+
+		try
+		{
+			while ((n = in.read(buf)) != -1)
+				out.write(buf, 0, n);
+		}
+		finally
+		{
+			in.close();
+		}
+		return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	private static void corrupt(File file, int offset) throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		bytes[offset] ^= 0x01;
+		Files.write(file.toPath(), bytes);
+	}
+}
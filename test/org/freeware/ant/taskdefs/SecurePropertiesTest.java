@@ -0,0 +1,111 @@
+/*----------------------------------------------------------------------------------------------------------------------------------
+ * PACKAGE  : org.freeware.ant.taskdefs
+ * FILE     : SecurePropertiesTest.java
+ * CREATED  : 19-Oct-2026 10:12:37 am
+ * AUTHOR   : Prasad P. Khandekar
+ * COPYRIGHT: Copyright (c) 2008, Fundtech INDIA Ltd.
+ *--------------------------------------------------------------------------------------------------------------------------------*/
+package org.freeware.ant.taskdefs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.PropertyHelper;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the lazy load mode of {@link SecureProperties}.
+ * @author Prasad P. Khandekar
+ * @version $Id$
+ */
+public class SecurePropertiesTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Project _project;
+
+	@Before
+	public void setUp()
+	{
+		_project = new Project();
+		_project.init();
+	}
+
+	@Test
+	public void testLazyLoadsWithDifferentPasswords() throws IOException
+	{
+		File first = write("first.properties", "A=" + encrypt("one", "first") + "\nSHARED=plain\n");
+		File second = write("second.properties", "B=" + encrypt("two", "second") + "\nC=" + encrypt("three", "second") + "\n");
+
+		load(first, "first", null);
+		load(second, "second", "app");
+
+		assertEquals("one", _project.getProperty("A"));
+		assertEquals("two", _project.getProperty("app.B"));
+		assertEquals("three", _project.getProperty("app.C"));
+		assertEquals("plain", _project.getProperty("SHARED"));
+	}
+
+	@Test
+	public void testLazyLoadCoversItsOwnKeysOnly() throws IOException
+	{
+		String other = encrypt("other", "first");
+
+		load(write("first.properties", "A=" + encrypt("one", "first") + "\n"), "first", null);
+		_project.setProperty("D", other);
+
+		assertEquals("one", _project.getProperty("A"));
+		assertEquals(other, _project.getProperty("D"));
+	}
+
+	@Test
+	public void testWrongPasswordLeavesTheValueEncrypted() throws IOException
+	{
+		String value = encrypt("one", "first");
+
+		load(write("first.properties", "A=" + value + "\n"), "wrong", null);
+
+		assertEquals(value, PropertyHelper.getPropertyHelper(_project).getProperty("A"));
+	}
+
+	private void load(File file, String password, String prefix)
+	{
+		SecureProperties task = new SecureProperties();
+		SecureProperties.LoadMode mode = new SecureProperties.LoadMode();
+
+		mode.setValue("lazy");
+		task.setProject(_project);
+		task.setFile(file);
+		task.setPassword(password);
+		task.setLoad(mode);
+		if (prefix != null) task.setPrefix(prefix);
+		task.execute();
+	}
+
+	private File write(String name, String content) throws IOException
+	{
+		File file = folder.newFile(name);
+
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+		return file;
+	}
+
+	private static String encrypt(String value, String password)
+	{
+		StandardPBEStringEncryptor svc = new StandardPBEStringEncryptor();
+
+		svc.setAlgorithm("PBEWITHMD5ANDDES");
+		svc.setPassword(password);
+		return "ENC(" + svc.encrypt(value) + ")";
+	}
+}